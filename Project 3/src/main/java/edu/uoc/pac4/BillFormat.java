@@ -0,0 +1,104 @@
+package edu.uoc.pac4;
+
+import java.io.IOException;
+
+/**
+ * Fixed-point formatting of amounts in cents for bills.
+ *
+ * Each method writes straight into the target, producing the same text as the {@code String.format}
+ * and {@code DecimalFormat} patterns the bills used originally, without allocating formatters or
+ * running regular expressions over the result.
+ */
+final class BillFormat {
+    static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private BillFormat() {
+    }
+
+    /**
+     * Appends an amount rounded half up to one decimal digit, like {@code %.1f}.
+     */
+    static void appendOneDecimal(Appendable out, long cents) throws IOException {
+        long tenths = (Math.abs(cents) + 5) / 10;
+        appendSign(out, cents);
+        appendLong(out, tenths / 10);
+        out.append('.').append(digit(tenths % 10));
+    }
+
+    /**
+     * Appends an amount with exactly two decimal digits, like {@code %.2f}.
+     */
+    static void appendTwoDecimals(Appendable out, long cents) throws IOException {
+        long magnitude = Math.abs(cents);
+        appendSign(out, cents);
+        appendLong(out, magnitude / 100);
+        out.append('.').append(digit(magnitude / 10 % 10)).append(digit(magnitude % 10));
+    }
+
+    /**
+     * Appends an amount with at least one and at most two decimal digits, dropping a trailing zero in
+     * the second decimal, like the batch report does for line taxes.
+     */
+    static void appendAtLeastOneDecimal(Appendable out, long cents) throws IOException {
+        long magnitude = Math.abs(cents);
+        appendSign(out, cents);
+        appendLong(out, magnitude / 100);
+        out.append('.').append(digit(magnitude / 10 % 10));
+        if (magnitude % 10 != 0) {
+            out.append(digit(magnitude % 10));
+        }
+    }
+
+    /**
+     * Appends an amount with up to two decimal digits and no trailing zeros, like the {@code #.##}
+     * decimal pattern.
+     */
+    static void appendTrimmed(Appendable out, long cents) throws IOException {
+        long magnitude = Math.abs(cents);
+        appendSign(out, cents);
+        appendLong(out, magnitude / 100);
+        long fraction = magnitude % 100;
+        if (fraction != 0) {
+            out.append('.').append(digit(fraction / 10));
+            if (fraction % 10 != 0) {
+                out.append(digit(fraction % 10));
+            }
+        }
+    }
+
+    static void appendLong(Appendable out, long value) throws IOException {
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append(digit(value / divisor % 10));
+        }
+    }
+
+    /**
+     * Appends a text replacing commas with dots, as the original bills did on the whole line.
+     */
+    static void appendWithoutCommas(Appendable out, String text) throws IOException {
+        int start = 0;
+        for (int i = text.indexOf(','); i >= 0; i = text.indexOf(',', start)) {
+            out.append(text, start, i).append('.');
+            start = i + 1;
+        }
+        out.append(text, start, text.length());
+    }
+
+    private static void appendSign(Appendable out, long cents) throws IOException {
+        if (cents < 0) {
+            out.append('-');
+        }
+    }
+
+    private static char digit(long value) {
+        return (char) ('0' + value);
+    }
+}
@@ -1,11 +1,50 @@
 package edu.uoc.pac4;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
 public interface Billable {
     double TAX = 0.21;
+    int TAX_BASIS_POINTS = 2100;
+
+    /**
+     * Writes the bill into the given destination without building intermediate strings.
+     *
+     * @param out the destination of the bill
+     * @throws IOException if the destination cannot be written
+     */
+    void bill(Appendable out) throws IOException;
 
-    String bill();
+    default String bill() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            bill(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the bill as UTF-8 into the given buffer.
+     *
+     * @param buffer the destination of the bill
+     * @throws java.nio.BufferOverflowException if the bill does not fit in the remaining space
+     */
+    default void bill(ByteBuffer buffer) {
+        try {
+            bill(new ByteBufferAppendable(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
     default double taxValue(double totalPrice) {
         return totalPrice - totalPrice / (1 + TAX);
     }
+
+    default Money taxValue(Money totalPrice) {
+        return Money.ofCents(Money.includedTax(totalPrice.getCents(), TAX_BASIS_POINTS));
+    }
 }
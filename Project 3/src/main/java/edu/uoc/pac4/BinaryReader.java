@@ -0,0 +1,77 @@
+package edu.uoc.pac4;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values written by a {@link BinaryWriter} from a byte buffer.
+ *
+ * A {@link BufferUnderflowException} is thrown if the buffer ends in the middle of a value, and an
+ * {@link IllegalArgumentException} if a variable-length integer is malformed.
+ */
+final class BinaryReader {
+    private final ByteBuffer buffer;
+
+    BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    int readByte() {
+        return buffer.get();
+    }
+
+    int readInt() {
+        return buffer.getInt();
+    }
+
+    long readLong() {
+        return buffer.getLong();
+    }
+
+    double readDouble() {
+        return buffer.getDouble();
+    }
+
+    long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer");
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    String readString() {
+        int length = (int) readSignedVarLong();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] utf8 = new byte[length];
+            buffer.get(utf8);
+            value = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
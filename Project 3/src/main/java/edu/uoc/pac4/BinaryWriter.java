@@ -0,0 +1,102 @@
+package edu.uoc.pac4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable little-endian byte buffer used to build binary records.
+ */
+final class BinaryWriter {
+    private byte[] bytes;
+    private int length;
+
+    BinaryWriter(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    void reset() {
+        length = 0;
+    }
+
+    int length() {
+        return length;
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    void writeByte(int value) {
+        ensure(1);
+        bytes[length++] = (byte) value;
+    }
+
+    void writeInt(int value) {
+        ensure(Integer.BYTES);
+        for (int i = 0; i < Integer.BYTES; i++) {
+            bytes[length++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeLong(long value) {
+        ensure(Long.BYTES);
+        for (int i = 0; i < Long.BYTES; i++) {
+            bytes[length++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeDouble(double value) {
+        writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes an unsigned variable-length integer: seven bits per byte, low bits first.
+     */
+    void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    /**
+     * Writes a signed variable-length integer, zigzag-encoded so small negative values stay short.
+     */
+    void writeSignedVarLong(long value) {
+        writeVarLong(value << 1 ^ value >> 63);
+    }
+
+    /**
+     * Writes a string as its UTF-8 length followed by its UTF-8 bytes; null is written as length -1.
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeSignedVarLong(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeSignedVarLong(utf8.length);
+        ensure(utf8.length);
+        System.arraycopy(utf8, 0, bytes, length, utf8.length);
+        length += utf8.length;
+    }
+
+    void writeBytes(BinaryWriter other) {
+        ensure(other.length);
+        System.arraycopy(other.bytes, 0, bytes, length, other.length);
+        length += other.length;
+    }
+
+    void copyTo(ByteBuffer buffer) {
+        buffer.put(bytes, 0, length);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+    }
+}
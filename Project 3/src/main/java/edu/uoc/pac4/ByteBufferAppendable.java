@@ -0,0 +1,79 @@
+package edu.uoc.pac4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Appendable that encodes the appended characters as UTF-8 straight into a byte buffer.
+ *
+ * A {@link java.nio.BufferOverflowException} is thrown if the buffer runs out of space, unless a
+ * subclass makes room in {@link #reserve()}.
+ */
+class ByteBufferAppendable implements Appendable {
+    static final int MAX_BYTES_PER_CHAR = 4;
+
+    final ByteBuffer buffer;
+    private char highSurrogate;
+
+    ByteBufferAppendable(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            append(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        reserve();
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                putCodePoint(Character.toCodePoint(high, c));
+                return this;
+            }
+            buffer.put((byte) '?');
+        }
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            putCodePoint(c);
+        }
+        return this;
+    }
+
+    private void putCodePoint(int codePoint) {
+        if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | codePoint >> 6));
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | codePoint >> 12));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        } else {
+            buffer.put((byte) (0xF0 | codePoint >> 18));
+            buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        }
+        buffer.put((byte) (0x80 | codePoint & 0x3F));
+    }
+
+    /**
+     * Called before every character is encoded. Subclasses may drain the buffer here so that at least
+     * {@link #MAX_BYTES_PER_CHAR} bytes are free.
+     */
+    void reserve() throws IOException {
+    }
+}
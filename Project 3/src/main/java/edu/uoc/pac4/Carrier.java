@@ -0,0 +1,22 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+
+/**
+ * A delivery service orders are handed to, such as the API of a parcel carrier.
+ *
+ * A call may block for as long as the service takes to answer. The {@link DeliveryDispatcher} runs
+ * many calls at once and interrupts those that outlive its timeout, so implementations should give
+ * up when their thread is interrupted; until they do, the call counts against its concurrency limit.
+ */
+@FunctionalInterface
+public interface Carrier {
+    /**
+     * Delivers an order.
+     *
+     * @param order the order to deliver
+     * @return the date the order was delivered on
+     * @throws Exception if the carrier could not deliver the order
+     */
+    LocalDate deliver(Order order) throws Exception;
+}
@@ -0,0 +1,33 @@
+package edu.uoc.pac4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Appendable that encodes the appended characters as UTF-8 into a buffer and writes the buffer to a
+ * channel whenever it fills up.
+ */
+final class ChannelAppendable extends ByteBufferAppendable {
+    private final WritableByteChannel channel;
+
+    ChannelAppendable(WritableByteChannel channel, ByteBuffer buffer) {
+        super(buffer);
+        this.channel = channel;
+    }
+
+    @Override
+    void reserve() throws IOException {
+        if (buffer.remaining() < MAX_BYTES_PER_CHAR) {
+            flush();
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,351 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Frozen copy of an order batch laid out as primitive columns, for analytics.
+ *
+ * Row i of the snapshot is an order: its id, order date (as an epoch day), total in cents and
+ * delivery status bit. The lines of all orders are stored one after the other in product and
+ * quantity columns, row i owning the lines between {@code lineStart[i]} and {@code lineStart[i + 1]};
+ * products are replaced by indexes into a dictionary holding the price each product had when the
+ * snapshot was taken. Aggregations and filters are plain loops over these arrays, which touch no
+ * object but the arrays themselves.
+ *
+ * Later changes to the batch or its orders are not reflected in the snapshot.
+ */
+public final class ColumnarOrderSnapshot {
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final Order[] orders;
+    private final long[] ids;
+    private final int[] orderDays;
+    private final long[] totalCents;
+    private final long[] delivered;
+    private final int[] lineStart;
+    private final int[] lineProducts;
+    private final int[] lineQuantities;
+    private final Product[] products;
+    private final long[] productPriceCents;
+
+    private ColumnarOrderSnapshot(Builder builder) {
+        int size = builder.size;
+        this.orders = Arrays.copyOf(builder.orders, size);
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.orderDays = Arrays.copyOf(builder.orderDays, size);
+        this.totalCents = Arrays.copyOf(builder.totalCents, size);
+        this.delivered = Arrays.copyOf(builder.delivered, (size + 63) >>> 6);
+        this.lineStart = Arrays.copyOf(builder.lineStart, size + 1);
+        this.lineProducts = Arrays.copyOf(builder.lineProducts, builder.lines);
+        this.lineQuantities = Arrays.copyOf(builder.lineQuantities, builder.lines);
+        this.products = builder.productIds.keySet().toArray(new Product[0]);
+        for (Map.Entry<Product, Integer> entry : builder.productIds.entrySet()) {
+            products[entry.getValue()] = entry.getKey();
+        }
+        this.productPriceCents = Arrays.copyOf(builder.productPriceCents, products.length);
+    }
+
+    /**
+     * Takes a columnar snapshot of the orders of a batch.
+     *
+     * @param orderBatch the batch to take the snapshot of
+     * @return the snapshot of the batch
+     */
+    public static ColumnarOrderSnapshot of(OrderBatch orderBatch) {
+        Builder builder = new Builder(orderBatch.size());
+        orderBatch.forEachOrder(builder::add);
+        return new ColumnarOrderSnapshot(builder);
+    }
+
+    /**
+     * Returns the number of orders in the snapshot.
+     *
+     * @return the number of orders
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    public Order getOrder(int row) {
+        return orders[row];
+    }
+
+    public long getOrderId(int row) {
+        return ids[row];
+    }
+
+    public LocalDate getOrderDate(int row) {
+        return orderDays[row] == NO_DATE ? null : LocalDate.ofEpochDay(orderDays[row]);
+    }
+
+    public Money getTotal(int row) {
+        return Money.ofCents(totalCents[row]);
+    }
+
+    public boolean isDelivered(int row) {
+        return (delivered[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns the number of lines of an order.
+     *
+     * @param row the row of the order
+     * @return the number of lines of the order
+     */
+    public int getLineCount(int row) {
+        return lineStart[row + 1] - lineStart[row];
+    }
+
+    /**
+     * Returns the sum of the totals of all orders.
+     *
+     * @return the total income of the snapshot
+     */
+    public Money totalIncome() {
+        long total = 0;
+        for (long cents : totalCents) {
+            total += cents;
+        }
+        return Money.ofCents(total);
+    }
+
+    /**
+     * Returns the sum of the totals of the orders placed between two dates, both included.
+     *
+     * @param from the first order date
+     * @param to   the last order date
+     * @return the income of the orders placed in the period
+     */
+    public Money totalIncome(LocalDate from, LocalDate to) {
+        int first = (int) from.toEpochDay();
+        int last = (int) to.toEpochDay();
+        long total = 0;
+        for (int i = 0; i < orderDays.length; i++) {
+            int day = orderDays[i];
+            total += day >= first && day <= last ? totalCents[i] : 0;
+        }
+        return Money.ofCents(total);
+    }
+
+    /**
+     * Returns the rows of the orders placed between two dates, both included, in row order.
+     *
+     * @param from the first order date
+     * @param to   the last order date
+     * @return the rows of the orders placed in the period
+     */
+    public int[] rowsBetween(LocalDate from, LocalDate to) {
+        int first = (int) from.toEpochDay();
+        int last = (int) to.toEpochDay();
+        int[] rows = new int[orderDays.length];
+        int count = 0;
+        for (int i = 0; i < orderDays.length; i++) {
+            rows[count] = i;
+            int day = orderDays[i];
+            count += day >= first && day <= last ? 1 : 0;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Returns the number of delivered orders.
+     *
+     * @return the number of delivered orders
+     */
+    public int countDelivered() {
+        int count = 0;
+        for (long word : delivered) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the income of every product present in some line, at the price it had when the snapshot
+     * was taken.
+     *
+     * @return the income of each product
+     */
+    public Map<Product, Money> incomeByProduct() {
+        long[] units = unitsByProductIndex();
+        Map<Product, Money> income = new HashMap<>();
+        for (int p = 0; p < products.length; p++) {
+            income.merge(products[p], Money.ofCents(units[p] * productPriceCents[p]), Money::plus);
+        }
+        return income;
+    }
+
+    /**
+     * Returns the units of every product present in some line.
+     *
+     * @return the units of each product
+     */
+    public Map<Product, Long> unitsByProduct() {
+        long[] units = unitsByProductIndex();
+        Map<Product, Long> result = new HashMap<>();
+        for (int p = 0; p < products.length; p++) {
+            result.merge(products[p], units[p], Long::sum);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows of the k orders with the highest totals, highest first; ties are broken by
+     * order id.
+     *
+     * @param k the maximum number of rows to return
+     * @return at most k rows, sorted by descending total
+     * @throws IllegalArgumentException if k is negative
+     */
+    public int[] topRowsByTotal(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("The number of orders cannot be negative");
+        }
+        int capacity = Math.min(k, totalCents.length);
+        int[] heap = new int[capacity];
+        int size = 0;
+        for (int row = 0; row < totalCents.length; row++) {
+            if (size < capacity) {
+                heap[size] = row;
+                siftUp(heap, size++);
+            } else if (capacity > 0 && ranksBefore(row, heap[0])) {
+                heap[0] = row;
+                siftDown(heap, size);
+            }
+        }
+        for (int end = size - 1; end > 0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(heap, end);
+        }
+        return heap;
+    }
+
+    private long[] unitsByProductIndex() {
+        long[] units = new long[products.length];
+        for (int line = 0; line < lineProducts.length; line++) {
+            units[lineProducts[line]] += lineQuantities[line];
+        }
+        return units;
+    }
+
+    /**
+     * Min-heap on rank: the root is the row ranking last among those kept.
+     */
+    private void siftUp(int[] heap, int index) {
+        int row = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksBefore(heap[parent], row)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = row;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int row = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksBefore(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksBefore(row, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = row;
+    }
+
+    private boolean ranksBefore(int row, int other) {
+        if (totalCents[row] != totalCents[other]) {
+            return totalCents[row] > totalCents[other];
+        }
+        return ids[row] < ids[other];
+    }
+
+    private static final class Builder {
+        private Order[] orders;
+        private long[] ids;
+        private int[] orderDays;
+        private long[] totalCents;
+        private long[] delivered;
+        private int[] lineStart;
+        private int[] lineProducts;
+        private int[] lineQuantities;
+        private long[] productPriceCents = new long[16];
+        private final Map<Product, Integer> productIds = new IdentityHashMap<>();
+        private int size;
+        private int lines;
+
+        Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            orders = new Order[capacity];
+            ids = new long[capacity];
+            orderDays = new int[capacity];
+            totalCents = new long[capacity];
+            delivered = new long[(capacity + 63) >>> 6];
+            lineStart = new int[capacity + 1];
+            lineProducts = new int[capacity * 2];
+            lineQuantities = new int[capacity * 2];
+        }
+
+        void add(Order order) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                orders = Arrays.copyOf(orders, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                orderDays = Arrays.copyOf(orderDays, capacity);
+                totalCents = Arrays.copyOf(totalCents, capacity);
+                delivered = Arrays.copyOf(delivered, (capacity + 63) >>> 6);
+                lineStart = Arrays.copyOf(lineStart, capacity + 1);
+            }
+            orders[size] = order;
+            ids[size] = order.getNumericId();
+            LocalDate orderDate = order.getOrderDate();
+            orderDays[size] = orderDate == null ? NO_DATE : (int) orderDate.toEpochDay();
+            if (order.getDeliveryDate() != null) {
+                delivered[size >>> 6] |= 1L << size;
+            }
+            long[] total = new long[1];
+            order.forEachLine((product, quantity) -> {
+                if (lines == lineProducts.length) {
+                    lineProducts = Arrays.copyOf(lineProducts, lines * 2);
+                    lineQuantities = Arrays.copyOf(lineQuantities, lines * 2);
+                }
+                int productId = productId(product);
+                lineProducts[lines] = productId;
+                lineQuantities[lines++] = quantity;
+                total[0] += productPriceCents[productId] * quantity;
+            });
+            totalCents[size] = total[0];
+            lineStart[++size] = lines;
+        }
+
+        private int productId(Product product) {
+            Integer productId = productIds.get(product);
+            if (productId == null) {
+                productId = productIds.size();
+                productIds.put(product, productId);
+                if (productId == productPriceCents.length) {
+                    productPriceCents = Arrays.copyOf(productPriceCents, productId * 2);
+                }
+                productPriceCents[productId] = product.getPriceCents();
+            }
+            return productId;
+        }
+    }
+}
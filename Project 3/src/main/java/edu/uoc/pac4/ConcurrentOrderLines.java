@@ -0,0 +1,181 @@
+package edu.uoc.pac4;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Order lines that can be mutated from several threads at once.
+ *
+ * Each line is updated atomically inside its own hash bin of a concurrent map, so threads working on
+ * different products do not block each other, and the total of each product category is kept in a
+ * striped adder. Line changes are reported to the order from inside the bin too, so listeners see the
+ * changes of a line in the order they were made. Mutators take the shared side of a phase lock and
+ * readers that need a consistent snapshot take the exclusive side, which waits for in-flight
+ * mutations to finish and holds new ones back while the lines are read.
+ */
+final class ConcurrentOrderLines extends OrderLines {
+    private static final Comparator<OrderItem> INSERTION_ORDER = Comparator.comparingLong(OrderItem::getSequence);
+
+    private final ConcurrentHashMap<Product, OrderItem> items = new ConcurrentHashMap<>();
+    private final LongAdder[] categoryTotals = new LongAdder[TaxEngine.categoryCount()];
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final StampedLock phase = new StampedLock();
+
+    ConcurrentOrderLines(Order order) {
+        super(order);
+        for (int i = 0; i < categoryTotals.length; i++) {
+            categoryTotals[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    OrderItem add(Product product, int quantity) {
+        long stamp = phase.readLock();
+        try {
+            return items.compute(product, (key, existing) -> {
+                OrderItem orderItem = existing;
+                if (orderItem == null) {
+                    orderItem = new OrderItem(order, product, quantity, nextSequence.getAndIncrement());
+                } else {
+                    orderItem.assignQuantity(orderItem.getQuantity() + quantity);
+                }
+                adjustTotals(orderItem.getProduct(), orderItem.getPricedCents() * quantity);
+                order.linesChanged(orderItem.getProduct(), quantity, existing == null ? 1 : 0);
+                return orderItem;
+            });
+        } finally {
+            phase.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    int remove(Product product, int quantity) {
+        int[] removed = {-1};
+        long stamp = phase.readLock();
+        try {
+            items.computeIfPresent(product, (key, orderItem) -> {
+                int previousQuantity = orderItem.getQuantity();
+                int newQuantity = previousQuantity - quantity;
+                if (newQuantity <= 0) {
+                    removed[0] = previousQuantity;
+                    adjustTotals(orderItem.getProduct(), -orderItem.getPricedCents() * previousQuantity);
+                    order.linesChanged(orderItem.getProduct(), -previousQuantity, -1);
+                    return null;
+                }
+                removed[0] = quantity;
+                orderItem.assignQuantity(newQuantity);
+                adjustTotals(orderItem.getProduct(), -orderItem.getPricedCents() * quantity);
+                order.linesChanged(orderItem.getProduct(), -quantity, 0);
+                return orderItem;
+            });
+        } finally {
+            phase.unlockRead(stamp);
+        }
+        return removed[0];
+    }
+
+    @Override
+    void setQuantity(OrderItem orderItem, int quantity) {
+        long stamp = phase.readLock();
+        try {
+            boolean[] attached = {false};
+            items.computeIfPresent(orderItem.getProduct(), (key, current) -> {
+                if (current == orderItem) {
+                    attached[0] = true;
+                    adjustTotals(orderItem.getProduct(), orderItem.getPricedCents() * (quantity - orderItem.getQuantity()));
+                    order.linesChanged(orderItem.getProduct(), quantity - orderItem.getQuantity(), 0);
+                    orderItem.assignQuantity(quantity);
+                }
+                return current;
+            });
+            if (!attached[0]) {
+                orderItem.assignQuantity(quantity);
+            }
+        } finally {
+            phase.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    OrderItem get(Product product) {
+        return items.get(product);
+    }
+
+    @Override
+    int size() {
+        return items.size();
+    }
+
+    @Override
+    long getTotalCents() {
+        long stamp = phase.writeLock();
+        try {
+            return snapshotTotalCents();
+        } finally {
+            phase.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    long getTaxCents() {
+        long stamp = phase.writeLock();
+        try {
+            return snapshotTaxCents();
+        } finally {
+            phase.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    long lockSnapshot() {
+        return phase.writeLock();
+    }
+
+    @Override
+    void unlockSnapshot(long stamp) {
+        phase.unlockWrite(stamp);
+    }
+
+    @Override
+    Collection<OrderItem> snapshotItems() {
+        List<OrderItem> snapshot = new ArrayList<>(items.values());
+        snapshot.sort(INSERTION_ORDER);
+        return Collections.unmodifiableList(snapshot);
+    }
+
+    @Override
+    long snapshotTotalCents() {
+        long total = 0;
+        for (long categoryTotal : snapshotCategoryTotals()) {
+            total += categoryTotal;
+        }
+        return total;
+    }
+
+    @Override
+    long[] snapshotCategoryTotals() {
+        refreshPrices();
+        long[] totals = new long[categoryTotals.length];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = categoryTotals[i].sum();
+        }
+        return totals;
+    }
+
+    @Override
+    void adjustTotals(Product product, long delta) {
+        categoryTotals[product.getCategory().ordinal()].add(delta);
+    }
+}
@@ -0,0 +1,28 @@
+package edu.uoc.pac4;
+
+import java.io.PrintStream;
+
+/**
+ * Writes order lifecycle events to the standard output, one line per event.
+ */
+public class ConsoleEventSink implements OrderEventSink {
+    private final PrintStream out;
+
+    public ConsoleEventSink() {
+        this(System.out);
+    }
+
+    public ConsoleEventSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void accept(OrderEvent event) {
+        out.println(event);
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,49 @@
+package edu.uoc.pac4;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min sketch of the counts of 64-bit hashes, with 4 rows of 1024 counters.
+ *
+ * Counts may go up and down as long as no count becomes negative. The estimate of a count is never
+ * below it, and exceeds it by more than e / 1024 (about 0.27%) of the total of all counts with a
+ * probability below e<sup>-4</sup> (about 2%). Each row hashes with {@code h1 + row * h2}, both
+ * halves taken from the 64-bit hash, so only one hash is computed per key.
+ */
+final class CountMinSketch {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1024;
+
+    private final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+
+    /**
+     * Adds to the count of a hash and returns its new estimate.
+     */
+    long add(long hash, long count) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(hash, row), count));
+        }
+        return estimate;
+    }
+
+    long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    void mergeInto(CountMinSketch target) {
+        for (int i = 0; i < counters.length(); i++) {
+            target.counters.addAndGet(i, counters.get(i));
+        }
+    }
+
+    private static int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+    }
+}
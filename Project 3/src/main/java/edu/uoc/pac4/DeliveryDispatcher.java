@@ -0,0 +1,266 @@
+package edu.uoc.pac4;
+
+import edu.uoc.pac4.exception.OrderException;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands orders to a {@link Carrier}, many calls at once, and sets the delivery date the carrier
+ * answers on every order it delivers.
+ *
+ * Every call runs in its own thread: a virtual thread on runtimes that have them (Java 21 onwards),
+ * so a blocked call costs a few hundred bytes, or else a platform thread from a pool as large as the
+ * concurrency limit. At most {@link #withConcurrency(int) concurrency} calls are pending at a time;
+ * the next order waits for a call to end. A call that outlives the {@link #withTimeout(Duration)
+ * timeout} is interrupted and counted as timed out, and whatever it answers later is ignored; it keeps
+ * counting against the limit until the carrier gives up, since it still holds its thread, so orders
+ * never wait for a thread once their own timeout runs. The time taken to deliver n orders is thus about
+ * n times the latency of the carrier divided by the concurrency, rather than the sum of all the calls.
+ */
+public final class DeliveryDispatcher {
+    public static final int DEFAULT_CONCURRENCY = 1000;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    private static final String MSG_ERR_NULL_CARRIER = "[ERROR] The carrier cannot be null";
+    private static final String MSG_ERR_NULL_ORDERS = "[ERROR] The orders cannot be null";
+    private static final String MSG_ERR_NULL_ORDER = "[ERROR] The Order object cannot be null";
+    private static final String MSG_ERR_NO_DATE = "[ERROR] The carrier answered no delivery date";
+    private static final String MSG_ERR_ABORTED = "[ERROR] The carrier call ended abruptly";
+    private static final String MSG_ERR_TIMEOUT = "[ERROR] The carrier did not answer within ";
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor}, or null on runtimes without virtual threads.
+     */
+    private static final Method VIRTUAL_EXECUTOR = virtualExecutorFactory();
+
+    private final Carrier carrier;
+    private final int concurrency;
+    private final Duration timeout;
+
+    /**
+     * Constructs a dispatcher handing orders to a carrier, with the default concurrency and timeout.
+     *
+     * @param carrier the carrier delivering the orders
+     * @throws NullPointerException if the carrier is null
+     */
+    public DeliveryDispatcher(Carrier carrier) {
+        if (carrier == null) {
+            throw new NullPointerException(MSG_ERR_NULL_CARRIER);
+        }
+        this.carrier = carrier;
+        this.concurrency = DEFAULT_CONCURRENCY;
+        this.timeout = DEFAULT_TIMEOUT;
+    }
+
+    private DeliveryDispatcher(Carrier carrier, int concurrency, Duration timeout) {
+        this.carrier = carrier;
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns a dispatcher like this one running at most the given number of carrier calls at once.
+     *
+     * @param concurrency the maximum number of pending calls
+     * @return the new dispatcher
+     * @throws IllegalArgumentException if the concurrency is not positive
+     */
+    public DeliveryDispatcher withConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("The concurrency must be greater than zero");
+        }
+        return new DeliveryDispatcher(carrier, concurrency, timeout);
+    }
+
+    /**
+     * Returns a dispatcher like this one giving up on every carrier call after the given time.
+     *
+     * @param timeout the time every call may take
+     * @return the new dispatcher
+     * @throws IllegalArgumentException if the timeout is null, zero or negative
+     */
+    public DeliveryDispatcher withTimeout(Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("The timeout must be greater than zero");
+        }
+        return new DeliveryDispatcher(carrier, concurrency, timeout);
+    }
+
+    /**
+     * Checks if the carrier calls run in virtual threads, which depends on the Java runtime.
+     *
+     * @return true if calls run in virtual threads, false if they run in platform threads
+     */
+    public static boolean usesVirtualThreads() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Hands orders to the carrier and waits until every one is delivered, failed or timed out.
+     *
+     * @param orders the orders to deliver
+     * @return the report of the dispatch
+     * @throws NullPointerException if the orders or any of them are null
+     * @throws InterruptedException if the calling thread is interrupted while waiting, in which case
+     *                              the pending calls are interrupted too
+     */
+    public DeliveryReport dispatch(Collection<? extends Order> orders) throws InterruptedException {
+        if (orders == null) {
+            throw new NullPointerException(MSG_ERR_NULL_ORDERS);
+        }
+        List<Order> pending = new ArrayList<>(orders);
+        for (Order order : pending) {
+            if (order == null) {
+                throw new NullPointerException(MSG_ERR_NULL_ORDER);
+            }
+        }
+
+        long start = System.nanoTime();
+        DeliveryReport report = new DeliveryReport();
+        Semaphore permits = new Semaphore(concurrency);
+        CountDownLatch settled = new CountDownLatch(pending.size());
+        ExecutorService workers = newWorkers();
+        ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, daemon("delivery-deadlines"));
+        deadlines.setRemoveOnCancelPolicy(true);
+        try {
+            for (Order order : pending) {
+                permits.acquire();
+                new Delivery(order, report, permits, settled).start(workers, deadlines);
+            }
+            settled.await();
+        } finally {
+            workers.shutdownNow();
+            deadlines.shutdownNow();
+        }
+        report.setElapsed(Duration.ofNanos(System.nanoTime() - start));
+        return report;
+    }
+
+    private ExecutorService newWorkers() {
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return Executors.newFixedThreadPool(concurrency, daemon("delivery-dispatcher"));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger threads = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Looks the virtual thread executor up by reflection, since the project builds on Java 17.
+     */
+    private static Method virtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The carrier call of one order. Whichever of the call and its deadline ends first settles the
+     * order: it records the outcome and counts the order as settled. The permit of the call is released
+     * when the call returns, or by the deadline if the call never started.
+     */
+    private final class Delivery implements Runnable {
+        private final Order order;
+        private final DeliveryReport report;
+        private final Semaphore permits;
+        private final CountDownLatch settled;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile Future<?> call;
+        private volatile Future<?> deadline;
+
+        Delivery(Order order, DeliveryReport report, Semaphore permits, CountDownLatch settled) {
+            this.order = order;
+            this.report = report;
+            this.permits = permits;
+            this.settled = settled;
+        }
+
+        void start(ExecutorService workers, ScheduledThreadPoolExecutor deadlines) {
+            call = workers.submit(this);
+            deadline = deadlines.schedule(this::expire, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            if (done.get()) {
+                deadline.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            LocalDate deliveryDate = null;
+            String failure = MSG_ERR_ABORTED;
+            try {
+                deliveryDate = carrier.deliver(order);
+                failure = deliveryDate == null ? MSG_ERR_NO_DATE : null;
+            } catch (Exception e) {
+                failure = e.getMessage() != null ? e.getMessage() : e.toString();
+            } finally {
+                try {
+                    if (done.compareAndSet(false, true)) {
+                        complete(deliveryDate, failure);
+                    }
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+
+        private void complete(LocalDate deliveryDate, String failure) {
+            try {
+                if (failure == null) {
+                    order.setDeliveryDate(deliveryDate);
+                    report.delivered();
+                } else {
+                    report.failed(order, failure);
+                }
+            } catch (OrderException | RuntimeException e) {
+                report.failed(order, e.getMessage());
+            } finally {
+                Future<?> deadline = this.deadline;
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                settled.countDown();
+            }
+        }
+
+        private void expire() {
+            if (done.compareAndSet(false, true)) {
+                report.timedOut(order, MSG_ERR_TIMEOUT + timeout.toMillis() + " ms");
+                if (claimed.compareAndSet(false, true)) {
+                    permits.release();
+                }
+                call.cancel(true);
+                settled.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.uoc.pac4;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a delivery dispatch: how many orders were delivered, how many the carrier failed or did
+ * not answer in time, which ones and why, and how long the dispatch took.
+ *
+ * Every failure is counted, but only the first {@link #MAX_FAILURES} are kept with their reason, so a
+ * carrier failing every call cannot exhaust memory.
+ */
+public final class DeliveryReport {
+    public static final int MAX_FAILURES = 1000;
+
+    private final List<Failure> failures = new ArrayList<>();
+    private long delivered;
+    private long failed;
+    private long timedOut;
+    private Duration elapsed = Duration.ZERO;
+
+    DeliveryReport() {
+    }
+
+    synchronized void delivered() {
+        delivered++;
+    }
+
+    synchronized void failed(Order order, String message) {
+        failed++;
+        keep(order, message, false);
+    }
+
+    synchronized void timedOut(Order order, String message) {
+        timedOut++;
+        keep(order, message, true);
+    }
+
+    void setElapsed(Duration elapsed) {
+        this.elapsed = elapsed;
+    }
+
+    private void keep(Order order, String message, boolean timedOut) {
+        if (failures.size() < MAX_FAILURES) {
+            failures.add(new Failure(order.getId(), message, timedOut));
+        }
+    }
+
+    /**
+     * Returns the number of orders handed to the carrier.
+     *
+     * @return the number of orders dispatched
+     */
+    public synchronized long getOrders() {
+        return delivered + failed + timedOut;
+    }
+
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized long getTimedOut() {
+        return timedOut;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the first orders that were not delivered, in the order their calls ended.
+     *
+     * @return at most {@link #MAX_FAILURES} orders not delivered
+     */
+    public synchronized List<Failure> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Orders: " + getOrders() + " | Delivered: " + delivered + " | Failed: " + failed
+                + " | Timed out: " + timedOut + " | Elapsed: " + elapsed.toMillis() + " ms";
+    }
+
+    /**
+     * An order that was not delivered.
+     */
+    public static final class Failure {
+        private final String orderId;
+        private final String message;
+        private final boolean timedOut;
+
+        Failure(String orderId, String message, boolean timedOut) {
+            this.orderId = orderId;
+            this.message = message;
+            this.timedOut = timedOut;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Checks if the order failed because the carrier did not answer in time.
+         *
+         * @return true if the call timed out, false if the carrier failed it
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public String toString() {
+            return "Order " + orderId + ": " + message;
+        }
+    }
+}
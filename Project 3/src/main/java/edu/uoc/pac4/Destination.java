@@ -0,0 +1,26 @@
+package edu.uoc.pac4;
+
+/**
+ * Represents where an order is shipped to, which determines its tax rates.
+ */
+public enum Destination {
+    /**
+     * The order is shipped to a domestic address, or the user has no address.
+     */
+    DOMESTIC,
+    /**
+     * The order is shipped to an international address.
+     */
+    INTERNATIONAL;
+
+    /**
+     * Returns the destination of the orders placed by a user.
+     *
+     * @param user the user placing the orders
+     * @return INTERNATIONAL if the user has an international address, DOMESTIC otherwise
+     */
+    public static Destination of(User user) {
+        Address address = user.getAddress();
+        return address != null && address.isInternational() ? INTERNATIONAL : DOMESTIC;
+    }
+}
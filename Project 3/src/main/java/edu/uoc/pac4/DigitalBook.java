@@ -9,6 +9,11 @@ public class DigitalBook extends Product {
         super(name, price);
     }
 
+    @Override
+    public ProductCategory getCategory() {
+        return ProductCategory.DIGITAL_BOOK;
+    }
+
     @Override
     public String describeProduct() {
         return String.format("DigitalBook: %s", DESCRIPTION);
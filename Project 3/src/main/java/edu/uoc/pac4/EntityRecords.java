@@ -0,0 +1,96 @@
+package edu.uoc.pac4;
+
+import edu.uoc.pac4.exception.ProductException;
+import edu.uoc.pac4.exception.UserException;
+
+import java.time.LocalDate;
+
+/**
+ * Binary form of the users, products and dates referenced by persisted orders.
+ */
+final class EntityRecords {
+    /**
+     * Epoch day written for a missing date.
+     */
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    private EntityRecords() {
+    }
+
+    static long epochDay(LocalDate date) {
+        return date == null ? NO_DATE : date.toEpochDay();
+    }
+
+    static LocalDate date(long epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    static void writeUser(BinaryWriter out, User user) {
+        out.writeString(user.getName());
+        out.writeString(user.getEmail());
+        out.writeSignedVarLong(epochDay(user.getBirthDate()));
+        out.writeByte(user.getGender() == null ? -1 : user.getGender().ordinal());
+        Address address = user.getAddress();
+        out.writeByte(address == null ? 0 : 1);
+        if (address != null) {
+            out.writeString(address.getStreet());
+            out.writeSignedVarLong(address.getNumber());
+            out.writeString(address.getZipCode());
+            out.writeString(address.getCity());
+        }
+    }
+
+    static User readUser(BinaryReader in) throws UserException {
+        String name = in.readString();
+        String email = in.readString();
+        LocalDate birthDate = date(in.readSignedVarLong());
+        int gender = in.readByte();
+        Address address = null;
+        if (in.readByte() != 0) {
+            address = new Address(in.readString(), (int) in.readSignedVarLong(), in.readString(), in.readString());
+        }
+        User user = new User(name, email, birthDate, gender < 0 ? null : Gender.values()[gender]);
+        user.setAddress(address);
+        return user;
+    }
+
+    static void writeProduct(BinaryWriter out, Product product) {
+        out.writeByte(product.getCategory().ordinal());
+        out.writeString(product.getName());
+        writeProductDetails(out, product);
+    }
+
+    /**
+     * Writes the price and costs of a product, which follow its category and name.
+     */
+    static void writeProductDetails(BinaryWriter out, Product product) {
+        out.writeVarLong(product.getPriceCents());
+        if (product instanceof PrintedBook) {
+            out.writeDouble(((PrintedBook) product).getPrintingCost());
+        } else if (product instanceof Merchandising) {
+            out.writeDouble(((Merchandising) product).getFabricationCost());
+            out.writeDouble(((Merchandising) product).getPackagingCost());
+        }
+    }
+
+    static Product readProduct(BinaryReader in) throws ProductException {
+        ProductCategory category = ProductCategory.values()[in.readByte()];
+        return readProductDetails(in, category, in.readString());
+    }
+
+    /**
+     * Reads the price and costs of a product whose category and name have already been read.
+     */
+    static Product readProductDetails(BinaryReader in, ProductCategory category, String name)
+            throws ProductException {
+        double price = (double) in.readVarLong() / Money.CENTS_PER_UNIT;
+        switch (category) {
+            case PRINTED_BOOK:
+                return new PrintedBook(name, price, in.readDouble());
+            case MERCHANDISING:
+                return new Merchandising(name, price, in.readDouble(), in.readDouble());
+            default:
+                return new DigitalBook(name, price);
+        }
+    }
+}
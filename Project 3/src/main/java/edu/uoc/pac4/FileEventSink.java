@@ -0,0 +1,36 @@
+package edu.uoc.pac4;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends order lifecycle events to a text file, one line per event.
+ */
+public class FileEventSink implements OrderEventSink {
+    private final BufferedWriter writer;
+
+    public FileEventSink(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void accept(OrderEvent event) throws IOException {
+        writer.write(event.toString());
+        writer.newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
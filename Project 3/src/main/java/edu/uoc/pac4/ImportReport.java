@@ -0,0 +1,100 @@
+package edu.uoc.pac4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: how many orders were loaded and which rows were rejected and why.
+ *
+ * Every rejected row is counted, but only the first {@link #MAX_ERRORS} are kept with their reason,
+ * so a file full of bad rows cannot exhaust memory.
+ */
+public final class ImportReport {
+    public static final int MAX_ERRORS = 1000;
+
+    private final List<RowError> errors = new ArrayList<>();
+    private long rows;
+    private long importedOrders;
+    private long rejectedRows;
+
+    ImportReport() {
+    }
+
+    void addRows(long rows) {
+        this.rows += rows;
+    }
+
+    void addImported(long orders) {
+        importedOrders += orders;
+    }
+
+    void reject(long line, String message) {
+        rejectedRows++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    /**
+     * Returns the number of non-blank rows read, header excluded.
+     *
+     * @return the number of rows read
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public long getImportedOrders() {
+        return importedOrders;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    /**
+     * Returns the first rejected rows, by line number.
+     *
+     * @return at most {@link #MAX_ERRORS} rejected rows
+     */
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    @Override
+    public String toString() {
+        return "Rows: " + rows + " | Imported: " + importedOrders + " | Rejected: " + rejectedRows;
+    }
+
+    /**
+     * A row that could not be imported.
+     */
+    public static final class RowError {
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Returns the line of the row in the file, starting at 1.
+         *
+         * @return the line number
+         */
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + message;
+        }
+    }
+}
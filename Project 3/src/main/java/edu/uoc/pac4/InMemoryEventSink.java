@@ -0,0 +1,32 @@
+package edu.uoc.pac4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a copy of every order lifecycle event in memory.
+ */
+public class InMemoryEventSink implements OrderEventSink {
+    private final List<OrderEvent> events = new ArrayList<>();
+
+    @Override
+    public synchronized void accept(OrderEvent event) {
+        events.add(event.copy());
+    }
+
+    /**
+     * Returns the events received so far, in publication order.
+     *
+     * @return a list with the received events
+     */
+    public synchronized List<OrderEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Discards the events received so far.
+     */
+    public synchronized void clear() {
+        events.clear();
+    }
+}
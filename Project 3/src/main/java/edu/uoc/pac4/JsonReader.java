@@ -0,0 +1,232 @@
+package edu.uoc.pac4;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal reader of a JSON document held in a string.
+ *
+ * Objects are read as maps, arrays as lists, strings as strings, integers as longs, other numbers
+ * as doubles, and true, false and null as themselves. Malformed documents, and those nesting objects
+ * and arrays more than {@link #MAX_DEPTH} levels deep, throw an {@link IllegalArgumentException}.
+ */
+final class JsonReader {
+    /**
+     * Deepest nesting of objects and arrays read, so that the recursive reader cannot overflow the stack.
+     */
+    static final int MAX_DEPTH = 64;
+
+    private final String text;
+    private int position;
+    private int depth;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Reads a complete JSON document.
+     */
+    static Object read(String text) {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.position < text.length()) {
+            throw reader.error("Unexpected text after the JSON value");
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("Unexpected end of the JSON value");
+        }
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+            case '[':
+                if (depth == MAX_DEPTH) {
+                    throw error("The JSON value is nested more than " + MAX_DEPTH + " levels deep");
+                }
+                depth++;
+                Object nested = c == '{' ? readObject() : readArray();
+                depth--;
+                return nested;
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String readString() {
+        position++;
+        StringBuilder sb = null;
+        int start = position;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '"') {
+                String value = sb == null ? text.substring(start, position)
+                        : sb.append(text, start, position).toString();
+                position++;
+                return value;
+            }
+            if (c == '\\') {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(text, start, position);
+                sb.append(readEscape());
+                start = position;
+            } else {
+                position++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private char readEscape() {
+        position++;
+        if (position >= text.length()) {
+            throw error("Unterminated escape sequence");
+        }
+        char c = text.charAt(position++);
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (position + 4 > text.length()) {
+                    throw error("Unterminated escape sequence");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(text.substring(position, position + 4), 16);
+                    position += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw error("Invalid unicode escape");
+                }
+            default:
+                throw error("Invalid escape sequence '\\" + c + "'");
+        }
+    }
+
+    private Object readNumber() {
+        int start = position;
+        boolean integer = true;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integer = false;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            position++;
+        }
+        String number = text.substring(start, position);
+        try {
+            return integer ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("Unexpected character '" + text.charAt(position) + "'");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    private char peek() {
+        return position < text.length() ? text.charAt(position) : '\0';
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at column " + (position + 1));
+    }
+}
@@ -27,6 +27,11 @@ public class Merchandising extends Product implements Manufacturable {
         this.packagingCost = packagingCost;
     }
 
+    @Override
+    public ProductCategory getCategory() {
+        return ProductCategory.MERCHANDISING;
+    }
+
     @Override
     public String describeProduct() {
         return String.format("Merchandising (MANUFACTURED): %s", DESCRIPTION);
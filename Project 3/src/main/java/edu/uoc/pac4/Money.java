@@ -0,0 +1,131 @@
+package edu.uoc.pac4;
+
+/**
+ * Represents an exact amount of money.
+ *
+ * The amount is stored as a whole number of cents, so sums of prices, line totals and taxes are exact
+ * integer additions. Hot paths work on the raw cents through the static helpers and only wrap the
+ * result in a Money object at the API boundary.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+    public static final int CENTS_PER_UNIT = 100;
+    public static final int BASIS_POINTS = 10000;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * Returns the amount of money equal to the given number of cents.
+     *
+     * @param cents the amount in cents
+     * @return the amount of money
+     */
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Returns the amount of money closest to the given decimal value, rounded to the nearest cent.
+     *
+     * @param amount the decimal amount
+     * @return the amount of money
+     */
+    public static Money of(double amount) {
+        return ofCents(toCents(amount));
+    }
+
+    /**
+     * Converts a decimal amount to cents, rounding half up to the nearest cent.
+     *
+     * @param amount the decimal amount
+     * @return the amount in cents
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * Returns the tax included in a gross amount, rounded half up to the nearest cent.
+     *
+     * @param grossCents       the gross amount (tax included) in cents
+     * @param rateBasisPoints  the tax rate in basis points (2100 for 21%)
+     * @return the included tax in cents
+     */
+    public static long includedTax(long grossCents, long rateBasisPoints) {
+        long divisor = BASIS_POINTS + rateBasisPoints;
+        long magnitude = (2 * Math.abs(grossCents) * rateBasisPoints + divisor) / (2 * divisor);
+        return grossCents < 0 ? -magnitude : magnitude;
+    }
+
+    /**
+     * Returns this amount in cents.
+     *
+     * @return the amount in cents
+     */
+    public long getCents() {
+        return cents;
+    }
+
+    /**
+     * Returns this amount as a decimal value.
+     *
+     * @return the amount as a double
+     */
+    public double toDouble() {
+        return (double) cents / CENTS_PER_UNIT;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(long quantity) {
+        return ofCents(Math.multiplyExact(cents, quantity));
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Money other = (Money) obj;
+        return cents == other.cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * Returns the amount with two decimal digits, e.g. {@code 12.50}.
+     *
+     * @return a string representation of the amount
+     */
+    @Override
+    public String toString() {
+        long magnitude = Math.abs(cents);
+        long fraction = magnitude % CENTS_PER_UNIT;
+        return (cents < 0 ? "-" : "") + magnitude / CENTS_PER_UNIT + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
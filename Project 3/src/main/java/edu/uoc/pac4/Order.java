@@ -3,38 +3,77 @@ package edu.uoc.pac4;
 import edu.uoc.pac4.exception.OrderException;
 import edu.uoc.pac4.exception.OrderItemException;
 
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Arrays;
-import java.util.UUID;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.ObjIntConsumer;
 
 public class Order implements Billable, Comparable<Order> {
-    public static final int MAX_ORDER_ITEMS = 10;
-    private final String id;
+    private static final OrderListener[] NO_LISTENERS = {};
+    private final long id;
+    private String idText;
     private User user;
-    private OrderItem[] orderItems;
+    private final OrderLines orderItems;
     private LocalDate deliveryDate;
-    private int itemCount;
     private LocalDate orderDate;
+    private final TaxEngine taxEngine;
+    private final Destination destination;
+    private volatile OrderListener[] listeners = NO_LISTENERS;
 
     public Order(User user, LocalDate orderDate) throws OrderException {
+        this(user, orderDate, OrderIdGenerator.timeOrdered());
+    }
+
+    public Order(User user, LocalDate orderDate, OrderIdGenerator idGenerator) throws OrderException {
+        this(user, orderDate, idGenerator, false);
+    }
+
+    private Order(User user, LocalDate orderDate, OrderIdGenerator idGenerator, boolean concurrent)
+            throws OrderException {
         if (user == null) {
             throw new OrderException(OrderException.ERR_NULL_USER);
         }
-        this.id = generateOrderId();
+        this.id = idGenerator.nextId();
         this.user = user;
         this.orderDate = orderDate;
-        System.out.println("Order Date: " + orderDate);
         this.deliveryDate = null;
-        this.orderItems = new OrderItem[MAX_ORDER_ITEMS];
-        this.itemCount = 0;
+        this.taxEngine = TaxEngine.getDefault();
+        this.destination = Destination.of(user);
+        this.orderItems = concurrent ? new ConcurrentOrderLines(this) : new SequentialOrderLines(this);
+        OrderEventJournal.getDefault().publish(OrderEventType.CREATED, this, null, 0, orderDate, null);
+    }
+
+
+    /**
+     * Creates an order whose lines can be added, removed and changed from several threads at once.
+     * Totals, bills and item arrays read from it are consistent snapshots.
+     *
+     * @param user      the user placing the order
+     * @param orderDate the date of the order
+     * @return a new thread-safe order
+     * @throws OrderException if the user is null
+     */
+    public static Order concurrent(User user, LocalDate orderDate) throws OrderException {
+        return new Order(user, orderDate, OrderIdGenerator.timeOrdered(), true);
     }
 
-    private String generateOrderId() {
-        return UUID.randomUUID().toString();
+    /**
+     * Recreates a persisted order with its original id and delivery date, which is not checked against
+     * the order date.
+     */
+    static Order restore(User user, LocalDate orderDate, LocalDate deliveryDate, long id, boolean concurrent)
+            throws OrderException {
+        Order order = new Order(user, orderDate, () -> id, concurrent);
+        order.deliveryDate = deliveryDate;
+        return order;
     }
 
+    public boolean isConcurrent() {
+        return orderItems.isConcurrent();
+    }
 
     private void setUser(User user) {
         if (user == null) {
@@ -52,13 +91,9 @@ public class Order implements Billable, Comparable<Order> {
             throw new OrderItemException(OrderItemException.ERR_NULL_PRODUCT);
         }
 
-        if (itemCount < MAX_ORDER_ITEMS) {
-            orderItems[itemCount] = new OrderItem(this, product, quantity);
-            itemCount++;
-            return true;
-        } else {
-            return false;
-        }
+        orderItems.add(product, quantity);
+        OrderEventJournal.getDefault().publish(OrderEventType.ITEM_ADDED, this, product, quantity, null, null);
+        return true;
     }
 
     public LocalDate getDeliveryDate() {
@@ -70,95 +105,227 @@ public class Order implements Billable, Comparable<Order> {
             throw new OrderException(OrderException.ERR_WRONG_DELIVERY_DATE);
         }
         this.deliveryDate = deliveryDate;
+        if (deliveryDate != null) {
+            OrderEventJournal.getDefault().publish(OrderEventType.DELIVERED, this, null, 0, deliveryDate, null);
+        }
+        for (OrderListener listener : listeners) {
+            listener.deliveryDateChanged(this, deliveryDate);
+        }
     }
 
 
     public boolean removeOrderItem(Product product, int quantity) {
-        int index = getOrderItemIndex(product);
-        if (index != -1) {
-            OrderItem orderItem = orderItems[index];
-            int newQuantity = orderItem.getQuantity() - quantity;
-
-            if (newQuantity <= 0) {
-                orderItems[index] = null;
-                shiftOrderItems(index);
-            } else {
-                orderItem.setQuantity(newQuantity);
-            }
-
-            return true;
+        int removed = orderItems.remove(product, quantity);
+        if (removed < 0) {
+            return false;
         }
+        OrderEventJournal.getDefault().publish(OrderEventType.ITEM_REMOVED, this, product, removed, null, null);
+        return true;
+    }
 
-        return false;
+    public double getTotalPrice() {
+        return (double) getTotalCents() / Money.CENTS_PER_UNIT;
     }
 
-    private void shiftOrderItems(int startIndex) {
-        for (int i = startIndex; i < itemCount - 1; i++) {
-            orderItems[i] = orderItems[i + 1];
-        }
-        orderItems[itemCount - 1] = null;
-        itemCount--;
+    public double getTotalTax() {
+        return (double) getTaxCents() / Money.CENTS_PER_UNIT;
     }
 
-    public double getTotalPrice() {
-        double totalPrice = 0.0;
-        for (OrderItem orderItem : orderItems) {
-            if (orderItem != null) {
-                totalPrice += orderItem.getTotalPrice();
-            }
+    public Money getTotal() {
+        return Money.ofCents(getTotalCents());
+    }
+
+    public Money getTax() {
+        return Money.ofCents(getTaxCents());
+    }
+
+    long getTotalCents() {
+        return orderItems.getTotalCents();
+    }
+
+    long getTaxCents() {
+        return orderItems.getTaxCents();
+    }
+
+    /**
+     * Returns the taxable amounts and taxes of this order grouped by tax rate.
+     *
+     * @return the tax summary of this order
+     */
+    public TaxSummary getTaxSummary() {
+        TaxSummary summary = new TaxSummary();
+        addTaxTo(summary);
+        return summary;
+    }
+
+    /**
+     * Passes the total of this order to an action, keeping its lines from changing until it returns.
+     */
+    void withTotalCents(LongConsumer action) {
+        long stamp = orderItems.lockSnapshot();
+        try {
+            action.accept(orderItems.snapshotTotalCents());
+        } finally {
+            orderItems.unlockSnapshot(stamp);
         }
-        return totalPrice;
     }
 
-    private int getOrderItemIndex(Product product) {
-        for (int i = 0; i < itemCount; i++) {
-            if (orderItems[i] != null && orderItems[i].getProduct().equals(product)) {
-                return i;
-            }
+    void addTaxTo(TaxSummary summary) {
+        long stamp = orderItems.lockSnapshot();
+        try {
+            taxEngine.addTo(summary, orderItems.snapshotCategoryTotals(), destination);
+        } finally {
+            orderItems.unlockSnapshot(stamp);
         }
-        return -1;
     }
 
-    @Override
-    public double taxValue(double totalPrice) {
-        return totalPrice - totalPrice / (1 + Billable.TAX);
+    /**
+     * Returns the engine resolving the tax rates of this order, fixed when the order is created.
+     *
+     * @return the tax engine of this order
+     */
+    public TaxEngine getTaxEngine() {
+        return taxEngine;
     }
 
-    @Override
-    public String bill() {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * Returns where this order is shipped to, resolved from the user's address when the order is created.
+     *
+     * @return the destination of this order
+     */
+    public Destination getDestination() {
+        return destination;
+    }
 
-        for (int i = 0; i < itemCount; i++) {
-            OrderItem orderItem = orderItems[i];
-            sb.append(String.format("#%d: %s%n", i + 1, orderItem.bill()));
+    /**
+     * Registers a listener of the changes of this order. The current lines and then the current date
+     * are first reported to it, atomically with the registration.
+     */
+    void addListener(OrderListener listener) {
+        long stamp = orderItems.lockSnapshot();
+        try {
+            synchronized (this) {
+                OrderListener[] extended = Arrays.copyOf(listeners, listeners.length + 1);
+                extended[extended.length - 1] = listener;
+                listeners = extended;
+                for (OrderItem orderItem : orderItems.snapshotItems()) {
+                    listener.linesChanged(this, orderItem.getProduct(), orderItem.getQuantity(), 1);
+                }
+                listener.orderDateChanged(this, null, orderDate);
+            }
+        } finally {
+            orderItems.unlockSnapshot(stamp);
         }
+    }
 
-        double totalTax = taxValue(getTotalPrice());
-        String totalPriceFormatted = formatDecimal(getTotalPrice());
-        String totalTaxFormatted = formatDecimal(totalTax);
+    /**
+     * Unregisters a listener of the changes of this order. The current date and lines are reported to
+     * it as removed, atomically with the unregistration.
+     */
+    void removeListener(OrderListener listener) {
+        long stamp = orderItems.lockSnapshot();
+        try {
+            synchronized (this) {
+                OrderListener[] current = listeners;
+                int index = 0;
+                while (index < current.length && current[index] != listener) {
+                    index++;
+                }
+                if (index == current.length) {
+                    return;
+                }
+                OrderListener[] remaining = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, index + 1, remaining, index, remaining.length - index);
+                listeners = remaining.length == 0 ? NO_LISTENERS : remaining;
+                listener.orderDateChanged(this, orderDate, null);
+            }
+            for (OrderItem orderItem : orderItems.snapshotItems()) {
+                listener.linesChanged(this, orderItem.getProduct(), -orderItem.getQuantity(), -1);
+            }
+        } finally {
+            orderItems.unlockSnapshot(stamp);
+        }
+    }
 
+    /**
+     * Called by the lines of this order, while mutators hold their shared lock, when a line changes.
+     */
+    void linesChanged(Product product, long units, int lines) {
+        for (OrderListener listener : listeners) {
+            listener.linesChanged(this, product, units, lines);
+        }
+    }
 
-        sb.append(String.format("TOTAL = %.1f | Tax: %s", getTotalPrice(), totalTaxFormatted).replaceAll(",", "."));
-        return sb.toString();
+    /**
+     * Called by an order item of this order to change its quantity, so the running totals follow the
+     * line without re-summing the whole order.
+     */
+    void changeQuantity(OrderItem orderItem, int quantity) {
+        orderItems.setQuantity(orderItem, quantity);
     }
 
-    private String formatDecimal(double value) {
-        DecimalFormat decimalFormat = new DecimalFormat("#.##");
-        decimalFormat.setRoundingMode(RoundingMode.HALF_UP);
-        String formattedValue = decimalFormat.format(value);
-        formattedValue = formattedValue.replaceAll("\\.(\\d*?)0*$", ".$1");
-        return formattedValue;
+    @Override
+    public void bill(Appendable out) throws IOException {
+        bill(out, false);
     }
 
+    /**
+     * Writes the bill, optionally dropping a trailing zero from the line taxes as batch reports do.
+     */
+    void bill(Appendable out, boolean compactTax) throws IOException {
+        if (!orderItems.isConcurrent()) {
+            renderBill(out, compactTax);
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        long stamp = orderItems.lockSnapshot();
+        try {
+            renderBill(sb, compactTax);
+        } finally {
+            orderItems.unlockSnapshot(stamp);
+        }
+        out.append(sb);
+    }
 
+    private void renderBill(Appendable out, boolean compactTax) throws IOException {
+        int line = 1;
+        for (OrderItem orderItem : orderItems.snapshotItems()) {
+            out.append('#');
+            BillFormat.appendLong(out, line++);
+            out.append(": ");
+            orderItem.bill(out, compactTax);
+            out.append(BillFormat.LINE_SEPARATOR);
+        }
 
+        out.append("TOTAL = ");
+        BillFormat.appendOneDecimal(out, orderItems.snapshotTotalCents());
+        out.append(" | Tax: ");
+        BillFormat.appendTrimmed(out, orderItems.snapshotTaxCents());
+    }
 
     public LocalDate getOrderDate() {
         return orderDate;
     }
 
+    /**
+     * Sets the date of this order. Concurrent orders are held still while their listeners are told, so
+     * the lines they read from {@link #forEachLineHeld} are those dated before and after the change.
+     *
+     * @param orderDate the new order date
+     */
     public void setOrderDate(LocalDate orderDate) {
-        this.orderDate = orderDate;
+        long stamp = orderItems.lockSnapshot();
+        try {
+            synchronized (this) {
+                LocalDate previous = this.orderDate;
+                this.orderDate = orderDate;
+                for (OrderListener listener : listeners) {
+                    listener.orderDateChanged(this, previous, orderDate);
+                }
+            }
+        } finally {
+            orderItems.unlockSnapshot(stamp);
+        }
     }
 
 
@@ -173,25 +340,149 @@ public class Order implements Billable, Comparable<Order> {
             return dateComparison;
         }
 
-        return Double.compare(other.getTotalPrice(), getTotalPrice());
+        return Long.compare(other.getTotalCents(), getTotalCents());
     }
 
     public String getId() {
+        if (idText == null) {
+            idText = formatId(id);
+        }
+        return idText;
+    }
+
+    public long getNumericId() {
         return id;
     }
 
+    /**
+     * Returns the text form of an order id: 16 lowercase hexadecimal digits, so that text ids sort
+     * in the same order as numeric ones.
+     *
+     * @param id the numeric order id
+     * @return the text form of the id
+     */
+    public static String formatId(long id) {
+        char[] digits = new char[16];
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = Character.forDigit((int) (id & 0xF), 16);
+            id >>>= 4;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Parses the text form of an order id, as returned by {@link #formatId(long)}.
+     *
+     * @param id the text form of the id
+     * @return the numeric order id
+     * @throws NumberFormatException if the text is not a hexadecimal number of at most 16 digits
+     */
+    public static long parseId(String id) {
+        if (id.isEmpty() || id.length() > 16) {
+            throw new NumberFormatException("Invalid order id: " + id);
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            int digit = Character.digit(id.charAt(i), 16);
+            if (digit < 0) {
+                throw new NumberFormatException("Invalid order id: " + id);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return id == ((Order) obj).id;
+    }
+
+    /**
+     * Mixes the id before folding it, since time-ordered ids of the same second share their high bits
+     * and differ mostly in the low bits of the millisecond and sequence fields.
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id * 0x9E3779B97F4A7C15L);
+    }
+
     public User getUser() {
         return user;
     }
 
     public OrderItem[] getOrderItems() {
-        OrderItem[] items = new OrderItem[itemCount];
-        System.arraycopy(orderItems, 0, items, 0, itemCount);
-        return items;
+        return getItems().toArray(new OrderItem[0]);
+    }
+
+    /**
+     * Returns a read-only view of the lines of this order, in insertion order. No copy is made for
+     * regular orders; concurrent orders return a consistent snapshot instead.
+     *
+     * @return an unmodifiable collection with the lines of this order
+     */
+    public Collection<OrderItem> getItems() {
+        long stamp = orderItems.lockSnapshot();
+        try {
+            return orderItems.snapshotItems();
+        } finally {
+            orderItems.unlockSnapshot(stamp);
+        }
+    }
+
+    /**
+     * Performs the given action on every line of this order, in insertion order, without copying them.
+     *
+     * @param action the action to perform on each line
+     */
+    public void forEachItem(Consumer<? super OrderItem> action) {
+        for (OrderItem orderItem : getItems()) {
+            action.accept(orderItem);
+        }
+    }
+
+    /**
+     * Passes the product and quantity of every line to the given action, in insertion order. Concurrent
+     * orders are held still while their lines are read.
+     */
+    void forEachLine(ObjIntConsumer<Product> action) {
+        long stamp = orderItems.lockSnapshot();
+        try {
+            for (OrderItem orderItem : orderItems.snapshotItems()) {
+                action.accept(orderItem.getProduct(), orderItem.getQuantity());
+            }
+        } finally {
+            orderItems.unlockSnapshot(stamp);
+        }
+    }
+
+    /**
+     * Passes the product and quantity of every line to the given action, like {@link #forEachLine}, but
+     * only from a listener told of a date change, while the order is already held still.
+     */
+    void forEachLineHeld(ObjIntConsumer<Product> action) {
+        for (OrderItem orderItem : orderItems.snapshotItems()) {
+            action.accept(orderItem.getProduct(), orderItem.getQuantity());
+        }
+    }
+
+    /**
+     * Returns the line of this order holding the given product.
+     *
+     * @param product the product to look for
+     * @return the line holding the product, or null if the order does not contain it
+     */
+    public OrderItem getOrderItem(Product product) {
+        return product == null ? null : orderItems.get(product);
     }
 
 
     public int getItemCount() {
-        return itemCount;
+        return orderItems.size();
     }
 }
@@ -1,32 +1,84 @@
 package edu.uoc.pac4;
 import edu.uoc.pac4.exception.OrderException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.stream.Collectors;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Represents a batch of orders.
+ *
+ * Orders are kept in a table sharded by order id, so adding, removing and looking up an order, either
+ * by instance or by id, take constant time and lock a single shard, whatever the size of the batch.
+ * The table stores the numeric form of the ids, so the id index costs no memory beyond the table.
+ * The batch also follows the changes of its orders to keep the units sold of every product, so income
+ * audits do not visit the orders, an index of orders by date for range queries, and rollups of the
+ * revenue by day, week and month, so revenue over a period is read without visiting its orders.
+ * Approximate statistics of its users, products and order values are kept in fixed-size sketches.
+ * Every change of the batch and its orders is published to the listeners of its change feed.
  */
 public class OrderBatch {
+    /**
+     * Maximum size of the batches constructed without an explicit one.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    /**
+     * Maximum size of a batch that accepts any number of orders.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
     private static final String MSG_ERR_NULL = "[ERROR] The Order object cannot be null";
+    private static final String MSG_ERR_NULL_ID = "[ERROR] The order id cannot be null";
+    private static final String MSG_ERR_K = "[ERROR] The number of orders cannot be negative";
+    private static final String MSG_ERR_NULL_COMPARATOR = "[ERROR] The comparator cannot be null";
+    private static final String MSG_ERR_NULL_DELIVERY_DATE = "[ERROR] The delivery date cannot be null";
+    private static final String MSG_ERR_MAX_SIZE = "[ERROR] The maximum size must be greater than zero";
+    private static final String MSG_ERR_NULL_DATE = "[ERROR] The dates cannot be null";
+    private static final String MSG_ERR_NULL_PERIOD = "[ERROR] The period cannot be null";
     private String name;
     private String description;
     private final int MAX_SIZE;
-    private final Set<Order> orders;
+    private final OrderTable orders;
+    private final ProductIndex productIndex = new ProductIndex();
+    private final OrderDateIndex dateIndex = new OrderDateIndex();
+    private final RevenueIndex revenueIndex = new RevenueIndex();
+    private final OrderSketches sketches = new OrderSketches(this::repriceOrderValues);
+    private final OrderChangeFeed changeFeed = new OrderChangeFeed();
+    private final Indexer indexer = new Indexer();
+    private volatile OrderJournal journal;
 
     /**
-     * Constructs an OrderBatch with the specified name and description.
+     * Constructs an OrderBatch with the specified name and description, holding up to
+     * {@link #DEFAULT_MAX_SIZE} orders.
      *
      * @param name        the name of the order batch
      * @param description the description of the order batch
      */
     public OrderBatch(String name, String description) {
+        this(name, description, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructs an OrderBatch with the specified name, description and maximum size.
+     *
+     * @param name        the name of the order batch
+     * @param description the description of the order batch
+     * @param maxSize     the maximum number of orders, or {@link #UNBOUNDED}
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public OrderBatch(String name, String description, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException(MSG_ERR_MAX_SIZE);
+        }
         this.name = name;
         this.description = description;
-        this.MAX_SIZE = 1000;
-        this.orders = new HashSet<>(MAX_SIZE);
+        this.MAX_SIZE = maxSize;
+        this.orders = new OrderTable();
     }
 
     /**
@@ -80,7 +132,43 @@ public class OrderBatch {
      * @return a list of orders in the order batch
      */
     public List<Order> getOrders() {
-        return new ArrayList<>(orders);
+        return orders.toList();
+    }
+
+    /**
+     * Returns the number of orders in the order batch.
+     *
+     * @return the number of orders in the order batch
+     */
+    public int size() {
+        return orders.size();
+    }
+
+    void forEachOrder(Consumer<? super Order> action) {
+        orders.forEach(action);
+    }
+
+    Order get(long id) {
+        return orders.get(id);
+    }
+
+    Stream<Order> streamOrders(boolean parallel) {
+        return orders.stream(parallel);
+    }
+
+    boolean isParallelScan() {
+        return orders.isParallel();
+    }
+
+    Stream<Order> streamBetween(long fromDay, long toDay) {
+        return dateIndex.streamBetween(fromDay, toDay);
+    }
+
+    /**
+     * Records the later changes of the batch and its orders in a journal.
+     */
+    void attach(OrderJournal journal) {
+        this.journal = journal;
     }
 
     /**
@@ -95,11 +183,72 @@ public class OrderBatch {
             throw new NullPointerException(MSG_ERR_NULL);
         }
 
-        if (isFull()) {
+        if (!orders.add(order, MAX_SIZE)) {
             return false;
         }
+        sketches.orderValueAdded(0);
+        OrderJournal current = journal;
+        if (current != null) {
+            current.orderAdded(order);
+        }
+        changeFeed.publish(OrderChangeType.ORDER_ADDED, order, null, 0, order.getOrderDate());
+        register(order, current);
+        sketches.orderAdded(order);
+        return true;
+    }
+
+    /**
+     * Adds several orders to the order batch, taking the lock of each shard of the batch once instead
+     * of once per order.
+     *
+     * @param orders the orders to add
+     * @return the number of orders added; the others were not added because the order batch became
+     * full or already held an order with the same id
+     * @throws NullPointerException if some order is null
+     */
+    public int addOrders(Collection<? extends Order> orders) {
+        return addOrders(orders, order -> {
+        });
+    }
+
+    /**
+     * Adds several orders to the order batch, passing the orders that are not added to the given
+     * action.
+     */
+    int addOrders(Collection<? extends Order> orders, Consumer<? super Order> rejected) {
+        List<? extends Order> batch = new ArrayList<>(orders);
+        for (Order order : batch) {
+            if (order == null) {
+                throw new NullPointerException(MSG_ERR_NULL);
+            }
+        }
+        List<Order> added = this.orders.addAll(batch, MAX_SIZE, rejected);
+        OrderJournal current = journal;
+        for (Order order : added) {
+            sketches.orderValueAdded(0);
+            if (current != null) {
+                current.orderAdded(order);
+            }
+            changeFeed.publish(OrderChangeType.ORDER_ADDED, order, null, 0, order.getOrderDate());
+            register(order, current);
+            sketches.orderAdded(order);
+        }
+        return added.size();
+    }
 
-        return orders.add(order);
+    /**
+     * Registers the indexer on an order just added to the table. An order removed meanwhile may have
+     * been unregistered before being registered, so it is then unregistered again, and its removal is
+     * journaled again, after its addition.
+     */
+    private void register(Order order, OrderJournal current) {
+        order.addListener(indexer);
+        if (orders.get(order.getNumericId()) != order) {
+            order.removeListener(indexer);
+            if (current != null) {
+                current.orderRemoved(order.getNumericId());
+            }
+        }
     }
 
     /**
@@ -114,14 +263,61 @@ public class OrderBatch {
             throw new NullPointerException(MSG_ERR_NULL);
         }
 
-        return orders.remove(order);
+        return removeById(order.getNumericId()) != null;
+    }
+
+    /**
+     * Removes the order with the specified id from the order batch.
+     *
+     * @param id the id of the order to remove, as returned by {@link Order#getId()}
+     * @return the removed order, or null if no order of the batch has that id
+     * @throws NullPointerException if the id is null
+     */
+    public Order removeById(String id) {
+        if (id == null) {
+            throw new NullPointerException(MSG_ERR_NULL_ID);
+        }
+        try {
+            return removeById(Order.parseId(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Order removeById(long id) {
+        Order removed = orders.remove(id, (order, valueCents) -> sketches.orderValueRemoved(valueCents));
+        if (removed != null) {
+            OrderJournal current = journal;
+            if (current != null) {
+                current.orderRemoved(id);
+            }
+            changeFeed.publish(OrderChangeType.ORDER_REMOVED, removed, null, 0, null);
+            removed.removeListener(indexer);
+            OrderEventJournal.getDefault().publish(OrderEventType.REMOVED_FROM_BATCH, removed, null, 0, null, this);
+        }
+        return removed;
     }
 
     /**
      * Removes all orders from the order batch.
      */
     public void remove() {
-        orders.clear();
+        OrderJournal current = journal;
+        if (current != null) {
+            current.allRemoved();
+        }
+        List<Order> removed = new ArrayList<>(orders.size());
+        orders.clear((order, valueCents) -> {
+            sketches.orderValueRemoved(valueCents);
+            removed.add(order);
+        });
+        OrderEventJournal eventJournal = OrderEventJournal.getDefault();
+        for (Order order : removed) {
+            changeFeed.publish(OrderChangeType.ORDER_REMOVED, order, null, 0, null);
+            order.removeListener(indexer);
+            eventJournal.publish(OrderEventType.REMOVED_FROM_BATCH, order, null, 0, null, this);
+        }
+        sketches.ordersCleared();
     }
 
     /**
@@ -131,7 +327,36 @@ public class OrderBatch {
      * @return true if the order exists in the order batch, false otherwise
      */
     public boolean exists(Order order) {
-        return orders.contains(order);
+        return order != null && orders.get(order.getNumericId()) != null;
+    }
+
+    /**
+     * Checks if an order with the specified id exists in the order batch.
+     *
+     * @param id the id of the order to check, as returned by {@link Order#getId()}
+     * @return true if an order of the batch has that id, false otherwise
+     * @throws NullPointerException if the id is null
+     */
+    public boolean existsById(String id) {
+        return findById(id) != null;
+    }
+
+    /**
+     * Returns the order with the specified id.
+     *
+     * @param id the id of the order to find, as returned by {@link Order#getId()}
+     * @return the order with that id, or null if no order of the batch has it
+     * @throws NullPointerException if the id is null
+     */
+    public Order findById(String id) {
+        if (id == null) {
+            throw new NullPointerException(MSG_ERR_NULL_ID);
+        }
+        try {
+            return orders.get(Order.parseId(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     /**
@@ -140,7 +365,7 @@ public class OrderBatch {
      * @return true if the order batch is empty, false otherwise
      */
     public boolean isEmpty() {
-        return orders.isEmpty();
+        return orders.size() == 0;
     }
 
     /**
@@ -149,41 +374,140 @@ public class OrderBatch {
      * @return true if the order batch is full, false otherwise
      */
     public boolean isFull() {
-        return orders.size() == MAX_SIZE;
+        return orders.size() >= MAX_SIZE;
+    }
+
+    /**
+     * Delivers today all orders in the order batch that have an order date after the specified date.
+     *
+     * @param orderDate the date to compare the order dates with
+     * @return the number of orders delivered
+     */
+    public int deliverOrdersAfterDate(LocalDate orderDate) {
+        return markDelivered(orderDate.plusDays(1), LocalDate.MAX, LocalDate.now());
+    }
+
+    /**
+     * Hands the undelivered orders of the batch placed after the specified date to a carrier, through
+     * a dispatcher, and sets the delivery date the carrier answers on every order it delivers.
+     *
+     * @param orderDate  the date to compare the order dates with
+     * @param dispatcher the dispatcher calling the carrier
+     * @return the report of the dispatch
+     * @throws InterruptedException if the calling thread is interrupted while the orders are dispatched
+     */
+    public DeliveryReport deliverOrdersAfterDate(LocalDate orderDate, DeliveryDispatcher dispatcher)
+            throws InterruptedException {
+        return dispatcher.dispatch(query().placedAfter(orderDate).undelivered().toList());
+    }
+
+    /**
+     * Returns the change feed of the batch, to register listeners following its changes and those of
+     * its orders.
+     *
+     * @return the change feed of the batch
+     */
+    public OrderChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Returns a query over the orders of the batch, to be narrowed with filters, an ordering and a
+     * limit. For instance, the ten largest orders of a user placed in March are
+     * {@code query().byUser(user).placedBetween(march1, march31).orderBy(byTotal.reversed()).limit(10)}.
+     *
+     * @return a query matching every order of the batch
+     */
+    public OrderQuery query() {
+        return new OrderQuery(this);
+    }
+
+    /**
+     * Returns the orders placed between two dates, both included, by ascending order date.
+     *
+     * @param from the first order date
+     * @param to   the last order date
+     * @return the orders placed in the period
+     */
+    public List<Order> ordersBetween(LocalDate from, LocalDate to) {
+        List<Order> result = new ArrayList<>();
+        dateIndex.forEachBetween(from.toEpochDay(), to.toEpochDay(), result::add);
+        return result;
     }
 
     /**
-     * Delivers all orders in the order batch that have an order date after the specified date.
+     * Returns the orders placed after a date, by ascending order date.
      *
      * @param orderDate the date to compare the order dates with
+     * @return the orders placed after the date
      */
-    public void deliverOrdersAfterDate(LocalDate orderDate) {
-        orders.stream()
-                .filter(order -> order.getOrderDate().isAfter(orderDate))
-                .forEach(order -> {
-                    try {
-                        order.setDeliveryDate(LocalDate.now());
-                    } catch (OrderException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+    public List<Order> ordersAfter(LocalDate orderDate) {
+        return ordersBetween(orderDate.plusDays(1), LocalDate.MAX);
     }
 
+    /**
+     * Sets the delivery date of the orders placed between two dates, both included. Only those orders
+     * are visited. Orders placed after the delivery date are left undelivered.
+     *
+     * @param from         the first order date
+     * @param to           the last order date
+     * @param deliveryDate the delivery date to set
+     * @return the number of orders delivered
+     */
+    public int markDelivered(LocalDate from, LocalDate to, LocalDate deliveryDate) {
+        if (deliveryDate == null) {
+            throw new NullPointerException(MSG_ERR_NULL_DELIVERY_DATE);
+        }
+        int[] delivered = new int[1];
+        dateIndex.forEachBetween(from.toEpochDay(), Math.min(to.toEpochDay(), deliveryDate.toEpochDay()), order -> {
+            try {
+                order.setDeliveryDate(deliveryDate);
+                delivered[0]++;
+            } catch (OrderException e) {
+                // The order date changed after the index was read; the order is not delivered.
+            }
+        });
+        return delivered[0];
+    }
 
     /**
-     * Returns a list of the largest orders in the order batch.
+     * Returns a list of the largest orders in the order batch, i.e. those sharing the highest total
+     * price, sorted by order date. The totals are read once per order in a single pass.
      *
      * @return a list of the largest orders in the order batch
      */
     public List<Order> getLargestOrders() {
-        Optional<Double> maxPrice = orders.stream()
-                .map(Order::getTotalPrice)
-                .max(Comparator.naturalOrder());
+        LargestOrders largest = orders.collect(LargestOrders::new, LargestOrders::add, LargestOrders::merge);
+        largest.orders.sort(Comparator.comparing(Order::getOrderDate).thenComparingLong(Order::getNumericId));
+        return largest.orders;
+    }
 
-        return maxPrice.map(aDouble -> orders.stream()
-                .filter(order -> Math.abs(order.getTotalPrice() - aDouble) < 0.001)
-                .sorted()
-                .collect(Collectors.toList())).orElse(Collections.emptyList());
+    /**
+     * Returns the first k orders of the order batch according to a comparator, sorted by it. For
+     * instance, {@code topK(10, Comparator.comparing(Order::getTotal).reversed())} returns the ten most
+     * expensive orders. Each shard of the batch keeps a heap of at most k orders, and the heaps of the
+     * shards, filled in parallel for large batches, are merged at the end.
+     *
+     * @param k          the maximum number of orders to return
+     * @param comparator the order in which orders are ranked
+     * @return at most k orders, sorted by the comparator
+     * @throws IllegalArgumentException if k is negative
+     * @throws NullPointerException     if the comparator is null
+     */
+    public List<Order> topK(int k, Comparator<? super Order> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException(MSG_ERR_K);
+        }
+        if (comparator == null) {
+            throw new NullPointerException(MSG_ERR_NULL_COMPARATOR);
+        }
+        if (k == 0) {
+            return new ArrayList<>();
+        }
+        List<Order> top = orders.collect(() -> new BoundedHeap(k, comparator), BoundedHeap::add,
+                BoundedHeap::merge).toList();
+        top.sort(comparator);
+        return top;
     }
 
     /**
@@ -193,43 +517,338 @@ public class OrderBatch {
      * @return the total income generated by the product
      */
     public double auditIncomeByProduct(Product product) {
-        double totalIncome = 0.0;
-        for (Order order : orders) {
-            for (OrderItem orderItem : order.getOrderItems()) {
-                if (orderItem.getProduct().equals(product)) {
-                    double income = orderItem.getProduct().getPrice() * orderItem.getQuantity();
-                    totalIncome += income;
-                }
+        return auditIncome(product).toDouble();
+    }
+
+    /**
+     * Calculates the exact total income generated by a specific product in the order batch.
+     *
+     * @param product the product to calculate the income for
+     * @return the total income generated by the product
+     */
+    public Money auditIncome(Product product) {
+        if (product == null) {
+            return Money.ZERO;
+        }
+        return Money.ofCents(productIndex.incomeCents(product));
+    }
+
+    /**
+     * Calculates the number of units of a specific product in the orders of the batch.
+     *
+     * @param product the product to count the units of
+     * @return the units of the product in the order batch
+     */
+    public long auditUnits(Product product) {
+        if (product == null) {
+            return 0;
+        }
+        return productIndex.units(product);
+    }
+
+    /**
+     * Calculates the total income generated by every product present in the order batch, in a single
+     * pass over the products.
+     *
+     * @return the income of each product in the order batch
+     */
+    public Map<Product, Money> auditIncomeByProduct() {
+        Map<Product, Money> income = new HashMap<>();
+        productIndex.forEachIncome((product, incomeCents) -> income.put(product, Money.ofCents(incomeCents)));
+        return income;
+    }
+
+    /**
+     * Returns the revenue, tax, orders and units of the orders placed between two dates, both included.
+     * The totals are read from the daily, weekly and monthly rollups of the batch, not from its orders.
+     *
+     * @param from the first order date
+     * @param to   the last order date
+     * @return the totals of the period
+     * @throws NullPointerException if a date is null
+     */
+    public RevenueRollup revenueBetween(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new NullPointerException(MSG_ERR_NULL_DATE);
+        }
+        return revenueIndex.between(from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * Returns the revenue, tax, orders and units of every day, ISO week or month between two dates that
+     * holds some order, by ascending date. The first and last periods are clipped to the dates.
+     *
+     * @param period the length of the periods
+     * @param from   the first order date
+     * @param to     the last order date
+     * @return the totals of each period holding orders
+     * @throws NullPointerException if the period or a date is null
+     */
+    public List<RevenueRollup> revenueBy(RollupPeriod period, LocalDate from, LocalDate to) {
+        if (period == null) {
+            throw new NullPointerException(MSG_ERR_NULL_PERIOD);
+        }
+        if (from == null || to == null) {
+            throw new NullPointerException(MSG_ERR_NULL_DATE);
+        }
+        return revenueIndex.by(period, from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * Returns the sketches estimating the distinct users, the units of the top products and the order
+     * values of the batch. They are kept up to date as the batch changes, answer in constant time, and
+     * can be merged with those of other batches. Order values are repriced on the first read after some
+     * product price changed, which visits every order once.
+     *
+     * @return the sketches of the order batch
+     */
+    public OrderSketches getSketches() {
+        return sketches;
+    }
+
+    /**
+     * Brings the value every order is sketched with to its total at the current prices.
+     */
+    private void repriceOrderValues() {
+        orders.forEach(order -> order.withTotalCents(totalCents -> {
+            long previous = orders.setValue(order, totalCents);
+            if (previous != OrderTable.ABSENT) {
+                sketches.orderValueChanged(previous, totalCents);
             }
+        }));
+    }
+
+    /**
+     * Calculates the taxable amounts and taxes of all the orders in the batch, grouped by tax rate, in a
+     * single pass over the orders.
+     *
+     * @return the tax summary of the order batch
+     */
+    public TaxSummary getTaxSummary() {
+        TaxSummary summary = new TaxSummary();
+        orders.forEach(order -> order.addTaxTo(summary));
+        return summary;
+    }
+
+    /**
+     * Writes an immutable snapshot of this order batch to a file, which {@link OrderBatchSnapshot#open}
+     * reopens without decoding its orders.
+     *
+     * @param path the file to write, replaced atomically if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void snapshot(Path path) throws IOException {
+        OrderBatchSnapshot.write(this, path);
+    }
+
+    /**
+     * Writes the bills of all the orders in the batch, by ascending order date, to a writer. Bills are
+     * streamed one at a time through a pooled buffer, so memory use does not grow with the batch.
+     * Orders placed the same day are written by ascending id. The writer is flushed but not closed.
+     *
+     * @param writer the writer to write the report to
+     * @throws IOException if the writer fails
+     */
+    public void writeReport(Writer writer) throws IOException {
+        char[] buffer = ReportBuffers.acquireChars();
+        try {
+            WriterAppendable out = new WriterAppendable(writer, buffer);
+            writeReport(out);
+            out.flush();
+            writer.flush();
+        } finally {
+            ReportBuffers.release(buffer);
+        }
+    }
+
+    /**
+     * Writes the bills of all the orders in the batch, by ascending order date, to a channel as UTF-8.
+     * Bills are encoded one at a time into a pooled buffer, so memory use does not grow with the
+     * batch. The channel is not closed.
+     *
+     * @param channel the channel to write the report to
+     * @throws IOException if the channel fails
+     */
+    public void writeReport(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ReportBuffers.acquireBytes();
+        try {
+            ChannelAppendable out = new ChannelAppendable(channel, buffer);
+            writeReport(out);
+            out.flush();
+        } finally {
+            ReportBuffers.release(buffer);
         }
-        return totalIncome;
+    }
 
+    private void writeReport(Appendable out) throws IOException {
+        for (Map<Long, Order> day : dateIndex.byDate()) {
+            for (Order order : day.values()) {
+                out.append("###").append(BillFormat.LINE_SEPARATOR);
+                order.bill(out, true);
+                out.append(BillFormat.LINE_SEPARATOR);
+            }
+        }
+        out.append("###");
     }
 
     /**
-     * Returns a string representation of the order batch.
+     * Returns a string representation of the order batch: the report written by
+     * {@link #writeReport(Writer)}.
      *
      * @return a string representation of the order batch
      */
     @Override
     public String toString() {
-        List<Order> sortedOrders = new ArrayList<>(orders);
-        sortedOrders.sort(Comparator.comparing(Order::getOrderDate));
-
         StringBuilder sb = new StringBuilder();
-        for (Order order : sortedOrders) {
-            sb.append("###").append(System.lineSeparator());
-            sb.append(order.bill()).append(System.lineSeparator());
+        try {
+            writeReport(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Orders sharing the highest total seen so far.
+     */
+    private static final class LargestOrders {
+        private long maxCents = Long.MIN_VALUE;
+        private List<Order> orders = new ArrayList<>();
+
+        void add(Order order) {
+            long totalCents = order.getTotalCents();
+            if (totalCents > maxCents) {
+                maxCents = totalCents;
+                orders.clear();
+            }
+            if (totalCents == maxCents) {
+                orders.add(order);
+            }
+        }
+
+        LargestOrders merge(LargestOrders other) {
+            if (other.maxCents > maxCents) {
+                return other;
+            }
+            if (other.maxCents == maxCents) {
+                orders.addAll(other.orders);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Heap keeping the first k orders according to a comparator, with the last of them at the root.
+     */
+    private static final class BoundedHeap {
+        private final int k;
+        private final Comparator<? super Order> comparator;
+        private final PriorityQueue<Order> heap;
+
+        BoundedHeap(int k, Comparator<? super Order> comparator) {
+            this.k = k;
+            this.comparator = comparator;
+            this.heap = new PriorityQueue<>(Math.min(k, 64) + 1, comparator.reversed());
         }
-        sb.append("###");
 
-        String input = sb.toString();
-        String regex = "(Tax: \\d+\\.\\d)0\\b";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(input);
+        void add(Order order) {
+            if (heap.size() < k) {
+                heap.add(order);
+            } else if (comparator.compare(order, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(order);
+            }
+        }
 
-        return matcher.replaceAll("$1");
+        BoundedHeap merge(BoundedHeap other) {
+            for (Order order : other.heap) {
+                add(order);
+            }
+            return this;
+        }
+
+        List<Order> toList() {
+            return new ArrayList<>(heap);
+        }
     }
 
+    /**
+     * Keeps the indexes of the batch up to date with the changes of its orders.
+     *
+     * Changes are reported while the order is locked, and the indexer reads the table meanwhile, to
+     * check if the order is still in the batch and to move the value it is sketched with: the table
+     * never locks an order, nor runs any other code, while a shard is locked.
+     *
+     * The value each order is sketched with is kept next to it in the table. Line changes move it by
+     * their units at the current price, and the sketches reprice every order once some price changed.
+     */
+    private final class Indexer implements OrderListener {
+        @Override
+        public void linesChanged(Order order, Product product, long units, int lines) {
+            productIndex.linesChanged(product, units, lines);
+            sketches.linesChanged(product, units);
+            long deltaCents = product.getPriceCents() * units;
+            long previous = orders.addToValue(order, deltaCents);
+            if (previous != OrderTable.ABSENT) {
+                sketches.orderValueChanged(previous, previous + deltaCents);
+            }
+            // The lines reported while the order joins or leaves the batch are counted by its date change.
+            LocalDate orderDate = order.getOrderDate();
+            if (orderDate != null && dateIndex.contains(order, orderDate)) {
+                revenueIndex.linesChanged(order, orderDate, product, units);
+            }
+            OrderJournal current = journaling(order);
+            if (current != null) {
+                current.lineChanged(order, product, units);
+            }
+            if (changeFeed.isEnabled() && holds(order)) {
+                changeFeed.publish(lines > 0 ? OrderChangeType.LINE_ADDED
+                        : lines < 0 ? OrderChangeType.LINE_REMOVED : OrderChangeType.QUANTITY_CHANGED,
+                        order, product, units, null);
+            }
+        }
+
+        @Override
+        public void orderDateChanged(Order order, LocalDate previous, LocalDate current) {
+            dateIndex.move(order, previous, current);
+            revenueIndex.orderDateChanged(order, previous, current);
+            OrderJournal currentJournal = Objects.equals(previous, current) ? null : journaling(order);
+            if (currentJournal != null) {
+                currentJournal.orderDateChanged(order, current);
+            }
+            // Joining and leaving the batch are published as additions and removals.
+            if (changeFeed.isEnabled() && previous != null && current != null && !previous.equals(current)
+                    && holds(order)) {
+                changeFeed.publish(OrderChangeType.ORDER_DATE_CHANGED, order, null, 0, current);
+            }
+        }
+
+        @Override
+        public void deliveryDateChanged(Order order, LocalDate deliveryDate) {
+            OrderJournal current = journaling(order);
+            if (current != null) {
+                current.deliveryDateChanged(order, deliveryDate);
+            }
+            if (changeFeed.isEnabled() && holds(order)) {
+                changeFeed.publish(OrderChangeType.DELIVERED, order, null, 0, deliveryDate);
+            }
+        }
 
+        /**
+         * Returns the journal if the change of an order has to be recorded. The date and lines reported
+         * when an order joins the batch are recorded after the order itself, while those reported when
+         * it leaves the batch are implied by its removal.
+         */
+        private OrderJournal journaling(Order order) {
+            OrderJournal current = journal;
+            return current != null && holds(order) ? current : null;
+        }
+
+        /**
+         * Checks if the batch holds that very order.
+         */
+        private boolean holds(Order order) {
+            return orders.get(order.getNumericId()) == order;
+        }
+    }
 }
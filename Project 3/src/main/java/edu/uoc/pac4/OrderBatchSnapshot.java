@@ -0,0 +1,334 @@
+package edu.uoc.pac4;
+
+import edu.uoc.pac4.exception.OrderException;
+import edu.uoc.pac4.exception.OrderItemException;
+import edu.uoc.pac4.exception.ProductException;
+import edu.uoc.pac4.exception.UserException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable copy of an order batch stored in a file, opened without reading its orders.
+ *
+ * The file holds a header, the dictionary of the users and products referenced by the orders, an
+ * index with the id, order date and record offset of every order sorted by id, and the order records
+ * in the format of {@link OrderCodec}. Opening a snapshot maps the file into memory and reads only the
+ * header and the dictionary, so it takes the same time whatever the number of orders; an order is
+ * decoded the first time it is accessed, and the pages of the orders never accessed are never loaded.
+ * Lookups by id are binary searches over the mapped index, and date range queries scan it without
+ * decoding the orders outside the range.
+ *
+ * Changes to the orders returned by a snapshot are not written back to its file. Snapshots are
+ * limited to 2 GB.
+ */
+public final class OrderBatchSnapshot {
+    private static final int MAGIC = 0x4F425331;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 3 * Long.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + 2 * Integer.BYTES;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final ByteBuffer file;
+    private final String name;
+    private final String description;
+    private final int maxSize;
+    private final int size;
+    private final int indexOffset;
+    private final int dataOffset;
+    private final OrderCodec.Entities entities;
+    private final ConcurrentMap<Integer, Order> materialized = new ConcurrentHashMap<>();
+
+    private OrderBatchSnapshot(ByteBuffer file) throws IOException {
+        this.file = file;
+        if (file.limit() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new IOException("The file is not an order batch snapshot");
+        }
+        if (file.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported order batch snapshot version " + file.getInt(4));
+        }
+        this.size = file.getInt(8);
+        this.maxSize = file.getInt(12);
+        long dictionaryOffset = file.getLong(16);
+        long indexOffset = file.getLong(24);
+        long dataOffset = file.getLong(32);
+        if (size < 0 || dictionaryOffset < HEADER_SIZE || indexOffset < dictionaryOffset
+                || dataOffset != indexOffset + (long) size * INDEX_ENTRY_SIZE || dataOffset > file.limit()) {
+            throw new IOException("The order batch snapshot is corrupt");
+        }
+        this.indexOffset = (int) indexOffset;
+        this.dataOffset = (int) dataOffset;
+        try {
+            BinaryReader in = new BinaryReader(file.duplicate().position((int) dictionaryOffset)
+                    .limit(this.indexOffset));
+            this.name = in.readString();
+            this.description = in.readString();
+            this.entities = OrderCodec.Entities.read(in);
+        } catch (UserException | ProductException | RuntimeException e) {
+            throw new IOException("The order batch snapshot is corrupt", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of an order batch to a file, replacing it atomically if it exists.
+     *
+     * @param orderBatch the batch to take the snapshot of
+     * @param path       the file to write
+     * @throws IOException if the file cannot be written or the snapshot exceeds 2 GB
+     */
+    static void write(OrderBatch orderBatch, Path path) throws IOException {
+        List<Order> orders = new ArrayList<>(orderBatch.size());
+        orderBatch.forEachOrder(orders::add);
+        orders.sort((first, second) -> Long.compare(first.getNumericId(), second.getNumericId()));
+
+        OrderCodec.Dictionary dictionary = new OrderCodec.Dictionary();
+        BinaryWriter data = new BinaryWriter(32 * orders.size() + 16);
+        BinaryWriter index = new BinaryWriter(INDEX_ENTRY_SIZE * orders.size() + 16);
+        for (Order order : orders) {
+            LocalDate orderDate = order.getOrderDate();
+            index.writeLong(order.getNumericId());
+            index.writeInt(data.length());
+            index.writeInt(orderDate == null ? NO_DATE : (int) orderDate.toEpochDay());
+            OrderCodec.writeOrder(data, order, dictionary);
+        }
+        BinaryWriter header = new BinaryWriter(dictionary.estimatedSize() + HEADER_SIZE + 256);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeInt(orders.size());
+        header.writeInt(orderBatch.getMaxSize());
+        header.writeLong(0);
+        header.writeLong(0);
+        header.writeLong(0);
+        header.writeString(orderBatch.getName());
+        header.writeString(orderBatch.getDescription());
+        dictionary.write(header);
+        long indexOffset = header.length();
+        long dataOffset = indexOffset + index.length();
+        if (dataOffset + data.length() > Integer.MAX_VALUE) {
+            throw new IOException("The order batch snapshot exceeds 2 GB");
+        }
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header.array(), 0, header.length())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        headerBuffer.putLong(16, HEADER_SIZE);
+        headerBuffer.putLong(24, indexOffset);
+        headerBuffer.putLong(32, dataOffset);
+
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer[] sections = {
+                        headerBuffer,
+                        ByteBuffer.wrap(index.array(), 0, index.length()),
+                        ByteBuffer.wrap(data.array(), 0, data.length())
+                };
+                long remaining = dataOffset + data.length();
+                while (remaining > 0) {
+                    remaining -= channel.write(sections);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Opens a snapshot written by {@link OrderBatch#snapshot(Path)}.
+     *
+     * @param path the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static OrderBatchSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The order batch snapshot exceeds 2 GB");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new OrderBatchSnapshot(mapped.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of orders in the snapshot.
+     *
+     * @return the number of orders
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the order at a position of the snapshot, decoding it on first access. Orders are sorted
+     * by id.
+     *
+     * @param index the position of the order
+     * @return the order at that position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Order getOrder(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        Order order = materialized.get(index);
+        return order != null ? order : materialized.computeIfAbsent(index, this::decode);
+    }
+
+    /**
+     * Returns the orders of the snapshot sorted by id, as a list that decodes each order when it is
+     * first read.
+     *
+     * @return an unmodifiable view of the orders
+     */
+    public List<Order> getOrders() {
+        return new Rows(null);
+    }
+
+    /**
+     * Finds the order with the specified id.
+     *
+     * @param id the id of the order, as returned by {@link Order#getId()}
+     * @return the order, or null if the snapshot has no order with that id
+     */
+    public Order findById(String id) {
+        int index = indexOf(id);
+        return index < 0 ? null : getOrder(index);
+    }
+
+    public boolean existsById(String id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * Returns the orders placed between two dates, both included, sorted by id. Only the orders in the
+     * range are decoded, as they are read.
+     *
+     * @param from the first order date
+     * @param to   the last order date
+     * @return an unmodifiable view of the orders placed in the period
+     */
+    public List<Order> ordersBetween(LocalDate from, LocalDate to) {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int day = file.getInt(entry(row) + Long.BYTES + Integer.BYTES);
+            if (day != NO_DATE && day >= first && day <= last) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return new Rows(Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Decodes the whole snapshot into a new order batch. The orders of the batch are new objects,
+     * distinct from those returned by this snapshot.
+     *
+     * @return a new order batch holding the orders of the snapshot
+     */
+    public OrderBatch toOrderBatch() {
+        OrderBatch orderBatch = new OrderBatch(name, description, maxSize);
+        for (int row = 0; row < size; row++) {
+            orderBatch.addOrder(decode(row));
+        }
+        return orderBatch;
+    }
+
+    private int indexOf(String id) {
+        long key;
+        try {
+            key = Order.parseId(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = file.getLong(entry(middle));
+            if (middleId < key) {
+                low = middle + 1;
+            } else if (middleId > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int entry(int row) {
+        return indexOffset + row * INDEX_ENTRY_SIZE;
+    }
+
+    private Order decode(int row) {
+        int offset = dataOffset + file.getInt(entry(row) + Long.BYTES);
+        try {
+            return OrderCodec.readOrder(new BinaryReader(file.duplicate().position(offset)), entities);
+        } catch (OrderException | OrderItemException | RuntimeException e) {
+            throw new IllegalStateException("The order batch snapshot is corrupt", e);
+        }
+    }
+
+    /**
+     * Lazy view of some rows of the snapshot, or of all of them.
+     */
+    private final class Rows extends AbstractList<Order> implements RandomAccess {
+        private final int[] rows;
+
+        Rows(int[] rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Order get(int index) {
+            if (rows == null) {
+                return getOrder(index);
+            }
+            return getOrder(rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? size : rows.length;
+        }
+    }
+}
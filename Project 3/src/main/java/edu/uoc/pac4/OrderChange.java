@@ -0,0 +1,101 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+
+/**
+ * Represents a change of an order batch or of one of its orders, as delivered to the listeners of an
+ * {@link OrderChangeFeed}.
+ *
+ * Unlike the events of an {@link OrderEventJournal}, changes are not reused, so listeners may keep them.
+ */
+public final class OrderChange {
+    private final OrderChangeType type;
+    private final long timestamp;
+    private final Order order;
+    private final Product product;
+    private final long units;
+    private final LocalDate date;
+    private long sequence;
+
+    OrderChange(OrderChangeType type, Order order, Product product, long units, LocalDate date) {
+        this.type = type;
+        this.timestamp = System.currentTimeMillis();
+        this.order = order;
+        this.product = product;
+        this.units = units;
+        this.date = date;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the position of the change in its feed, starting at 1. Consecutive changes of a feed have
+     * consecutive numbers, so a gap can never go unnoticed.
+     *
+     * @return the sequence number of the change
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public OrderChangeType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the time the change was published, in milliseconds since the epoch.
+     *
+     * @return the change time
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the product of the changed line, or null if the change is not about a line.
+     *
+     * @return the product of the change
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Returns the change in the number of units of the product, negative if units were removed, or 0
+     * if the change is not about a line.
+     *
+     * @return the units added or removed
+     */
+    public long getUnits() {
+        return units;
+    }
+
+    /**
+     * Returns the order date for additions and order date changes, the delivery date for deliveries
+     * (null if it was cleared), or null otherwise.
+     *
+     * @return the date of the change
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('#').append(sequence).append(" [").append(type).append("] Order ").append(order.getId());
+        if (product != null) {
+            sb.append(" | Product: ").append(product.getName()).append(" | Units: ").append(units);
+        }
+        if (date != null) {
+            sb.append(" | Date: ").append(date);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Change data capture of an order batch: publishes every change of the batch and of its orders to the
+ * registered {@link OrderChangeListener}s, so downstream consumers follow the batch incrementally.
+ *
+ * The batch publishes a change by appending it to a lock-free queue, from the thread that made it and
+ * while the order is held, so the changes of an order are queued in the order they were made. It never
+ * waits for the listeners: a dispatcher thread drains the queue and hands the changes to every
+ * listener in batches of up to {@link #MAX_BATCH} consecutive changes, numbered in the order they are
+ * delivered. The changes of a feed are delivered by one thread at a time; slow listeners let the queue
+ * grow rather than slow the batch down. While no listener is registered, publishing is a single
+ * volatile read.
+ *
+ * A listener registered while the batch is in use receives the changes dispatched from then on. An
+ * order joining the batch is published as {@link OrderChangeType#ORDER_ADDED} followed by a
+ * {@link OrderChangeType#LINE_ADDED} change for each of its lines; an order leaving it only as
+ * {@link OrderChangeType#ORDER_REMOVED}.
+ */
+public final class OrderChangeFeed {
+    /**
+     * Maximum number of changes handed to a listener in a single call.
+     */
+    public static final int MAX_BATCH = 1024;
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService DISPATCHER = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "order-change-feed-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<OrderChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<OrderChange> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong listenerFailures = new AtomicLong();
+    private volatile boolean enabled;
+    private volatile Thread dispatcher;
+    private volatile Exception lastListenerFailure;
+    private long sequence;
+
+    OrderChangeFeed() {
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param listener the listener to register
+     * @throws NullPointerException if the listener is null
+     */
+    public synchronized void addListener(OrderChangeListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("[ERROR] The listener cannot be null");
+        }
+        listeners.add(listener);
+        enabled = true;
+    }
+
+    /**
+     * Unregisters a listener, once the changes published before this call have been delivered.
+     *
+     * @param listener the listener to unregister
+     * @return true if the listener was registered, false otherwise
+     */
+    public synchronized boolean removeListener(OrderChangeListener listener) {
+        flush();
+        boolean removed = listeners.remove(listener);
+        enabled = !listeners.isEmpty();
+        return removed;
+    }
+
+    /**
+     * Checks if changes are being published, i.e. if some listener is registered.
+     *
+     * @return true if changes reach some listener, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the number of times a listener failed to handle a batch of changes. A failing listener
+     * does not stop the feed: the batch is still handed to the other listeners.
+     *
+     * @return the number of listener failures
+     */
+    public long getListenerFailures() {
+        return listenerFailures.get();
+    }
+
+    /**
+     * Returns the last exception thrown by a listener.
+     *
+     * @return the last listener failure, or null if no listener has failed
+     */
+    public Exception getLastListenerFailure() {
+        return lastListenerFailure;
+    }
+
+    /**
+     * Waits until every change published before this call has been handed to the listeners. Called
+     * from a listener, it returns at once, since the changes it waits for would be delivered by the
+     * same thread.
+     */
+    public void flush() {
+        long target = published.get();
+        if (Thread.currentThread() == dispatcher) {
+            return;
+        }
+        while (dispatched.get() < target) {
+            LockSupport.parkNanos(this, 10_000L);
+        }
+    }
+
+    void publish(OrderChangeType type, Order order, Product product, long units, LocalDate date) {
+        if (!enabled) {
+            return;
+        }
+        published.incrementAndGet();
+        pending.add(new OrderChange(type, order, product, units, date));
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            DISPATCHER.execute(this::drain);
+        }
+    }
+
+    /**
+     * Delivers the queued changes until the queue is empty. Only one thread drains a feed at a time:
+     * the one that set the scheduled flag. The flag is cleared however the draining ends, before
+     * checking the queue a last time, so no change is left behind even when a listener throws an error.
+     */
+    private void drain() {
+        dispatcher = Thread.currentThread();
+        try {
+            while (true) {
+                List<OrderChange> changes = new ArrayList<>();
+                OrderChange change;
+                while (changes.size() < MAX_BATCH && (change = pending.poll()) != null) {
+                    change.setSequence(++sequence);
+                    changes.add(change);
+                }
+                if (changes.isEmpty()) {
+                    return;
+                }
+                try {
+                    List<OrderChange> view = Collections.unmodifiableList(changes);
+                    for (OrderChangeListener listener : listeners) {
+                        try {
+                            listener.onChanges(view);
+                        } catch (Exception e) {
+                            listenerFailed(e);
+                        }
+                    }
+                } finally {
+                    dispatched.addAndGet(changes.size());
+                }
+            }
+        } finally {
+            dispatcher = null;
+            scheduled.set(false);
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                DISPATCHER.execute(this::drain);
+            }
+        }
+    }
+
+    private void listenerFailed(Exception e) {
+        lastListenerFailure = e;
+        listenerFailures.incrementAndGet();
+    }
+}
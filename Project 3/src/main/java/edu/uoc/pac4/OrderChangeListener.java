@@ -0,0 +1,22 @@
+package edu.uoc.pac4;
+
+import java.util.List;
+
+/**
+ * Receives the changes of an order batch from its {@link OrderChangeFeed}, such as a search index or a
+ * cache kept up to date incrementally instead of rescanning the batch.
+ *
+ * Listeners are called from a dispatcher thread, never from the thread that changed the batch, one
+ * call at a time per feed, with consecutive changes in publication order.
+ */
+@FunctionalInterface
+public interface OrderChangeListener {
+
+    /**
+     * Handles consecutive changes of the batch. The list cannot be modified.
+     *
+     * @param changes the changes, by ascending sequence number
+     * @throws Exception if the changes cannot be handled; later changes are delivered all the same
+     */
+    void onChanges(List<OrderChange> changes) throws Exception;
+}
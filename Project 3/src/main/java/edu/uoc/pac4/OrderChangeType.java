@@ -0,0 +1,35 @@
+package edu.uoc.pac4;
+
+/**
+ * Represents the kind of a change of an order batch published by its {@link OrderChangeFeed}.
+ */
+public enum OrderChangeType {
+    /**
+     * The order has been added to the batch. Its lines follow as {@link #LINE_ADDED} changes.
+     */
+    ORDER_ADDED,
+    /**
+     * The order has been removed from the batch, with all its lines.
+     */
+    ORDER_REMOVED,
+    /**
+     * A line with a new product has been added to the order.
+     */
+    LINE_ADDED,
+    /**
+     * The last units of a product have been removed from the order, and so its line.
+     */
+    LINE_REMOVED,
+    /**
+     * The number of units of a product already in the order has changed.
+     */
+    QUANTITY_CHANGED,
+    /**
+     * The order date of the order has changed.
+     */
+    ORDER_DATE_CHANGED,
+    /**
+     * The order has been given a delivery date, or had it cleared.
+     */
+    DELIVERED
+}
@@ -0,0 +1,306 @@
+package edu.uoc.pac4;
+
+import edu.uoc.pac4.exception.OrderException;
+import edu.uoc.pac4.exception.OrderItemException;
+import edu.uoc.pac4.exception.ProductException;
+import edu.uoc.pac4.exception.UserException;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of orders together with their lines, products and users.
+ *
+ * A message holds a group of orders. Every user, product and product name referenced by the group is
+ * written once, in dictionaries at the start of the message, and referred to by its index afterwards.
+ * Integers are written as variable-length integers, so small ids, indexes, quantities and prices take
+ * one or two bytes, and dates are written as epoch days, the delivery date relative to the order date.
+ * Decoding a message rebuilds the same object graph: orders sharing a user or a product in the encoded
+ * group share it in the decoded one too.
+ */
+public final class OrderCodec {
+    private static final int FORMAT_VERSION = 1;
+    private static final int CONCURRENT = 1;
+    private static final int HAS_ORDER_DATE = 2;
+    private static final int HAS_DELIVERY_DATE = 4;
+
+    private OrderCodec() {
+    }
+
+    /**
+     * Encodes a group of orders into a new buffer.
+     *
+     * @param orders the orders to encode
+     * @return a buffer holding the message, positioned at its start
+     */
+    public static ByteBuffer encode(Collection<? extends Order> orders) {
+        BinaryWriter out = write(orders);
+        ByteBuffer buffer = ByteBuffer.allocate(out.length());
+        out.copyTo(buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Encodes a group of orders at the position of a buffer, which is advanced past the message.
+     *
+     * @param orders the orders to encode
+     * @param buffer the buffer to write the message to
+     * @throws BufferOverflowException if the message does not fit in the remaining space of the buffer,
+     *                                 in which case nothing is written
+     */
+    public static void encode(Collection<? extends Order> orders, ByteBuffer buffer) {
+        BinaryWriter out = write(orders);
+        if (out.length() > buffer.remaining()) {
+            throw new BufferOverflowException();
+        }
+        out.copyTo(buffer);
+    }
+
+    /**
+     * Decodes a group of orders from the position of a buffer, which is advanced past the message.
+     *
+     * @param buffer the buffer to read the message from
+     * @return the decoded orders, in the order they were encoded
+     * @throws BufferUnderflowException if the buffer ends before the message
+     * @throws IllegalArgumentException if the message is not a valid group of orders
+     */
+    public static List<Order> decode(ByteBuffer buffer) {
+        ByteOrder byteOrder = buffer.order();
+        try {
+            return read(new BinaryReader(buffer));
+        } catch (UserException | ProductException | OrderException | OrderItemException
+                 | IndexOutOfBoundsException | DateTimeException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("The buffer does not hold a valid group of orders", e);
+        } finally {
+            buffer.order(byteOrder);
+        }
+    }
+
+    private static BinaryWriter write(Collection<? extends Order> orders) {
+        Dictionary dictionary = new Dictionary();
+        BinaryWriter body = new BinaryWriter(64 * orders.size() + 64);
+        body.writeVarLong(orders.size());
+        for (Order order : orders) {
+            writeOrder(body, order, dictionary);
+        }
+        BinaryWriter out = new BinaryWriter(body.length() + dictionary.estimatedSize() + 1);
+        out.writeByte(FORMAT_VERSION);
+        dictionary.write(out);
+        out.writeBytes(body);
+        return out;
+    }
+
+    private static List<Order> read(BinaryReader in)
+            throws UserException, ProductException, OrderException, OrderItemException {
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported order format version " + version);
+        }
+        Entities entities = Entities.read(in);
+        int size = size(in);
+        List<Order> orders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            orders.add(readOrder(in, entities));
+        }
+        return orders;
+    }
+
+    /**
+     * Writes an order, adding the user and products it references to a dictionary.
+     */
+    static void writeOrder(BinaryWriter out, Order order, Dictionary dictionary) {
+        LocalDate orderDate = order.getOrderDate();
+        LocalDate deliveryDate = order.getDeliveryDate();
+        int flags = (order.isConcurrent() ? CONCURRENT : 0)
+                | (orderDate != null ? HAS_ORDER_DATE : 0)
+                | (deliveryDate != null ? HAS_DELIVERY_DATE : 0);
+        out.writeVarLong(order.getNumericId());
+        out.writeVarLong(dictionary.userId(order.getUser()));
+        out.writeByte(flags);
+        if (orderDate != null) {
+            out.writeSignedVarLong(orderDate.toEpochDay());
+        }
+        if (deliveryDate != null) {
+            long base = orderDate == null ? 0 : orderDate.toEpochDay();
+            out.writeSignedVarLong(deliveryDate.toEpochDay() - base);
+        }
+
+        Lines lines = dictionary.lines;
+        lines.clear();
+        order.forEachLine((product, quantity) -> lines.add(dictionary.productId(product), quantity));
+        out.writeVarLong(lines.size);
+        for (int i = 0; i < lines.size; i++) {
+            out.writeVarLong(lines.products[i]);
+            out.writeVarLong(lines.quantities[i]);
+        }
+    }
+
+    /**
+     * Reads an order written by {@link #writeOrder}, given the entities of its dictionary.
+     */
+    static Order readOrder(BinaryReader in, Entities entities) throws OrderException, OrderItemException {
+        long id = in.readVarLong();
+        User user = entities.users[count(in)];
+        int flags = in.readByte();
+        LocalDate orderDate = null;
+        LocalDate deliveryDate = null;
+        if ((flags & HAS_ORDER_DATE) != 0) {
+            orderDate = LocalDate.ofEpochDay(in.readSignedVarLong());
+        }
+        if ((flags & HAS_DELIVERY_DATE) != 0) {
+            long base = orderDate == null ? 0 : orderDate.toEpochDay();
+            deliveryDate = LocalDate.ofEpochDay(base + in.readSignedVarLong());
+        }
+        Order order = Order.restore(user, orderDate, deliveryDate, id, (flags & CONCURRENT) != 0);
+        for (int lines = count(in); lines > 0; lines--) {
+            Product product = entities.products[count(in)];
+            order.addOrderItem(product, count(in));
+        }
+        return order;
+    }
+
+    /**
+     * Reads a non-negative count or index.
+     */
+    private static int count(BinaryReader in) {
+        long value = in.readVarLong();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid count " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads the number of elements of a group, each taking at least a byte of the message.
+     */
+    private static int size(BinaryReader in) {
+        int size = count(in);
+        if (size > in.buffer().remaining()) {
+            throw new IllegalArgumentException("Invalid size " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Users, products and product names referenced by the orders being encoded, numbered in order of
+     * first appearance.
+     */
+    static final class Dictionary {
+        private final Map<User, Integer> userIds = new IdentityHashMap<>();
+        private final Map<Product, Integer> productIds = new IdentityHashMap<>();
+        private final Map<String, Integer> nameIds = new HashMap<>();
+        private final List<User> users = new ArrayList<>();
+        private final List<Product> products = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final Lines lines = new Lines();
+
+        int userId(User user) {
+            Integer id = userIds.get(user);
+            if (id == null) {
+                id = users.size();
+                userIds.put(user, id);
+                users.add(user);
+            }
+            return id;
+        }
+
+        int productId(Product product) {
+            Integer id = productIds.get(product);
+            if (id == null) {
+                id = products.size();
+                productIds.put(product, id);
+                products.add(product);
+                nameIds.computeIfAbsent(product.getName(), name -> {
+                    names.add(name);
+                    return names.size() - 1;
+                });
+            }
+            return id;
+        }
+
+        int estimatedSize() {
+            return 64 * (users.size() + products.size()) + 16;
+        }
+
+        void write(BinaryWriter out) {
+            out.writeVarLong(users.size());
+            for (User user : users) {
+                EntityRecords.writeUser(out, user);
+            }
+            out.writeVarLong(names.size());
+            for (String name : names) {
+                out.writeString(name);
+            }
+            out.writeVarLong(products.size());
+            for (Product product : products) {
+                out.writeByte(product.getCategory().ordinal());
+                out.writeVarLong(nameIds.get(product.getName()));
+                EntityRecords.writeProductDetails(out, product);
+            }
+        }
+    }
+
+    /**
+     * Users and products read from the dictionary of a message.
+     */
+    static final class Entities {
+        private final User[] users;
+        private final Product[] products;
+
+        private Entities(User[] users, Product[] products) {
+            this.users = users;
+            this.products = products;
+        }
+
+        static Entities read(BinaryReader in) throws UserException, ProductException {
+            User[] users = new User[size(in)];
+            for (int i = 0; i < users.length; i++) {
+                users[i] = EntityRecords.readUser(in);
+            }
+            String[] names = new String[size(in)];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readString();
+            }
+            Product[] products = new Product[size(in)];
+            ProductCategory[] categories = ProductCategory.values();
+            for (int i = 0; i < products.length; i++) {
+                ProductCategory category = categories[in.readByte()];
+                products[i] = EntityRecords.readProductDetails(in, category, names[count(in)]);
+            }
+            return new Entities(users, products);
+        }
+    }
+
+    /**
+     * Product indexes and quantities of the lines of the order being encoded.
+     */
+    private static final class Lines {
+        private int[] products = new int[8];
+        private int[] quantities = new int[8];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int product, int quantity) {
+            if (size == products.length) {
+                products = Arrays.copyOf(products, size * 2);
+                quantities = Arrays.copyOf(quantities, size * 2);
+            }
+            products[size] = product;
+            quantities[size++] = quantity;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Orders grouped by order date in a navigable map keyed by epoch day, so a date range is reached
+ * with one logarithmic lookup and only the orders inside it are visited. The orders of a day are kept
+ * in another navigable map keyed by order id, so they are visited by ascending id and never compared
+ * or hashed as orders, which would read their lines. Orders without a date are not indexed.
+ */
+final class OrderDateIndex {
+    private final ConcurrentSkipListMap<Long, ConcurrentSkipListMap<Long, Order>> days =
+            new ConcurrentSkipListMap<>();
+
+    void move(Order order, LocalDate previous, LocalDate current) {
+        if (previous != null) {
+            ConcurrentSkipListMap<Long, Order> orders = days.get(previous.toEpochDay());
+            if (orders != null) {
+                orders.remove(order.getNumericId(), order);
+            }
+        }
+        if (current != null) {
+            days.computeIfAbsent(current.toEpochDay(), day -> new ConcurrentSkipListMap<>())
+                    .put(order.getNumericId(), order);
+        }
+    }
+
+    /**
+     * Checks if an order is indexed under a date.
+     */
+    boolean contains(Order order, LocalDate date) {
+        ConcurrentSkipListMap<Long, Order> orders = days.get(date.toEpochDay());
+        return orders != null && orders.get(order.getNumericId()) == order;
+    }
+
+    /**
+     * Returns the orders of every indexed day, by ascending date and then id. The view is live and
+     * weakly consistent.
+     */
+    Collection<ConcurrentSkipListMap<Long, Order>> byDate() {
+        return days.values();
+    }
+
+    /**
+     * Returns a lazy stream of the orders placed between two epoch days, both included, by ascending
+     * date and then id.
+     */
+    Stream<Order> streamBetween(long fromDay, long toDay) {
+        if (fromDay > toDay) {
+            return Stream.empty();
+        }
+        return days.subMap(fromDay, true, toDay, true).values().stream().flatMap(orders -> orders.values().stream());
+    }
+
+    /**
+     * Visits the orders placed between two epoch days, both included, by ascending date.
+     */
+    void forEachBetween(long fromDay, long toDay, Consumer<? super Order> action) {
+        if (fromDay > toDay) {
+            return;
+        }
+        for (ConcurrentSkipListMap<Long, Order> orders : days.subMap(fromDay, true, toDay, true).values()) {
+            orders.values().forEach(action);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+
+/**
+ * Represents an order lifecycle event published to an {@link OrderEventJournal}.
+ *
+ * The journal reuses event objects: a sink may read an event while it is being handled, but must call
+ * {@link #copy()} to keep it afterwards.
+ */
+public final class OrderEvent {
+    private OrderEventType type;
+    private long timestamp;
+    private Order order;
+    private Product product;
+    private int quantity;
+    private LocalDate date;
+    private OrderBatch batch;
+
+    OrderEvent() {
+    }
+
+    void set(OrderEventType type, long timestamp, Order order, Product product, int quantity, LocalDate date,
+             OrderBatch batch) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.order = order;
+        this.product = product;
+        this.quantity = quantity;
+        this.date = date;
+        this.batch = batch;
+    }
+
+    void clear() {
+        set(null, 0, null, null, 0, null, null);
+    }
+
+    /**
+     * Returns a copy of this event that is safe to keep after it has been handled.
+     *
+     * @return a copy of this event
+     */
+    public OrderEvent copy() {
+        OrderEvent copy = new OrderEvent();
+        copy.set(type, timestamp, order, product, quantity, date, batch);
+        return copy;
+    }
+
+    public OrderEventType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the time the event was published, in milliseconds since the epoch.
+     *
+     * @return the event time
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the product added or removed, or null if the event is not about an order item.
+     *
+     * @return the product of the event
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Returns the number of units added or removed, or 0 if the event is not about an order item.
+     *
+     * @return the quantity of the event
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns the order date for creations, the delivery date for deliveries, or null otherwise.
+     *
+     * @return the date of the event
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the batch the order was removed from, or null if the event is not about a batch.
+     *
+     * @return the batch of the event
+     */
+    public OrderBatch getBatch() {
+        return batch;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[').append(type).append("] Order ").append(order.getId());
+        if (product != null) {
+            sb.append(" | Product: ").append(product.getName()).append(" | Quantity: ").append(quantity);
+        }
+        if (date != null) {
+            sb.append(" | Date: ").append(date);
+        }
+        if (batch != null) {
+            sb.append(" | Batch: ").append(batch.getName());
+        }
+        return sb.toString();
+    }
+}
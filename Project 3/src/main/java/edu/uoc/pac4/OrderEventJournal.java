@@ -0,0 +1,240 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous journal of order lifecycle events.
+ *
+ * Publishers claim a slot of a preallocated ring buffer with one atomic increment, fill the reused
+ * event in place and mark the slot as published; no lock is taken and nothing is allocated. A
+ * background consumer thread drains the ring in publication order and hands every event to the
+ * registered sinks. While no sink is registered, publishing is a single volatile read.
+ */
+public final class OrderEventJournal implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final int SPINS_BEFORE_PARKING = 256;
+    private static final long MAX_PARK_NANOS = 1_000_000L;
+    private static final OrderEventJournal DEFAULT = new OrderEventJournal(DEFAULT_CAPACITY);
+
+    private final OrderEvent[] events;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong sinkFailures = new AtomicLong();
+    private final List<OrderEventSink> sinks = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled;
+    private volatile boolean running;
+    private volatile boolean sleeping;
+    private volatile Thread consumer;
+    private volatile Exception lastSinkFailure;
+
+    /**
+     * Constructs a journal whose ring buffer holds at least the given number of events.
+     *
+     * @param capacity the minimum number of events buffered before publishers have to wait
+     */
+    public OrderEventJournal(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be greater than zero");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.events = new OrderEvent[size];
+        this.published = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            events[i] = new OrderEvent();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Returns the journal orders and batches publish their lifecycle events to.
+     *
+     * @return the default journal
+     */
+    public static OrderEventJournal getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a sink and starts the consumer thread if it is not running yet.
+     *
+     * @param sink the sink to register
+     */
+    public synchronized void addSink(OrderEventSink sink) {
+        if (sink == null) {
+            throw new NullPointerException("The sink cannot be null");
+        }
+        sinks.add(sink);
+        if (consumer == null) {
+            running = true;
+            consumer = new Thread(this::drain, "order-event-journal");
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+        enabled = true;
+    }
+
+    /**
+     * Unregisters a sink. Events published afterwards are not delivered to it.
+     *
+     * @param sink the sink to unregister
+     * @return true if the sink was registered, false otherwise
+     */
+    public synchronized boolean removeSink(OrderEventSink sink) {
+        flush();
+        boolean removed = sinks.remove(sink);
+        enabled = !sinks.isEmpty();
+        return removed;
+    }
+
+    /**
+     * Checks if events are being recorded, i.e. if some sink is registered.
+     *
+     * @return true if published events reach some sink, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void publish(OrderEventType type, Order order, Product product, int quantity, LocalDate date,
+                 OrderBatch batch) {
+        if (!enabled) {
+            return;
+        }
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed.get() >= events.length) {
+            wakeConsumer();
+            Thread.onSpinWait();
+        }
+        int index = (int) (sequence & mask);
+        events[index].set(type, System.currentTimeMillis(), order, product, quantity, date, batch);
+        published.lazySet(index, sequence);
+        if (sleeping) {
+            wakeConsumer();
+        }
+    }
+
+    /**
+     * Returns the number of times a sink failed to handle an event, to be flushed or to be closed. A
+     * failing sink does not stop the journal: the event is still handed to the other sinks.
+     *
+     * @return the number of sink failures
+     */
+    public long getSinkFailures() {
+        return sinkFailures.get();
+    }
+
+    /**
+     * Returns the last exception thrown by a sink.
+     *
+     * @return the last sink failure, or null if no sink has failed
+     */
+    public Exception getLastSinkFailure() {
+        return lastSinkFailure;
+    }
+
+    /**
+     * Waits until every event published before this call has been handled and the sinks flushed.
+     */
+    public void flush() {
+        long target = claimed.get();
+        while (flushed.get() < target && consumer != null) {
+            wakeConsumer();
+            LockSupport.parkNanos(this, 10_000L);
+        }
+    }
+
+    /**
+     * Drains the pending events, stops the consumer thread and closes every sink.
+     */
+    @Override
+    public synchronized void close() {
+        enabled = false;
+        Thread thread = consumer;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        consumer = null;
+        for (OrderEventSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (Exception e) {
+                sinkFailed(e);
+            }
+        }
+        sinks.clear();
+    }
+
+    private void wakeConsumer() {
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void drain() {
+        long next = consumed.get();
+        int idle = 0;
+        while (running || next < claimed.get()) {
+            int index = (int) (next & mask);
+            if (published.get(index) == next) {
+                OrderEvent event = events[index];
+                for (OrderEventSink sink : sinks) {
+                    try {
+                        sink.accept(event);
+                    } catch (Exception e) {
+                        sinkFailed(e);
+                    }
+                }
+                event.clear();
+                consumed.lazySet(++next);
+                idle = 0;
+            } else if (idle++ == 0) {
+                flushSinks(next);
+            } else if (idle < SPINS_BEFORE_PARKING) {
+                Thread.onSpinWait();
+            } else {
+                sleeping = true;
+                if (published.get(index) != next && running) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+        flushSinks(next);
+    }
+
+    private void flushSinks(long upTo) {
+        for (OrderEventSink sink : sinks) {
+            try {
+                sink.flush();
+            } catch (Exception e) {
+                sinkFailed(e);
+            }
+        }
+        flushed.set(upTo);
+    }
+
+    private void sinkFailed(Exception e) {
+        lastSinkFailure = e;
+        sinkFailures.incrementAndGet();
+    }
+}
@@ -0,0 +1,32 @@
+package edu.uoc.pac4;
+
+import java.io.IOException;
+
+/**
+ * Receives the order lifecycle events drained from an {@link OrderEventJournal}.
+ *
+ * Sinks are called from the journal's consumer thread, one event at a time and in publication order.
+ */
+public interface OrderEventSink extends AutoCloseable {
+
+    /**
+     * Handles an event. The event object is reused once this method returns.
+     *
+     * @param event the event to handle
+     * @throws Exception if the event cannot be handled
+     */
+    void accept(OrderEvent event) throws Exception;
+
+    /**
+     * Called when the journal has drained every published event, so sinks can flush buffered output.
+     *
+     * @throws IOException if the sink cannot be flushed
+     */
+    default void flush() throws IOException {
+    }
+
+    @Override
+    default void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,27 @@
+package edu.uoc.pac4;
+
+/**
+ * Represents the kind of an order lifecycle event.
+ */
+public enum OrderEventType {
+    /**
+     * The order has been created.
+     */
+    CREATED,
+    /**
+     * Units of a product have been added to the order.
+     */
+    ITEM_ADDED,
+    /**
+     * Units of a product have been removed from the order.
+     */
+    ITEM_REMOVED,
+    /**
+     * The order has been given a delivery date.
+     */
+    DELIVERED,
+    /**
+     * The order has been removed from an order batch.
+     */
+    REMOVED_FROM_BATCH
+}
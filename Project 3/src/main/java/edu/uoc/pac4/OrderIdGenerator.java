@@ -0,0 +1,27 @@
+package edu.uoc.pac4;
+
+/**
+ * Generates the identifiers of new orders.
+ *
+ * Identifiers are positive 64-bit numbers that must be unique among all the orders created with the
+ * same generator.
+ */
+public interface OrderIdGenerator {
+
+    /**
+     * Returns a new order identifier.
+     *
+     * @return a new, positive order identifier
+     */
+    long nextId();
+
+    /**
+     * Returns the shared time-ordered generator: identifiers created later compare greater, and
+     * generating them does not contend between threads.
+     *
+     * @return the time-ordered generator
+     */
+    static OrderIdGenerator timeOrdered() {
+        return TimeOrderedIdGenerator.INSTANCE;
+    }
+}
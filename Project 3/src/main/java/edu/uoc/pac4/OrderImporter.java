@@ -0,0 +1,499 @@
+package edu.uoc.pac4;
+
+import edu.uoc.pac4.exception.OrderException;
+import edu.uoc.pac4.exception.OrderItemException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Loads the orders of a CSV or JSON-lines file into an order batch in parallel.
+ *
+ * The file is read through a file channel and split into chunks that end at a line boundary. Chunks
+ * are parsed, validated and added to the batch by a pool of threads, each chunk with a single call to
+ * {@link OrderBatch#addOrders(Collection)}; only a few chunks per thread are held in memory at a time,
+ * whatever the size of the file. Users are resolved by email and products by name. A row that cannot
+ * be imported is recorded in the {@link ImportReport} with its line number and the import goes on.
+ *
+ * In CSV files, every row is an order: {@code id,user,orderDate,deliveryDate} followed by a product
+ * name and quantity pair per line of the order. The id and delivery date may be empty, and fields may
+ * be quoted. A first row whose first field is {@code id} is a header. In JSON-lines files, every line
+ * is an object like the following one, where {@code id} and {@code deliveryDate} are optional:
+ * <pre>{@code
+ * {"id": 1, "user": "a@uoc.edu", "orderDate": "2023-04-01", "lines": [{"product": "Dice", "quantity": 2}]}
+ * }</pre>
+ * Ids are the text form returned by {@link Order#formatId(long)}, but a JSON id may also be given as
+ * an integer, which is the numeric id itself. Orders without an id get a generated one.
+ */
+public final class OrderImporter {
+    /**
+     * Formats of the files the importer reads.
+     */
+    public enum Format {
+        CSV,
+        JSON_LINES
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    private static final int BOUNDARY_WINDOW = 1 << 12;
+    private static final String MSG_ERR_USER = "[ERROR] Unknown user: ";
+    private static final String MSG_ERR_PRODUCT = "[ERROR] Unknown product: ";
+    private static final String MSG_ERR_QUANTITY = "[ERROR] The quantity must be a positive integer: ";
+    private static final String MSG_ERR_DATE = "[ERROR] Invalid date: ";
+    private static final String MSG_ERR_ID = "[ERROR] Invalid order id: ";
+    private static final String MSG_ERR_NO_DATE = "[ERROR] The order date cannot be empty";
+    private static final String MSG_ERR_NO_LINES = "[ERROR] The order has no lines";
+    private static final String MSG_ERR_FIELDS = "[ERROR] Missing fields";
+    private static final String MSG_ERR_DUPLICATE = "[ERROR] Duplicate order id: ";
+    private static final String MSG_ERR_FULL = "[ERROR] The order batch is full";
+
+    private final Map<String, Product> catalog;
+    private final Map<String, User> users;
+    private final int parallelism;
+    private final int chunkSize;
+
+    /**
+     * Constructs an importer resolving the products and users of the rows against the given ones.
+     *
+     * @param products the products, looked up by name
+     * @param users    the users, looked up by email
+     * @throws IllegalArgumentException if two products share a name or two users an email
+     */
+    public OrderImporter(Collection<? extends Product> products, Collection<? extends User> users) {
+        this(index(products, Product::getName, "product name"), index(users, User::getEmail, "user email"),
+                Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    private OrderImporter(Map<String, Product> catalog, Map<String, User> users, int parallelism, int chunkSize) {
+        this.catalog = catalog;
+        this.users = users;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns an importer like this one using the given number of threads.
+     *
+     * @param parallelism the number of threads parsing the file
+     * @return the new importer
+     * @throws IllegalArgumentException if the parallelism is not positive
+     */
+    public OrderImporter withParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        return new OrderImporter(catalog, users, parallelism, chunkSize);
+    }
+
+    /**
+     * Returns an importer like this one splitting files into chunks of about the given size. Chunks
+     * are extended to the end of their last line.
+     *
+     * @param chunkSize the size of the chunks in bytes
+     * @return the new importer
+     * @throws IllegalArgumentException if the chunk size is not positive
+     */
+    public OrderImporter withChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be greater than zero");
+        }
+        return new OrderImporter(catalog, users, parallelism, chunkSize);
+    }
+
+    /**
+     * Imports the orders of a file into an order batch.
+     *
+     * @param file       the file to read
+     * @param format     the format of the file
+     * @param orderBatch the batch to add the orders to
+     * @return the report of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importOrders(Path file, Format format, OrderBatch orderBatch) throws IOException {
+        ImportReport report = new ImportReport();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "order-importer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            long lineOffset = 0;
+            long start = 0;
+            boolean first = true;
+            while (start < size) {
+                long end = boundary(channel, Math.min(start + chunkSize, size), size);
+                Chunk chunk = new Chunk(channel, start, end, first, format, orderBatch);
+                pending.add(pool.submit(chunk::process));
+                if (pending.size() >= 2 * parallelism) {
+                    lineOffset = merge(pending.poll(), lineOffset, report);
+                }
+                start = end;
+                first = false;
+            }
+            while (!pending.isEmpty()) {
+                lineOffset = merge(pending.poll(), lineOffset, report);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return report;
+    }
+
+    private static long merge(Future<Chunk> future, long lineOffset, ImportReport report) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The import was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        report.addRows(chunk.rows);
+        report.addImported(chunk.imported);
+        for (int i = 0; i < chunk.errorLines.size(); i++) {
+            report.reject(lineOffset + chunk.errorLines.get(i), chunk.errorMessages.get(i));
+        }
+        return lineOffset + chunk.lines;
+    }
+
+    /**
+     * Returns the position following the first line break at or after a position.
+     */
+    private static long boundary(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_WINDOW);
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static <T> Map<String, T> index(Collection<? extends T> values,
+                                            Function<T, String> key, String what) {
+        Map<String, T> index = new HashMap<>();
+        for (T value : values) {
+            if (index.put(key.apply(value), value) != null) {
+                throw new IllegalArgumentException("Duplicate " + what + ": " + key.apply(value));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * A row that cannot be imported.
+     */
+    private static final class RowException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        RowException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * A part of the file made of whole lines, parsed and loaded by one thread.
+     */
+    private final class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final boolean first;
+        private final Format format;
+        private final OrderBatch orderBatch;
+        private final List<Long> errorLines = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+        private long lines;
+        private long rows;
+        private long imported;
+
+        Chunk(FileChannel channel, long start, long end, boolean first, Format format, OrderBatch orderBatch) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+            this.format = format;
+            this.orderBatch = orderBatch;
+        }
+
+        Chunk process() throws IOException {
+            byte[] bytes = new byte[(int) (end - start)];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException("The file was truncated during the import");
+                }
+            }
+            String text = new String(bytes, StandardCharsets.UTF_8);
+
+            List<Order> orders = new ArrayList<>();
+            List<Long> orderLines = new ArrayList<>();
+            int from = first && text.startsWith("\uFEFF") ? 1 : 0;
+            while (from < text.length()) {
+                int to = text.indexOf('\n', from);
+                if (to < 0) {
+                    to = text.length();
+                }
+                String line = text.substring(from, to > from && text.charAt(to - 1) == '\r' ? to - 1 : to);
+                lines++;
+                from = to + 1;
+                if (line.isBlank() || (first && lines == 1 && isHeader(line))) {
+                    continue;
+                }
+                rows++;
+                try {
+                    orders.add(format == Format.CSV ? parseCsv(line) : parseJson(line));
+                    orderLines.add(lines);
+                } catch (RowException e) {
+                    reject(lines, e.getMessage());
+                }
+            }
+
+            Set<Order> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+            imported = orderBatch.addOrders(orders, rejected::add);
+            if (!rejected.isEmpty()) {
+                for (int i = 0; i < orders.size(); i++) {
+                    Order order = orders.get(i);
+                    if (rejected.contains(order)) {
+                        reject(orderLines.get(i), orderBatch.get(order.getNumericId()) != null
+                                ? MSG_ERR_DUPLICATE + order.getId() : MSG_ERR_FULL);
+                    }
+                }
+                sortErrors();
+            }
+            return this;
+        }
+
+        private boolean isHeader(String line) {
+            return format == Format.CSV && (line.startsWith("id,") || line.startsWith("\"id\","));
+        }
+
+        private void reject(long line, String message) {
+            errorLines.add(line);
+            errorMessages.add(message);
+        }
+
+        /**
+         * Sorts the errors by line, since the rows rejected by the batch are found after parsing.
+         */
+        private void sortErrors() {
+            Integer[] order = new Integer[errorLines.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(errorLines.get(a), errorLines.get(b)));
+            List<Long> sortedLines = new ArrayList<>(order.length);
+            List<String> sortedMessages = new ArrayList<>(order.length);
+            for (Integer i : order) {
+                sortedLines.add(errorLines.get(i));
+                sortedMessages.add(errorMessages.get(i));
+            }
+            errorLines.clear();
+            errorLines.addAll(sortedLines);
+            errorMessages.clear();
+            errorMessages.addAll(sortedMessages);
+        }
+
+        private Order parseCsv(String line) throws RowException {
+            List<String> fields = splitCsv(line);
+            if (fields.size() < 4) {
+                throw new RowException(MSG_ERR_FIELDS);
+            }
+            List<Object> items = new ArrayList<>();
+            for (int i = 4; i < fields.size(); i += 2) {
+                items.add(fields.get(i));
+                items.add(i + 1 < fields.size() ? fields.get(i + 1) : "");
+            }
+            return build(fields.get(0), fields.get(1), fields.get(2), fields.get(3), items);
+        }
+
+        private Order parseJson(String line) throws RowException {
+            Object value;
+            try {
+                value = JsonReader.read(line);
+            } catch (IllegalArgumentException e) {
+                throw new RowException("[ERROR] Invalid JSON: " + e.getMessage());
+            }
+            if (!(value instanceof Map)) {
+                throw new RowException("[ERROR] The row is not a JSON object");
+            }
+            Map<?, ?> object = (Map<?, ?>) value;
+            List<Object> items = new ArrayList<>();
+            Object orderLines = object.get("lines");
+            if (orderLines != null && !(orderLines instanceof List)) {
+                throw new RowException("[ERROR] The lines must be an array");
+            }
+            if (orderLines != null) {
+                for (Object item : (List<?>) orderLines) {
+                    if (!(item instanceof Map)) {
+                        throw new RowException("[ERROR] Every line must be an object");
+                    }
+                    items.add(((Map<?, ?>) item).get("product"));
+                    items.add(((Map<?, ?>) item).get("quantity"));
+                }
+            }
+            return build(object.get("id"), object.get("user"), object.get("orderDate"), object.get("deliveryDate"),
+                    items);
+        }
+
+        /**
+         * Validates the fields of a row and builds its order.
+         *
+         * @param items product names and quantities, alternating
+         */
+        private Order build(Object id, Object email, Object orderDate, Object deliveryDate, List<Object> items)
+                throws RowException {
+            User user = users.get(text(email));
+            if (user == null) {
+                throw new RowException(MSG_ERR_USER + text(email));
+            }
+            LocalDate date = date(orderDate);
+            if (date == null) {
+                throw new RowException(MSG_ERR_NO_DATE);
+            }
+            if (items.isEmpty()) {
+                throw new RowException(MSG_ERR_NO_LINES);
+            }
+            Product[] products = new Product[items.size() / 2];
+            int[] quantities = new int[products.length];
+            for (int i = 0; i < products.length; i++) {
+                products[i] = catalog.get(text(items.get(2 * i)));
+                if (products[i] == null) {
+                    throw new RowException(MSG_ERR_PRODUCT + text(items.get(2 * i)));
+                }
+                quantities[i] = quantity(items.get(2 * i + 1));
+            }
+
+            try {
+                String idText = text(id);
+                Order order;
+                if (idText.isEmpty()) {
+                    order = new Order(user, date);
+                } else {
+                    order = Order.restore(user, date, null, numericId(id, idText), false);
+                }
+                order.setDeliveryDate(date(deliveryDate));
+                for (int i = 0; i < products.length; i++) {
+                    order.addOrderItem(products[i], quantities[i]);
+                }
+                return order;
+            } catch (OrderException | OrderItemException e) {
+                throw new RowException(e.getMessage());
+            }
+        }
+
+        /**
+         * Reads an order id: a JSON number is the numeric id itself, any other value its text form.
+         */
+        private long numericId(Object id, String idText) throws RowException {
+            if (id instanceof Long) {
+                return (Long) id;
+            }
+            if (!(id instanceof String)) {
+                throw new RowException(MSG_ERR_ID + idText);
+            }
+            try {
+                return Order.parseId(idText);
+            } catch (NumberFormatException e) {
+                throw new RowException(MSG_ERR_ID + idText);
+            }
+        }
+
+        private String text(Object value) {
+            return value == null ? "" : value.toString().trim();
+        }
+
+        private LocalDate date(Object value) throws RowException {
+            String text = text(value);
+            if (text.isEmpty()) {
+                return null;
+            }
+            try {
+                return LocalDate.parse(text);
+            } catch (DateTimeParseException e) {
+                throw new RowException(MSG_ERR_DATE + text);
+            }
+        }
+
+        private int quantity(Object value) throws RowException {
+            String text = text(value);
+            try {
+                int quantity = value instanceof Long ? Math.toIntExact((Long) value) : Integer.parseInt(text);
+                if (quantity > 0) {
+                    return quantity;
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                // Reported below.
+            }
+            throw new RowException(MSG_ERR_QUANTITY + text);
+        }
+    }
+
+    /**
+     * Splits a CSV row into fields. Quoted fields may hold commas and doubled quotes.
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -2,17 +2,33 @@ package edu.uoc.pac4;
 
 import edu.uoc.pac4.exception.OrderItemException;
 
+import java.io.IOException;
 import java.util.Objects;
 
 public class OrderItem implements Billable {
     private Product product;
     private Order order;
-    private int quantity;
+    private volatile int quantity;
+    private final long sequence;
+    private long pricedCents;
 
     public OrderItem(Order order, Product product, int quantity) throws OrderItemException {
         setProduct(product);
         setOrder(order);
-        setQuantity(quantity);
+        this.quantity = normalizeQuantity(quantity);
+        this.sequence = 0;
+        this.pricedCents = product.getPriceCents();
+    }
+
+    /**
+     * Constructs a line of an order from already validated arguments.
+     */
+    OrderItem(Order order, Product product, int quantity, long sequence) {
+        this.product = product;
+        this.order = order;
+        this.quantity = normalizeQuantity(quantity);
+        this.sequence = sequence;
+        this.pricedCents = product.getPriceCents();
     }
 
     private void setProduct(Product product) throws OrderItemException {
@@ -34,12 +50,33 @@ public class OrderItem implements Billable {
     }
 
     public void setQuantity(int quantity) {
-        if (quantity <= 0) {
-            quantity = 1;
-        }
+        order.changeQuantity(this, normalizeQuantity(quantity));
+    }
+
+    void assignQuantity(int quantity) {
         this.quantity = quantity;
     }
 
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the unit price this line is counted at in the totals of its order, which catch up with
+     * the price of the product when they are read.
+     */
+    long getPricedCents() {
+        return pricedCents;
+    }
+
+    void setPricedCents(long pricedCents) {
+        this.pricedCents = pricedCents;
+    }
+
+    private static int normalizeQuantity(int quantity) {
+        return quantity <= 0 ? 1 : quantity;
+    }
+
     public Product getProduct() {
         return product;
     }
@@ -49,14 +86,64 @@ public class OrderItem implements Billable {
     }
 
     public double getTotalPrice() {
-        return product.getPrice() * quantity;
+        return (double) getTotalCents() / Money.CENTS_PER_UNIT;
+    }
+
+    public Money getTotal() {
+        return Money.ofCents(getTotalCents());
+    }
+
+    long getTotalCents() {
+        return product.getPriceCents() * quantity;
+    }
+
+    /**
+     * Returns the tax rate applied to this line, in basis points.
+     *
+     * @return the tax rate of this line
+     */
+    public int getTaxRate() {
+        return order.getTaxEngine().rate(product.getCategory().ordinal(), order.getDestination());
+    }
+
+    public Money getTax() {
+        return Money.ofCents(Money.includedTax(getTotalCents(), getTaxRate()));
+    }
+
+    @Override
+    public double taxValue(double totalPrice) {
+        return totalPrice - totalPrice / (1 + (double) getTaxRate() / Money.BASIS_POINTS);
+    }
+
+    @Override
+    public Money taxValue(Money totalPrice) {
+        return Money.ofCents(Money.includedTax(totalPrice.getCents(), getTaxRate()));
     }
 
     @Override
-    public String bill() {
-        double totalTax = taxValue(getTotalPrice());
-        return String.format("Product: %s | Quantity: %d | Price: %.1f | Tax: %.2f",
-                product.getName(), quantity, getTotalPrice(), totalTax).replace(',', '.');
+    public void bill(Appendable out) throws IOException {
+        bill(out, false);
+    }
+
+    /**
+     * Writes the bill line, optionally dropping a trailing zero from the tax as batch reports do.
+     */
+    void bill(Appendable out, boolean compactTax) throws IOException {
+        int quantity = this.quantity;
+        long totalCents = product.getPriceCents() * quantity;
+        long taxCents = Money.includedTax(totalCents, getTaxRate());
+        out.append("Product: ");
+        BillFormat.appendWithoutCommas(out, product.getName());
+        out.append(" | Quantity: ");
+        BillFormat.appendLong(out, quantity);
+        out.append(" | Price: ");
+        BillFormat.appendOneDecimal(out, totalCents);
+        out.append(" | Tax: ");
+        if (compactTax) {
+            BillFormat.appendAtLeastOneDecimal(out, taxCents);
+        } else {
+            BillFormat.appendTwoDecimals(out, taxCents);
+        }
     }
 
     @Override
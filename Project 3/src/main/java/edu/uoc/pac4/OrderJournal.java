@@ -0,0 +1,492 @@
+package edu.uoc.pac4;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal that makes an order batch durable.
+ *
+ * Every mutation of the batch (orders added and removed, line changes, order and delivery date
+ * changes) is appended as a compact binary record to a memory-mapped segment file; segments are
+ * rotated when full. Appending is a copy into mapped memory, so it costs no system call. Records are
+ * made durable by forcing the range of the mapped segment appended since the last force, which a
+ * background thread does every commit interval, and {@link #sync()} waits for; concurrent callers of
+ * {@link #sync()} share a single force (group commit).
+ *
+ * Users and products are written once per journal and referred to by number afterwards. Each record
+ * carries a CRC32C checksum, so a record torn by a crash ends the replay instead of corrupting it.
+ * Product price changes are not journaled: replayed products have the price they had when first
+ * journaled.
+ */
+public final class OrderJournal implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int SEGMENT_SHIFT = 40;
+
+    private static final byte USER_DEFINED = 1;
+    private static final byte PRODUCT_DEFINED = 2;
+    private static final byte ORDER_ADDED = 3;
+    private static final byte ORDER_REMOVED = 4;
+    private static final byte ALL_REMOVED = 5;
+    private static final byte LINE_CHANGED = 6;
+    private static final byte ORDER_DATE_CHANGED = 7;
+    private static final byte DELIVERY_DATE_CHANGED = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long commitIntervalMillis;
+    private final BinaryWriter record = new BinaryWriter(256);
+    private final CRC32C crc = new CRC32C();
+    private final Map<User, Integer> userIds = new IdentityHashMap<>();
+    private final Map<Product, Integer> productIds = new IdentityHashMap<>();
+    private final Object forceLock = new Object();
+
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private long appendedPosition;
+    private volatile long forcedPosition;
+    private ScheduledExecutorService flusher;
+    private boolean replayed;
+    private boolean closed;
+
+    private OrderJournal(Path directory, int segmentSize, long commitIntervalMillis) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitIntervalMillis = commitIntervalMillis;
+    }
+
+    /**
+     * Opens the journal kept in a directory, with the default segment size and commit interval.
+     *
+     * @param directory the directory holding the segment files, created if missing
+     * @return the journal, to be replayed before use
+     * @throws IOException if the directory cannot be created
+     */
+    public static OrderJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the journal kept in a directory.
+     *
+     * @param directory            the directory holding the segment files, created if missing
+     * @param segmentSize          the size in bytes of new segment files
+     * @param commitIntervalMillis how often appended records are forced to disk in the background, or
+     *                             0 to force them only on {@link #sync()}
+     * @return the journal, to be replayed before use
+     * @throws IOException if the directory cannot be created
+     */
+    public static OrderJournal open(Path directory, int segmentSize, long commitIntervalMillis) throws IOException {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("The segment size must be at least 4096 bytes");
+        }
+        if (commitIntervalMillis < 0) {
+            throw new IllegalArgumentException("The commit interval cannot be negative");
+        }
+        Files.createDirectories(directory);
+        return new OrderJournal(directory, segmentSize, commitIntervalMillis);
+    }
+
+    /**
+     * Rebuilds the batch recorded in the journal and attaches the journal to it, so its later
+     * mutations are recorded too. A journal can be replayed only once.
+     *
+     * @param name        the name of the order batch
+     * @param description the description of the order batch
+     * @param maxSize     the maximum number of orders, or {@link OrderBatch#UNBOUNDED}
+     * @return the rebuilt order batch
+     * @throws IOException if the segment files cannot be read
+     */
+    public synchronized OrderBatch replay(String name, String description, int maxSize) throws IOException {
+        if (replayed) {
+            throw new IllegalStateException("The journal has already been replayed");
+        }
+        replayed = true;
+        OrderBatch orderBatch = new OrderBatch(name, description, maxSize);
+        List<User> users = new ArrayList<>();
+        List<Product> products = new ArrayList<>();
+        List<Path> segments = segmentFiles();
+
+        int tailIndex = 0;
+        int tailOffset = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            tailIndex = i;
+            tailOffset = replaySegment(segments.get(i), orderBatch, users, products);
+            if (tailOffset < 0) {
+                tailOffset = -tailOffset - 1;
+                for (int j = i + 1; j < segments.size(); j++) {
+                    Files.delete(segments.get(j));
+                }
+                break;
+            }
+        }
+        for (int i = 0; i < users.size(); i++) {
+            userIds.put(users.get(i), i);
+        }
+        for (int i = 0; i < products.size(); i++) {
+            productIds.put(products.get(i), i);
+        }
+
+        openSegment(tailIndex, tailOffset);
+        forcedPosition = appendedPosition;
+        if (commitIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "order-journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::backgroundSync, commitIntervalMillis, commitIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        orderBatch.attach(this);
+        return orderBatch;
+    }
+
+    /**
+     * Waits until every record appended before this call is on disk. Callers arriving while a force
+     * is in progress are covered by the next one.
+     *
+     * @throws IOException if the journal is closed
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            checkOpen();
+            target = appendedPosition;
+        }
+        if (forcedPosition >= target) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forcedPosition >= target) {
+                return;
+            }
+            MappedByteBuffer current;
+            long position;
+            synchronized (this) {
+                checkOpen();
+                current = segment;
+                position = appendedPosition;
+            }
+            long forced = forcedPosition;
+            int from = forced >>> SEGMENT_SHIFT == position >>> SEGMENT_SHIFT ? offset(forced) : 0;
+            current.force(from, offset(position) - from);
+            forcedPosition = position;
+        }
+    }
+
+    /**
+     * Forces the appended records to disk and releases the journal. The batch it is attached to must
+     * not be changed afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (segment != null) {
+                segment.force();
+            }
+            closed = true;
+            segment = null;
+        }
+    }
+
+    synchronized void orderAdded(Order order) {
+        int user = userId(order.getUser());
+        record.reset();
+        record.writeLong(order.getNumericId());
+        record.writeInt(user);
+        record.writeLong(EntityRecords.epochDay(order.getDeliveryDate()));
+        record.writeByte(order.isConcurrent() ? 1 : 0);
+        append(ORDER_ADDED);
+    }
+
+    synchronized void orderRemoved(long orderId) {
+        record.reset();
+        record.writeLong(orderId);
+        append(ORDER_REMOVED);
+    }
+
+    synchronized void allRemoved() {
+        record.reset();
+        append(ALL_REMOVED);
+    }
+
+    synchronized void lineChanged(Order order, Product product, long units) {
+        int productId = productId(product);
+        record.reset();
+        record.writeLong(order.getNumericId());
+        record.writeInt(productId);
+        record.writeLong(units);
+        append(LINE_CHANGED);
+    }
+
+    synchronized void orderDateChanged(Order order, LocalDate orderDate) {
+        record.reset();
+        record.writeLong(order.getNumericId());
+        record.writeLong(EntityRecords.epochDay(orderDate));
+        append(ORDER_DATE_CHANGED);
+    }
+
+    synchronized void deliveryDateChanged(Order order, LocalDate deliveryDate) {
+        record.reset();
+        record.writeLong(order.getNumericId());
+        record.writeLong(EntityRecords.epochDay(deliveryDate));
+        append(DELIVERY_DATE_CHANGED);
+    }
+
+    private int userId(User user) {
+        Integer id = userIds.get(user);
+        if (id == null) {
+            id = userIds.size();
+            userIds.put(user, id);
+            record.reset();
+            EntityRecords.writeUser(record, user);
+            append(USER_DEFINED);
+        }
+        return id;
+    }
+
+    private int productId(Product product) {
+        Integer id = productIds.get(product);
+        if (id == null) {
+            id = productIds.size();
+            productIds.put(product, id);
+            record.reset();
+            EntityRecords.writeProduct(record, product);
+            append(PRODUCT_DEFINED);
+        }
+        return id;
+    }
+
+    /**
+     * Appends the record built in {@link #record} with the given type, rotating the segment if it
+     * does not fit.
+     */
+    private void append(byte type) {
+        if (closed || segment == null) {
+            throw new IllegalStateException("The journal is not open");
+        }
+        int length = 1 + record.length();
+        if (HEADER_SIZE + length > segmentSize) {
+            throw new IllegalArgumentException("The record does not fit in a journal segment");
+        }
+        try {
+            if (segment.remaining() < HEADER_SIZE + length) {
+                segment.force();
+                openSegment(segmentIndex + 1, 0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        crc.reset();
+        crc.update(type);
+        crc.update(record.array(), 0, record.length());
+        int start = segment.position();
+        segment.position(start + Integer.BYTES);
+        segment.putInt((int) crc.getValue());
+        segment.put(type);
+        record.copyTo(segment);
+        segment.putInt(start, length);
+        appendedPosition = position(segmentIndex, segment.position());
+    }
+
+    /**
+     * Maps a segment for appending from an offset. A segment opened from its start is truncated, and the
+     * file system zero-fills it when the mapping extends it, so rotating segments writes nothing. Only
+     * the tail segment reopened after a replay is cleared past its last record, in case a torn record
+     * was left there.
+     */
+    private void openSegment(int index, int offset) throws IOException {
+        Path file = directory.resolve(segmentName(index));
+        try (FileChannel channel = offset == 0
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = Math.max(channel.size(), segmentSize);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (offset > 0) {
+                for (int i = offset; i < size; i++) {
+                    if (mapped.get(i) != 0) {
+                        mapped.put(i, (byte) 0);
+                    }
+                }
+            }
+            mapped.position(offset);
+            segment = mapped;
+            segmentIndex = index;
+            appendedPosition = position(index, offset);
+            forcedPosition = Math.max(forcedPosition, appendedPosition);
+        }
+    }
+
+    /**
+     * Replays the records of a segment.
+     *
+     * @return the offset after the last record if the segment ends cleanly, or -(offset + 1) if it
+     * ends with a torn or corrupt record
+     */
+    private int replaySegment(Path file, OrderBatch orderBatch, List<User> users, List<Product> products)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C checksum = new CRC32C();
+            while (mapped.remaining() >= HEADER_SIZE) {
+                int start = mapped.position();
+                int length = mapped.getInt();
+                if (length == 0) {
+                    return start;
+                }
+                int expectedCrc = mapped.getInt();
+                if (length < 0 || length > mapped.remaining()) {
+                    return -start - 1;
+                }
+                ByteBuffer body = mapped.slice().limit(length).order(ByteOrder.LITTLE_ENDIAN);
+                checksum.reset();
+                checksum.update(body.duplicate());
+                if ((int) checksum.getValue() != expectedCrc) {
+                    return -start - 1;
+                }
+                mapped.position(mapped.position() + length);
+                try {
+                    apply(new BinaryReader(body), orderBatch, users, products);
+                } catch (Exception e) {
+                    throw new IOException("Invalid journal record in " + file, e);
+                }
+            }
+            return mapped.position();
+        }
+    }
+
+    private static void apply(BinaryReader in, OrderBatch orderBatch, List<User> users, List<Product> products)
+            throws Exception {
+        int type = in.readByte();
+        switch (type) {
+            case USER_DEFINED:
+                users.add(EntityRecords.readUser(in));
+                break;
+            case PRODUCT_DEFINED:
+                products.add(EntityRecords.readProduct(in));
+                break;
+            case ORDER_ADDED: {
+                long id = in.readLong();
+                User user = users.get(in.readInt());
+                LocalDate deliveryDate = EntityRecords.date(in.readLong());
+                Order order = Order.restore(user, null, deliveryDate, id, in.readByte() != 0);
+                orderBatch.addOrder(order);
+                break;
+            }
+            case ORDER_REMOVED: {
+                Order order = orderBatch.get(in.readLong());
+                if (order != null) {
+                    orderBatch.remove(order);
+                }
+                break;
+            }
+            case ALL_REMOVED:
+                orderBatch.remove();
+                break;
+            case LINE_CHANGED: {
+                Order order = orderBatch.get(in.readLong());
+                Product product = products.get(in.readInt());
+                long units = in.readLong();
+                if (order != null && units > 0) {
+                    order.addOrderItem(product, (int) units);
+                } else if (order != null && units < 0) {
+                    order.removeOrderItem(product, (int) -units);
+                }
+                break;
+            }
+            case ORDER_DATE_CHANGED: {
+                Order order = orderBatch.get(in.readLong());
+                if (order != null) {
+                    order.setOrderDate(EntityRecords.date(in.readLong()));
+                }
+                break;
+            }
+            case DELIVERY_DATE_CHANGED: {
+                Order order = orderBatch.get(in.readLong());
+                if (order != null) {
+                    order.setDeliveryDate(EntityRecords.date(in.readLong()));
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private void backgroundSync() {
+        try {
+            sync();
+        } catch (IOException | UncheckedIOException e) {
+            // The journal is closed, or the force failed and the next sync retries it.
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The journal is closed");
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (int index = 0; Files.exists(directory.resolve(segmentName(index))); index++) {
+            segments.add(directory.resolve(segmentName(index)));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                if (!segments.contains(file)) {
+                    throw new IOException("Unexpected journal segment " + file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static String segmentName(int index) {
+        return String.format("%08d%s", index, SEGMENT_SUFFIX);
+    }
+
+    private static long position(int segmentIndex, int offset) {
+        return (long) segmentIndex << SEGMENT_SHIFT | offset;
+    }
+
+    private static int offset(long position) {
+        return (int) (position & ((1L << SEGMENT_SHIFT) - 1));
+    }
+}
@@ -0,0 +1,107 @@
+package edu.uoc.pac4;
+
+import java.util.Collection;
+
+/**
+ * Storage of the lines of an order, keyed by product, together with the running order total and
+ * the running total of each product category, from which taxes are derived.
+ *
+ * Every line mutation goes through this class so the total always follows the lines. Readers that
+ * need lines and totals to agree call {@link #lockSnapshot()} first and use the {@code snapshot*}
+ * methods until {@link #unlockSnapshot(long)}.
+ */
+abstract class OrderLines {
+    final Order order;
+    private long priceRevision;
+
+    OrderLines(Order order) {
+        this.order = order;
+        this.priceRevision = Product.getPriceRevision();
+    }
+
+    /**
+     * Adds units of a product, merging them into the product's line if it already exists.
+     *
+     * @return the line holding the product
+     */
+    abstract OrderItem add(Product product, int quantity);
+
+    /**
+     * Removes units of a product, dropping its line when no unit is left.
+     *
+     * @return the number of units removed, or -1 if the order has no line for the product
+     */
+    abstract int remove(Product product, int quantity);
+
+    /**
+     * Sets the quantity of a line. Lines no longer in the order are updated without touching totals.
+     */
+    abstract void setQuantity(OrderItem orderItem, int quantity);
+
+    abstract OrderItem get(Product product);
+
+    abstract int size();
+
+    abstract long getTotalCents();
+
+    abstract long getTaxCents();
+
+    abstract boolean isConcurrent();
+
+    abstract long lockSnapshot();
+
+    abstract void unlockSnapshot(long stamp);
+
+    /**
+     * Returns the lines in insertion order. Only stable while the snapshot lock is held.
+     */
+    abstract Collection<OrderItem> snapshotItems();
+
+    abstract long snapshotTotalCents();
+
+    /**
+     * Returns the gross total of the lines of each product category, indexed by category ordinal. The
+     * returned array must not be modified.
+     */
+    abstract long[] snapshotCategoryTotals();
+
+    long snapshotTaxCents() {
+        return order.getTaxEngine().includedTax(snapshotCategoryTotals(), order.getDestination());
+    }
+
+    /**
+     * Adds an amount to the totals of the category of a product.
+     */
+    abstract void adjustTotals(Product product, long delta);
+
+    /**
+     * Brings the totals up to the current prices. Only the lines of the products whose price changed
+     * since the last call are repriced, unless so many prices changed that the log of price changes
+     * no longer tells which, and then every line is. Callers keep the lines from changing.
+     */
+    final void refreshPrices() {
+        long revision = Product.getPriceRevision();
+        if (revision == priceRevision) {
+            return;
+        }
+        if (!Product.forEachPriceChange(priceRevision, revision, product -> {
+            OrderItem orderItem = get(product);
+            if (orderItem != null) {
+                reprice(orderItem);
+            }
+        })) {
+            for (OrderItem orderItem : snapshotItems()) {
+                reprice(orderItem);
+            }
+        }
+        priceRevision = revision;
+    }
+
+    private void reprice(OrderItem orderItem) {
+        long priceCents = orderItem.getProduct().getPriceCents();
+        if (priceCents != orderItem.getPricedCents()) {
+            adjustTotals(orderItem.getProduct(), (priceCents - orderItem.getPricedCents()) * orderItem.getQuantity());
+            orderItem.setPricedCents(priceCents);
+        }
+    }
+}
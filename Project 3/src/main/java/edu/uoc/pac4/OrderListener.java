@@ -0,0 +1,41 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+
+/**
+ * Receives the changes of an order that the indexes of the batches holding it depend on.
+ *
+ * Line changes are delivered while the order holds the lock its mutators share, and date changes
+ * while it holds its monitor and keeps its lines from changing, so a listener registered from a
+ * snapshot sees every later change once.
+ */
+interface OrderListener {
+    /**
+     * Called when the lines of an order change.
+     *
+     * @param order   the order whose lines changed
+     * @param product the product of the changed line
+     * @param units   the change in the number of units of the product
+     * @param lines   1 if the line was added, -1 if it was removed, 0 if only its quantity changed
+     */
+    void linesChanged(Order order, Product product, long units, int lines);
+
+    /**
+     * Called when the date of an order changes, while its lines are held still. On registration the
+     * listener is told the date changed from null to the current one after being told of the lines, and
+     * on unregistration from the current one to null before being told the lines were removed.
+     *
+     * @param order    the order whose date changed
+     * @param previous the previous order date
+     * @param current  the new order date
+     */
+    void orderDateChanged(Order order, LocalDate previous, LocalDate current);
+
+    /**
+     * Called when the delivery date of an order is set.
+     *
+     * @param order        the delivered order
+     * @param deliveryDate the new delivery date
+     */
+    void deliveryDateChanged(Order order, LocalDate deliveryDate);
+}
@@ -0,0 +1,492 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Query over the orders of an {@link OrderBatch}, built by chaining filters, an ordering and a limit
+ * onto {@link OrderBatch#query()}. Queries are immutable: every method returns a new query.
+ *
+ * Nothing is read until a terminal method runs. The orders are then taken from the cheapest source
+ * the filters allow: the order with the requested id, the index of orders by date for a date range,
+ * nothing at all if a requested product is in no line of the batch, or else every order of the batch.
+ * {@link #count()} and {@link #toList()} scan large batches in parallel, while {@link #stream()}
+ * always streams from the calling thread. Orders read from the date index are already sorted by date,
+ * so {@link #orderByDate()} with a {@link #limit(long)} stops after the first matching orders, and
+ * other orderings with a limit keep only that many orders in memory instead of sorting them all.
+ */
+public final class OrderQuery {
+    /**
+     * Ascending order date, then ascending id, with undated orders last: the order of the date index.
+     */
+    private static final Comparator<Order> DATE_ORDER = Comparator
+            .comparing(Order::getOrderDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingLong(Order::getNumericId);
+    private static final String MSG_ERR_NULL_DATE = "[ERROR] The dates cannot be null";
+    private static final String MSG_ERR_NULL_USER = "[ERROR] The user cannot be null";
+    private static final String MSG_ERR_NULL_PRODUCT = "[ERROR] The product cannot be null";
+    private static final String MSG_ERR_NULL_ID = "[ERROR] The order id cannot be null";
+    private static final String MSG_ERR_NULL_TOTAL = "[ERROR] The totals cannot be null";
+    private static final String MSG_ERR_NULL_PREDICATE = "[ERROR] The predicate cannot be null";
+    private static final String MSG_ERR_NULL_COMPARATOR = "[ERROR] The comparator cannot be null";
+    private static final String MSG_ERR_NULL_PROJECTION = "[ERROR] The projection cannot be null";
+    private static final String MSG_ERR_LIMIT = "[ERROR] The limit cannot be negative";
+
+    private final OrderBatch orderBatch;
+    private String id;
+    private long fromDay = Long.MIN_VALUE;
+    private long toDay = Long.MAX_VALUE;
+    private User user;
+    private List<Product> products = new ArrayList<>();
+    private long minTotalCents = Long.MIN_VALUE;
+    private long maxTotalCents = Long.MAX_VALUE;
+    private Boolean delivered;
+    private List<Predicate<? super Order>> predicates = new ArrayList<>();
+    private Comparator<? super Order> comparator;
+    private long limit = -1;
+
+    OrderQuery(OrderBatch orderBatch) {
+        this.orderBatch = orderBatch;
+    }
+
+    /**
+     * Keeps the order with an id.
+     *
+     * @param id the id of the order, as returned by {@link Order#getId()}
+     * @return the filtered query
+     * @throws NullPointerException if the id is null
+     */
+    public OrderQuery withId(String id) {
+        if (id == null) {
+            throw new NullPointerException(MSG_ERR_NULL_ID);
+        }
+        OrderQuery query = copy();
+        query.id = id;
+        return query;
+    }
+
+    /**
+     * Keeps the orders placed between two dates, both included. Several date filters keep the orders
+     * placed in all their periods.
+     *
+     * @param from the first order date
+     * @param to   the last order date
+     * @return the filtered query
+     * @throws NullPointerException if a date is null
+     */
+    public OrderQuery placedBetween(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new NullPointerException(MSG_ERR_NULL_DATE);
+        }
+        OrderQuery query = copy();
+        query.fromDay = Math.max(fromDay, from.toEpochDay());
+        query.toDay = Math.min(toDay, to.toEpochDay());
+        return query;
+    }
+
+    /**
+     * Keeps the orders placed after a date.
+     *
+     * @param orderDate the date to compare the order dates with
+     * @return the filtered query
+     * @throws NullPointerException if the date is null
+     */
+    public OrderQuery placedAfter(LocalDate orderDate) {
+        if (orderDate == null) {
+            throw new NullPointerException(MSG_ERR_NULL_DATE);
+        }
+        return placedBetween(orderDate.plusDays(1), LocalDate.MAX);
+    }
+
+    /**
+     * Keeps the orders placed by a user, or an equal one.
+     *
+     * @param user the user placing the orders
+     * @return the filtered query
+     * @throws NullPointerException if the user is null
+     */
+    public OrderQuery byUser(User user) {
+        if (user == null) {
+            throw new NullPointerException(MSG_ERR_NULL_USER);
+        }
+        OrderQuery query = copy();
+        query.user = user;
+        return query;
+    }
+
+    /**
+     * Keeps the orders with a line of a product. Several product filters keep the orders containing
+     * all the products.
+     *
+     * @param product the product to look for
+     * @return the filtered query
+     * @throws NullPointerException if the product is null
+     */
+    public OrderQuery containing(Product product) {
+        if (product == null) {
+            throw new NullPointerException(MSG_ERR_NULL_PRODUCT);
+        }
+        OrderQuery query = copy();
+        query.products.add(product);
+        return query;
+    }
+
+    /**
+     * Keeps the orders whose total is between two amounts, both included.
+     *
+     * @param min the minimum total
+     * @param max the maximum total
+     * @return the filtered query
+     * @throws NullPointerException if an amount is null
+     */
+    public OrderQuery totalBetween(Money min, Money max) {
+        if (min == null || max == null) {
+            throw new NullPointerException(MSG_ERR_NULL_TOTAL);
+        }
+        OrderQuery query = copy();
+        query.minTotalCents = Math.max(minTotalCents, min.getCents());
+        query.maxTotalCents = Math.min(maxTotalCents, max.getCents());
+        return query;
+    }
+
+    /**
+     * Keeps the orders whose total is at least an amount.
+     *
+     * @param min the minimum total
+     * @return the filtered query
+     * @throws NullPointerException if the amount is null
+     */
+    public OrderQuery totalAtLeast(Money min) {
+        return totalBetween(min, Money.ofCents(Long.MAX_VALUE));
+    }
+
+    /**
+     * Keeps the orders that have a delivery date.
+     *
+     * @return the filtered query
+     */
+    public OrderQuery delivered() {
+        OrderQuery query = copy();
+        query.delivered = Boolean.TRUE;
+        return query;
+    }
+
+    /**
+     * Keeps the orders that have no delivery date.
+     *
+     * @return the filtered query
+     */
+    public OrderQuery undelivered() {
+        OrderQuery query = copy();
+        query.delivered = Boolean.FALSE;
+        return query;
+    }
+
+    /**
+     * Keeps the orders matching a predicate, checked after the other filters.
+     *
+     * @param predicate the predicate the orders must match
+     * @return the filtered query
+     * @throws NullPointerException if the predicate is null
+     */
+    public OrderQuery where(Predicate<? super Order> predicate) {
+        if (predicate == null) {
+            throw new NullPointerException(MSG_ERR_NULL_PREDICATE);
+        }
+        OrderQuery query = copy();
+        query.predicates.add(predicate);
+        return query;
+    }
+
+    /**
+     * Sorts the orders by ascending order date and then id, the order of the batch reports.
+     *
+     * @return the sorted query
+     */
+    public OrderQuery orderByDate() {
+        return orderBy(DATE_ORDER);
+    }
+
+    /**
+     * Sorts the orders by a comparator, replacing any previous ordering.
+     *
+     * @param comparator the order in which orders are returned
+     * @return the sorted query
+     * @throws NullPointerException if the comparator is null
+     */
+    public OrderQuery orderBy(Comparator<? super Order> comparator) {
+        if (comparator == null) {
+            throw new NullPointerException(MSG_ERR_NULL_COMPARATOR);
+        }
+        OrderQuery query = copy();
+        query.comparator = comparator;
+        return query;
+    }
+
+    /**
+     * Returns at most a number of orders, the first ones of the ordering if there is one.
+     *
+     * @param limit the maximum number of orders
+     * @return the limited query
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public OrderQuery limit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException(MSG_ERR_LIMIT);
+        }
+        OrderQuery query = copy();
+        query.limit = this.limit < 0 ? limit : Math.min(this.limit, limit);
+        return query;
+    }
+
+    /**
+     * Returns a lazy stream of the matching orders, read from the calling thread as it is consumed.
+     *
+     * @return the matching orders
+     */
+    public Stream<Order> stream() {
+        // The plan is only chosen, and the sources only opened, once the stream is consumed.
+        return Stream.of(this).flatMap(query -> query.evaluate(false));
+    }
+
+    /**
+     * Returns a lazy stream of a projection of the matching orders, such as their ids or totals.
+     *
+     * @param projection the function applied to each matching order
+     * @param <R>        the type of the projected values
+     * @return the projected values, in the order of the matching orders
+     * @throws NullPointerException if the projection is null
+     */
+    public <R> Stream<R> select(Function<? super Order, ? extends R> projection) {
+        if (projection == null) {
+            throw new NullPointerException(MSG_ERR_NULL_PROJECTION);
+        }
+        return stream().map(projection);
+    }
+
+    /**
+     * Returns the matching orders in a list, scanning large batches in parallel.
+     *
+     * @return the matching orders
+     */
+    public List<Order> toList() {
+        return evaluate(true).collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the matching orders, scanning large batches in parallel.
+     *
+     * @return the number of matching orders
+     */
+    public long count() {
+        long count = filtered(source(true)).count();
+        return limit < 0 ? count : Math.min(count, limit);
+    }
+
+    /**
+     * Describes how the query is evaluated: the source of its orders, the filters checked on each of
+     * them, and whether they are sorted and limited.
+     *
+     * @return the plan of the query
+     */
+    public String explain() {
+        StringBuilder plan = new StringBuilder();
+        Access access = access();
+        switch (access) {
+            case EMPTY:
+                plan.append("empty");
+                break;
+            case ID:
+                plan.append("id lookup ").append(id);
+                break;
+            case DATE_INDEX:
+                plan.append("date index ").append(LocalDate.ofEpochDay(fromDay)).append(" to ")
+                        .append(LocalDate.ofEpochDay(toDay));
+                break;
+            default:
+                plan.append(orderBatch.isParallelScan() ? "parallel scan" : "scan");
+        }
+        List<String> filters = new ArrayList<>();
+        if (access != Access.DATE_INDEX && (fromDay != Long.MIN_VALUE || toDay != Long.MAX_VALUE)) {
+            filters.add("date");
+        }
+        if (user != null) {
+            filters.add("user");
+        }
+        if (!products.isEmpty()) {
+            filters.add("product");
+        }
+        if (minTotalCents != Long.MIN_VALUE || maxTotalCents != Long.MAX_VALUE) {
+            filters.add("total");
+        }
+        if (delivered != null) {
+            filters.add("delivery");
+        }
+        if (!predicates.isEmpty()) {
+            filters.add("predicate");
+        }
+        if (access != Access.EMPTY && !filters.isEmpty()) {
+            plan.append(" | filter ").append(String.join(", ", filters));
+        }
+        if (comparator != null && !isSortedBySource(access)) {
+            plan.append(limit < 0 ? " | sort" : " | top " + limit);
+        } else if (limit >= 0) {
+            plan.append(" | limit ").append(limit);
+        }
+        return plan.toString();
+    }
+
+    private Stream<Order> evaluate(boolean parallel) {
+        Access access = access();
+        Stream<Order> orders = filtered(source(parallel));
+        if (comparator != null && !isSortedBySource(access)) {
+            // With a limit, only the first orders are kept while reading, then sorted.
+            return limit < 0 ? orders.sorted(comparator) : first(orders).stream();
+        }
+        if (comparator == null && access == Access.SCAN) {
+            orders = orders.unordered();
+        }
+        return limit < 0 ? orders : orders.limit(limit);
+    }
+
+    private List<Order> first(Stream<Order> orders) {
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<Order> heap = orders.collect(() -> new PriorityQueue<>(comparator.reversed()),
+                this::offer, (left, right) -> right.forEach(order -> offer(left, order)));
+        List<Order> first = new ArrayList<>(heap);
+        first.sort(comparator);
+        return first;
+    }
+
+    private void offer(PriorityQueue<Order> heap, Order order) {
+        if (heap.size() < limit) {
+            heap.add(order);
+        } else if (comparator.compare(order, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(order);
+        }
+    }
+
+    private Stream<Order> source(boolean parallel) {
+        switch (access()) {
+            case EMPTY:
+                return Stream.empty();
+            case ID:
+                return Stream.ofNullable(orderBatch.findById(id));
+            case DATE_INDEX:
+                return orderBatch.streamBetween(fromDay, toDay);
+            default:
+                return orderBatch.streamOrders(parallel);
+        }
+    }
+
+    private Access access() {
+        if (fromDay > toDay || minTotalCents > maxTotalCents) {
+            return Access.EMPTY;
+        }
+        for (Product product : products) {
+            if (orderBatch.auditUnits(product) == 0) {
+                return Access.EMPTY;
+            }
+        }
+        if (id != null) {
+            return Access.ID;
+        }
+        if (fromDay != Long.MIN_VALUE || toDay != Long.MAX_VALUE) {
+            return Access.DATE_INDEX;
+        }
+        return Access.SCAN;
+    }
+
+    private boolean isSortedBySource(Access access) {
+        return comparator == DATE_ORDER && access != Access.SCAN;
+    }
+
+    private Stream<Order> filtered(Stream<Order> orders) {
+        Predicate<Order> filter = matcher();
+        return filter == null ? orders : orders.filter(filter);
+    }
+
+    /**
+     * Returns the conjunction of the filters not answered by the source, or null if there is none.
+     * Dates are checked again on id lookups and scans; the date index has already applied them.
+     */
+    private Predicate<Order> matcher() {
+        List<Predicate<? super Order>> filters = new ArrayList<>();
+        Access access = access();
+        if (access != Access.DATE_INDEX && (fromDay != Long.MIN_VALUE || toDay != Long.MAX_VALUE)) {
+            long from = fromDay;
+            long to = toDay;
+            filters.add(order -> {
+                LocalDate orderDate = order.getOrderDate();
+                return orderDate != null && orderDate.toEpochDay() >= from && orderDate.toEpochDay() <= to;
+            });
+        }
+        if (user != null) {
+            User expected = user;
+            filters.add(order -> expected.equals(order.getUser()));
+        }
+        for (Product product : products) {
+            filters.add(order -> order.getOrderItem(product) != null);
+        }
+        if (minTotalCents != Long.MIN_VALUE || maxTotalCents != Long.MAX_VALUE) {
+            long min = minTotalCents;
+            long max = maxTotalCents;
+            filters.add(order -> {
+                long totalCents = order.getTotalCents();
+                return totalCents >= min && totalCents <= max;
+            });
+        }
+        if (delivered != null) {
+            boolean expected = delivered;
+            filters.add(order -> (order.getDeliveryDate() != null) == expected);
+        }
+        filters.addAll(predicates);
+        if (filters.isEmpty()) {
+            return null;
+        }
+        return order -> {
+            for (Predicate<? super Order> filter : filters) {
+                if (!filter.test(order)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private OrderQuery copy() {
+        OrderQuery query = new OrderQuery(orderBatch);
+        query.id = id;
+        query.fromDay = fromDay;
+        query.toDay = toDay;
+        query.user = user;
+        query.products = new ArrayList<>(products);
+        query.minTotalCents = minTotalCents;
+        query.maxTotalCents = maxTotalCents;
+        query.delivered = delivered;
+        query.predicates = new ArrayList<>(predicates);
+        query.comparator = comparator;
+        query.limit = limit;
+        return query;
+    }
+
+    /**
+     * Where the orders of a query are read from.
+     */
+    private enum Access {
+        EMPTY,
+        ID,
+        DATE_INDEX,
+        SCAN
+    }
+}
@@ -0,0 +1,250 @@
+package edu.uoc.pac4;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Approximate statistics of the orders of a batch, kept in fixed memory (about 60 KB) whatever the
+ * size of the batch, answered without visiting its orders, and mergeable across batches.
+ *
+ * <ul>
+ *     <li>Distinct users are counted with a HyperLogLog, with a standard error of about 0.8%.</li>
+ *     <li>The units of each product are counted with a Count-Min sketch, which never underestimates
+ *     them and, with a 98% probability, overestimates them by at most 0.27% of all the units. The
+ *     {@value #TOP_PRODUCTS} products with most units are tracked as heavy-hitter candidates.</li>
+ *     <li>Order values are kept in a quantile sketch with a relative accuracy of 1%.</li>
+ * </ul>
+ *
+ * Units and order values follow every line change of the orders while they are in the batch, as the
+ * income audits do, and order values are taken out when orders leave it. Line changes move order values
+ * at the current prices, so after a price change the batch reprices every order before order values
+ * are read again. Users are taken when orders join the batch and are only forgotten when the whole
+ * batch is emptied. Users and products are hashed
+ * by email and name, the fields their equality uses.
+ */
+public final class OrderSketches {
+    /**
+     * Maximum number of products returned by {@link #topProducts(int)}.
+     */
+    public static final int TOP_PRODUCTS = 32;
+    private static final String MSG_ERR_K = "[ERROR] The number of products cannot be negative";
+    private static final String MSG_ERR_QUANTILE = "[ERROR] The quantile must be between 0 and 1";
+
+    private final HyperLogLog users = new HyperLogLog();
+    private final CountMinSketch units = new CountMinSketch();
+    private final QuantileSketch orderValues = new QuantileSketch();
+    private final ConcurrentHashMap<String, Product> candidates = new ConcurrentHashMap<>();
+    private final Runnable repricing;
+    private volatile long candidateThreshold;
+    private volatile long priceRevision = Product.getPriceRevision();
+
+    OrderSketches() {
+        this(null);
+    }
+
+    /**
+     * Constructs sketches whose order values are brought to the current prices by the given action
+     * before being read after a price change.
+     */
+    OrderSketches(Runnable repricing) {
+        this.repricing = repricing;
+    }
+
+    void orderAdded(Order order) {
+        users.add(hash(order.getUser().getEmail()));
+    }
+
+    void orderValueAdded(long cents) {
+        orderValues.add(cents);
+    }
+
+    void orderValueChanged(long previousCents, long cents) {
+        orderValues.move(previousCents, cents);
+    }
+
+    void orderValueRemoved(long cents) {
+        orderValues.remove(cents);
+    }
+
+    void linesChanged(Product product, long units) {
+        long estimate = this.units.add(hash(product.getName()), units);
+        if (units > 0 && estimate > candidateThreshold && !candidates.containsKey(product.getName())) {
+            offerCandidate(product);
+        } else if (units < 0 && estimate < candidateThreshold && candidates.containsKey(product.getName())) {
+            lowerThreshold(estimate);
+        }
+    }
+
+    /**
+     * Forgets the users, once the batch has been emptied.
+     */
+    void ordersCleared() {
+        users.clear();
+    }
+
+    /**
+     * Returns the estimated number of distinct users that placed the orders.
+     *
+     * @return the estimated number of distinct users
+     */
+    public long estimateDistinctUsers() {
+        return users.estimate();
+    }
+
+    /**
+     * Returns the estimated number of units of a product in the orders, never below the exact one.
+     *
+     * @param product the product to count the units of
+     * @return the estimated units of the product
+     */
+    public long estimateUnits(Product product) {
+        if (product == null) {
+            return 0;
+        }
+        return Math.max(0, units.estimate(hash(product.getName())));
+    }
+
+    /**
+     * Returns the products with most units, with their estimated units, by descending units.
+     *
+     * @param k the maximum number of products to return, at most {@link #TOP_PRODUCTS}
+     * @return at most k products and their estimated units
+     * @throws IllegalArgumentException if k is negative
+     */
+    public Map<Product, Long> topProducts(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException(MSG_ERR_K);
+        }
+        List<Map.Entry<Product, Long>> ranked = new ArrayList<>();
+        for (Product product : candidates.values()) {
+            long estimate = estimateUnits(product);
+            if (estimate > 0) {
+                ranked.add(Map.entry(product, estimate));
+            }
+        }
+        ranked.sort(Map.Entry.<Product, Long>comparingByValue().reversed());
+        Map<Product, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<Product, Long> entry : ranked.subList(0, Math.min(k, ranked.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    /**
+     * Returns the number of orders whose value is sketched.
+     *
+     * @return the number of orders sketched
+     */
+    public long getOrderCount() {
+        return orderValues.count();
+    }
+
+    /**
+     * Returns the estimated order value at a quantile, within 1% of the value of some order at that
+     * rank. For instance, {@code estimateOrderValue(0.5)} is the median order value.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the estimated order value, or zero if no order was sketched
+     * @throws IllegalArgumentException if the quantile is not between 0 and 1
+     */
+    public Money estimateOrderValue(double quantile) {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            throw new IllegalArgumentException(MSG_ERR_QUANTILE);
+        }
+        reprice();
+        return Money.ofCents(orderValues.quantile(quantile));
+    }
+
+    /**
+     * Returns new sketches describing the orders of both these sketches and another, such as those of
+     * two batches. Neither is modified.
+     *
+     * @param other the sketches to merge with these
+     * @return the merged sketches
+     * @throws NullPointerException if the other sketches are null
+     */
+    public OrderSketches merge(OrderSketches other) {
+        OrderSketches merged = new OrderSketches();
+        for (OrderSketches sketches : new OrderSketches[]{this, other}) {
+            sketches.reprice();
+            sketches.users.mergeInto(merged.users);
+            sketches.units.mergeInto(merged.units);
+            sketches.orderValues.mergeInto(merged.orderValues);
+        }
+        for (OrderSketches sketches : new OrderSketches[]{this, other}) {
+            for (Product product : sketches.candidates.values()) {
+                merged.offerCandidate(product);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Brings the order values to the current prices if some price changed since they last were.
+     */
+    private void reprice() {
+        if (repricing == null || priceRevision == Product.getPriceRevision()) {
+            return;
+        }
+        synchronized (repricing) {
+            long revision = Product.getPriceRevision();
+            if (revision != priceRevision) {
+                priceRevision = revision;
+                repricing.run();
+            }
+        }
+    }
+
+    /**
+     * Adds a product to the candidates, dropping the one with fewest units when there are too many.
+     */
+    private synchronized void offerCandidate(Product product) {
+        if (candidates.putIfAbsent(product.getName(), product) != null || candidates.size() <= TOP_PRODUCTS) {
+            return;
+        }
+        String weakest = null;
+        long weakestUnits = Long.MAX_VALUE;
+        long threshold = Long.MAX_VALUE;
+        for (Map.Entry<String, Product> candidate : candidates.entrySet()) {
+            long estimate = units.estimate(hash(candidate.getKey()));
+            if (estimate < weakestUnits) {
+                threshold = weakestUnits;
+                weakestUnits = estimate;
+                weakest = candidate.getKey();
+            } else if (estimate < threshold) {
+                threshold = estimate;
+            }
+        }
+        candidates.remove(weakest);
+        candidateThreshold = threshold;
+    }
+
+    /**
+     * Lets products in as candidates once they pass a candidate whose units went down.
+     */
+    private synchronized void lowerThreshold(long units) {
+        candidateThreshold = Math.min(candidateThreshold, units);
+    }
+
+    /**
+     * Hashes a string to 64 bits: FNV-1a over its characters, then the MurmurHash3 finalizer, so every
+     * bit of the result depends on every character.
+     */
+    static long hash(String text) {
+        long hash = 0xCBF29CE484222325L;
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * 0x100000001B3L;
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,451 @@
+package edu.uoc.pac4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Set of orders keyed by their numeric id, split into independently locked shards.
+ *
+ * Every shard is an open-addressing table of primitive ids and order references with linear probing
+ * and backward-shift deletion, so an order costs two array slots instead of a hash map entry, and
+ * growing the table only rehashes one shard at a time. A third slot keeps a value the owner of the
+ * table attaches to each order, starting at zero.
+ *
+ * The lock of a shard is never held while running code from outside the table, so it may be taken
+ * while holding the lock of an order.
+ */
+final class OrderTable {
+    /**
+     * Returned by the value updates when the table does not hold the order.
+     */
+    static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int SHARD_BITS = 6;
+    private static final int SHARDS = 1 << SHARD_BITS;
+    private static final int INITIAL_SHARD_CAPACITY = 8;
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final AtomicInteger size = new AtomicInteger();
+
+    OrderTable() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Adds an order unless the table already holds maxSize orders or an order with the same id.
+     */
+    boolean add(Order order, int maxSize) {
+        if (reserve(1, maxSize) == 0) {
+            return false;
+        }
+        long hash = hash(order.getNumericId());
+        if (!shardOf(hash).add(order, hash)) {
+            size.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds several orders, locking each shard once. The orders that are not added, because the table
+     * is full or already holds an order with the same id, are passed to the given action.
+     *
+     * @return the orders added, in the order they were given
+     */
+    List<Order> addAll(List<? extends Order> batch, int maxSize, Consumer<? super Order> rejected) {
+        int count = batch.size();
+        long[] hashes = new long[count];
+        int[] shardCounts = new int[SHARDS + 1];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(batch.get(i).getNumericId());
+            shardCounts[shardIndex(hashes[i]) + 1]++;
+        }
+        for (int shard = 0; shard < SHARDS; shard++) {
+            shardCounts[shard + 1] += shardCounts[shard];
+        }
+        int[] byShard = new int[count];
+        int[] next = Arrays.copyOf(shardCounts, SHARDS);
+        for (int i = 0; i < count; i++) {
+            byShard[next[shardIndex(hashes[i])]++] = i;
+        }
+
+        boolean[] added = new boolean[count];
+        for (int shard = 0; shard < SHARDS; shard++) {
+            int room = reserve(shardCounts[shard + 1] - shardCounts[shard], maxSize);
+            if (room > 0) {
+                int addedToShard = shards[shard].addAll(batch, hashes, byShard, shardCounts[shard],
+                        shardCounts[shard + 1], room, added);
+                size.addAndGet(addedToShard - room);
+            }
+        }
+        List<Order> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (added[i]) {
+                result.add(batch.get(i));
+            } else {
+                rejected.accept(batch.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the order with the given id, passing it with its value to the given action once its
+     * shard is unlocked.
+     *
+     * @return the removed order, or null if there was none
+     */
+    Order remove(long id, ObjLongConsumer<? super Order> action) {
+        long hash = hash(id);
+        long[] value = new long[1];
+        Order removed = shardOf(hash).remove(id, hash, value);
+        if (removed != null) {
+            size.decrementAndGet();
+            action.accept(removed, value[0]);
+        }
+        return removed;
+    }
+
+    /**
+     * Adds an amount to the value of an order, if the table holds that very order.
+     *
+     * @return the previous value, or {@link #ABSENT} if the table does not hold the order
+     */
+    long addToValue(Order order, long delta) {
+        long hash = hash(order.getNumericId());
+        return shardOf(hash).updateValue(order, hash, delta, true);
+    }
+
+    /**
+     * Replaces the value of an order, if the table holds that very order.
+     *
+     * @return the previous value, or {@link #ABSENT} if the table does not hold the order
+     */
+    long setValue(Order order, long value) {
+        long hash = hash(order.getNumericId());
+        return shardOf(hash).updateValue(order, hash, value, false);
+    }
+
+    /**
+     * Counts up to wanted more orders, as long as the table holds at most maxSize orders.
+     *
+     * @return the number of orders counted
+     */
+    private int reserve(int wanted, int maxSize) {
+        int current;
+        int granted;
+        do {
+            current = size.get();
+            granted = Math.min(wanted, maxSize - current);
+            if (granted <= 0) {
+                return 0;
+            }
+        } while (!size.compareAndSet(current, current + granted));
+        return granted;
+    }
+
+    Order get(long id) {
+        long hash = hash(id);
+        return shardOf(hash).get(id, hash);
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Visits every order. Each shard is copied under its lock and its orders are visited once the lock
+     * is released, so the action may call methods of the orders that take their own locks.
+     */
+    void forEach(Consumer<? super Order> action) {
+        for (Shard shard : shards) {
+            shard.forEach(action);
+        }
+    }
+
+    /**
+     * Removes every order, passing each one with its value to the given action once its shard has been
+     * emptied and unlocked.
+     */
+    void clear(ObjLongConsumer<? super Order> action) {
+        for (Shard shard : shards) {
+            long[][] values = new long[1][];
+            Order[] removed = shard.clear(values);
+            size.addAndGet(-removed.length);
+            for (int i = 0; i < removed.length; i++) {
+                action.accept(removed[i], values[0][i]);
+            }
+        }
+    }
+
+    /**
+     * Folds every order into a container, one container per shard, and merges the containers. Large
+     * tables are folded in parallel in the common fork-join pool. Like {@link #forEach(Consumer)}, the
+     * accumulator runs outside the shard locks.
+     */
+    <A> A collect(Supplier<A> supplier, BiConsumer<A, ? super Order> accumulator, BinaryOperator<A> combiner) {
+        CollectTask<A> task = new CollectTask<>(0, SHARDS, supplier, accumulator, combiner);
+        return size() < PARALLEL_THRESHOLD ? task.compute() : task.invoke();
+    }
+
+    /**
+     * Returns a lazy stream of the orders. Each shard is copied, under its lock, only when the stream
+     * reaches it. Parallel streams of large tables visit the shards in the common fork-join pool.
+     */
+    Stream<Order> stream(boolean parallel) {
+        Stream<Shard> stream = Arrays.stream(shards);
+        if (parallel && isParallel()) {
+            stream = stream.parallel();
+        }
+        return stream.flatMap(shard -> Arrays.stream(shard.toArray()));
+    }
+
+    /**
+     * Checks if {@link #stream(boolean)} would visit the shards in parallel if asked to.
+     */
+    boolean isParallel() {
+        return size() >= PARALLEL_THRESHOLD;
+    }
+
+    List<Order> toList() {
+        List<Order> orders = new ArrayList<>(size());
+        forEach(orders::add);
+        return orders;
+    }
+
+    private Shard shardOf(long hash) {
+        return shards[shardIndex(hash)];
+    }
+
+    private static int shardIndex(long hash) {
+        return (int) (hash >>> (Long.SIZE - SHARD_BITS));
+    }
+
+    private static long hash(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    private final class CollectTask<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final Supplier<A> supplier;
+        private final BiConsumer<A, ? super Order> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        CollectTask(int from, int to, Supplier<A> supplier, BiConsumer<A, ? super Order> accumulator,
+                    BinaryOperator<A> combiner) {
+            this.from = from;
+            this.to = to;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from == 1) {
+                A container = supplier.get();
+                shards[from].forEach(order -> accumulator.accept(container, order));
+                return container;
+            }
+            int middle = (from + to) >>> 1;
+            CollectTask<A> left = new CollectTask<>(from, middle, supplier, accumulator, combiner);
+            CollectTask<A> right = new CollectTask<>(middle, to, supplier, accumulator, combiner);
+            if (inForkJoinPool()) {
+                left.fork();
+                A rightResult = right.compute();
+                return combiner.apply(left.join(), rightResult);
+            }
+            return combiner.apply(left.compute(), right.compute());
+        }
+    }
+
+    private static final class Shard {
+        private long[] ids = new long[INITIAL_SHARD_CAPACITY];
+        private Order[] orders = new Order[INITIAL_SHARD_CAPACITY];
+        private long[] values = new long[INITIAL_SHARD_CAPACITY];
+        private int count;
+
+        /**
+         * Adds at most room of the orders at the given positions of a batch.
+         *
+         * @return the number of orders added
+         */
+        synchronized int addAll(List<? extends Order> batch, long[] hashes, int[] positions, int from, int to,
+                                int room, boolean[] added) {
+            int count = 0;
+            for (int i = from; i < to && count < room; i++) {
+                int position = positions[i];
+                if (add(batch.get(position), hashes[position])) {
+                    added[position] = true;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        synchronized boolean add(Order order, long hash) {
+            long id = order.getNumericId();
+            int mask = orders.length - 1;
+            int slot = (int) hash & mask;
+            while (orders[slot] != null) {
+                if (ids[slot] == id) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+            orders[slot] = order;
+            values[slot] = 0;
+            if (++count > orders.length - (orders.length >>> 2)) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized Order remove(long id, long hash, long[] value) {
+            int mask = orders.length - 1;
+            int slot = (int) hash & mask;
+            while (orders[slot] != null) {
+                if (ids[slot] == id) {
+                    Order removed = orders[slot];
+                    value[0] = values[slot];
+                    shiftBack(slot);
+                    count--;
+                    return removed;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        synchronized Order get(long id, long hash) {
+            int mask = orders.length - 1;
+            int slot = (int) hash & mask;
+            while (orders[slot] != null) {
+                if (ids[slot] == id) {
+                    return orders[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        synchronized long updateValue(Order order, long hash, long amount, boolean add) {
+            long id = order.getNumericId();
+            int mask = orders.length - 1;
+            int slot = (int) hash & mask;
+            while (orders[slot] != null) {
+                if (ids[slot] == id) {
+                    if (orders[slot] != order) {
+                        return ABSENT;
+                    }
+                    long previous = values[slot];
+                    values[slot] = add ? previous + amount : amount;
+                    return previous;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return ABSENT;
+        }
+
+        void forEach(Consumer<? super Order> action) {
+            for (Order order : toArray()) {
+                action.accept(order);
+            }
+        }
+
+        synchronized Order[] toArray() {
+            Order[] copy = new Order[count];
+            int i = 0;
+            for (Order order : orders) {
+                if (order != null) {
+                    copy[i++] = order;
+                }
+            }
+            return copy;
+        }
+
+        /**
+         * Empties the shard, returning its orders and storing their values, in the same order, in the
+         * first element of the given array.
+         */
+        synchronized Order[] clear(long[][] removedValues) {
+            Order[] removed = new Order[count];
+            long[] kept = new long[count];
+            int i = 0;
+            for (int slot = 0; slot < orders.length; slot++) {
+                if (orders[slot] != null) {
+                    removed[i] = orders[slot];
+                    kept[i++] = values[slot];
+                }
+            }
+            ids = new long[INITIAL_SHARD_CAPACITY];
+            orders = new Order[INITIAL_SHARD_CAPACITY];
+            values = new long[INITIAL_SHARD_CAPACITY];
+            count = 0;
+            removedValues[0] = kept;
+            return removed;
+        }
+
+        /**
+         * Fills the slot freed by a removal with the following entries of its probe run, so lookups
+         * never need tombstones.
+         */
+        private void shiftBack(int freed) {
+            int mask = orders.length - 1;
+            int slot = freed;
+            while (true) {
+                slot = (slot + 1) & mask;
+                if (orders[slot] == null) {
+                    break;
+                }
+                int home = (int) hash(ids[slot]) & mask;
+                if (((slot - home) & mask) >= ((slot - freed) & mask)) {
+                    ids[freed] = ids[slot];
+                    orders[freed] = orders[slot];
+                    values[freed] = values[slot];
+                    freed = slot;
+                }
+            }
+            orders[freed] = null;
+            ids[freed] = 0;
+            values[freed] = 0;
+        }
+
+        private void resize() {
+            long[] oldIds = ids;
+            Order[] oldOrders = orders;
+            long[] oldValues = values;
+            ids = new long[oldIds.length * 2];
+            orders = new Order[oldOrders.length * 2];
+            values = new long[oldValues.length * 2];
+            int mask = orders.length - 1;
+            for (int i = 0; i < oldOrders.length; i++) {
+                if (oldOrders[i] != null) {
+                    int slot = (int) hash(oldIds[i]) & mask;
+                    while (orders[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    ids[slot] = oldIds[i];
+                    orders[slot] = oldOrders[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,11 @@ public class PrintedBook extends Product implements Manufacturable {
         this.printingCost = printingCost;
     }
 
+    @Override
+    public ProductCategory getCategory() {
+        return ProductCategory.PRINTED_BOOK;
+    }
+
     @Override
     public String describeProduct() {
         return String.format("PrintedBook (MANUFACTURED): %s", DESCRIPTION);
@@ -1,12 +1,30 @@
 package edu.uoc.pac4;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 import edu.uoc.pac4.exception.ProductException;
 
 public abstract class Product {
+    /**
+     * Number of the latest price changes remembered in {@link #PRICE_CHANGES}.
+     */
+    static final int PRICE_LOG_SIZE = 1024;
+    /**
+     * Global price revision, bumped on every price change. The lines of an order keep their totals at
+     * the revision they last read and, once it moves, reprice only the products changed since.
+     */
+    private static final AtomicLong PRICE_REVISION = new AtomicLong();
+    /**
+     * The product whose price changed at each of the latest revisions, indexed by revision modulo the
+     * size of the log.
+     */
+    private static final AtomicReferenceArray<Product> PRICE_CHANGES = new AtomicReferenceArray<>(PRICE_LOG_SIZE);
+
     private String name;
-    private double price;
+    private long priceCents;
     private int soldUnits;
 
     public Product(String name, double price) throws ProductException {
@@ -27,14 +45,51 @@ public abstract class Product {
     }
 
     public double getPrice() {
-        return price;
+        return (double) priceCents / Money.CENTS_PER_UNIT;
     }
 
     public void setPrice(double price) throws ProductException {
-        if (price <= 0) {
+        setUnitPrice(Money.of(price));
+    }
+
+    public Money getUnitPrice() {
+        return Money.ofCents(priceCents);
+    }
+
+    public void setUnitPrice(Money price) throws ProductException {
+        if (price == null || price.getCents() <= 0) {
             throw new ProductException(ProductException.ERR_INVALID_PRICE);
         }
-        this.price = price;
+        synchronized (PRICE_CHANGES) {
+            this.priceCents = price.getCents();
+            long revision = PRICE_REVISION.get() + 1;
+            PRICE_CHANGES.set((int) (revision % PRICE_LOG_SIZE), this);
+            PRICE_REVISION.set(revision);
+        }
+    }
+
+    long getPriceCents() {
+        return priceCents;
+    }
+
+    static long getPriceRevision() {
+        return PRICE_REVISION.get();
+    }
+
+    /**
+     * Passes to an action the products whose price changed after a revision and up to another one.
+     * Returns false if some of them may have been dropped from the log, as more than
+     * {@link #PRICE_LOG_SIZE} prices changed since the first revision.
+     */
+    static boolean forEachPriceChange(long after, long upTo, Consumer<? super Product> action) {
+        if (upTo - after >= PRICE_LOG_SIZE) {
+            return false;
+        }
+        for (long revision = after + 1; revision <= upTo; revision++) {
+            action.accept(PRICE_CHANGES.get((int) (revision % PRICE_LOG_SIZE)));
+        }
+        // A change being logged may already have overwritten the oldest entry read.
+        return PRICE_REVISION.get() - after < PRICE_LOG_SIZE;
     }
 
     public int getSoldUnits() {
@@ -57,5 +112,12 @@ public abstract class Product {
         return Objects.equals(name, other.name);
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name);
+    }
+
     public abstract String describeProduct();
+
+    public abstract ProductCategory getCategory();
 }
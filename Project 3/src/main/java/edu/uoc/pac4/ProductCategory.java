@@ -0,0 +1,19 @@
+package edu.uoc.pac4;
+
+/**
+ * Represents the kind of product, which determines its tax rate.
+ */
+public enum ProductCategory {
+    /**
+     * A book printed by an editorial.
+     */
+    PRINTED_BOOK,
+    /**
+     * A book delivered in e-book format.
+     */
+    DIGITAL_BOOK,
+    /**
+     * A merchandising item.
+     */
+    MERCHANDISING
+}
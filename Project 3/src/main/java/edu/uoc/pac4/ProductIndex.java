@@ -0,0 +1,90 @@
+package edu.uoc.pac4;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Running number of lines and units of each product over a set of orders, fed by the line changes of
+ * those orders.
+ *
+ * Income is not accumulated: it is derived from the units and the current product price when read,
+ * so price changes need no maintenance. Products are keyed by equality, like order lines, but each
+ * product instance keeps its own counters because equal instances may have different prices.
+ */
+final class ProductIndex {
+    private final ConcurrentHashMap<Product, Entry> entries = new ConcurrentHashMap<>();
+
+    void linesChanged(Product product, long units, int lines) {
+        Entry entry = entries.computeIfAbsent(product, Entry::new).forInstance(product);
+        entry.units.add(units);
+        if (lines != 0) {
+            entry.lines.add(lines);
+        }
+    }
+
+    long units(Product product) {
+        long units = 0;
+        for (Entry entry = entries.get(product); entry != null; entry = entry.next) {
+            units += entry.units.sum();
+        }
+        return units;
+    }
+
+    long incomeCents(Product product) {
+        return incomeCents(entries.get(product));
+    }
+
+    /**
+     * Passes every product present in some line, with its income in cents, to the given action.
+     */
+    void forEachIncome(BiConsumer<Product, Long> action) {
+        entries.forEach((product, entry) -> {
+            long lines = 0;
+            for (Entry instance = entry; instance != null; instance = instance.next) {
+                lines += instance.lines.sum();
+            }
+            if (lines > 0) {
+                action.accept(product, incomeCents(entry));
+            }
+        });
+    }
+
+    private static long incomeCents(Entry entry) {
+        long incomeCents = 0;
+        for (; entry != null; entry = entry.next) {
+            incomeCents += entry.product.getPriceCents() * entry.units.sum();
+        }
+        return incomeCents;
+    }
+
+    private static final class Entry {
+        private final Product product;
+        private final LongAdder units = new LongAdder();
+        private final LongAdder lines = new LongAdder();
+        private volatile Entry next;
+
+        Entry(Product product) {
+            this.product = product;
+        }
+
+        Entry forInstance(Product instance) {
+            for (Entry entry = this; entry != null; entry = entry.next) {
+                if (entry.product == instance) {
+                    return entry;
+                }
+            }
+            synchronized (this) {
+                Entry last = this;
+                while (last.product != instance && last.next != null) {
+                    last = last.next;
+                }
+                if (last.product != instance) {
+                    last.next = new Entry(instance);
+                    last = last.next;
+                }
+                return last;
+            }
+        }
+    }
+}
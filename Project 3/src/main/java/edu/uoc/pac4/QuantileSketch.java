@@ -0,0 +1,98 @@
+package edu.uoc.pac4;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Quantile sketch of positive amounts with a relative accuracy of 1%, in the manner of DDSketch.
+ *
+ * Amounts are counted in logarithmic buckets whose bounds grow by a factor of 1.02, so any quantile
+ * is returned within 1% of an amount actually at that rank. The 2048 buckets cover amounts up to
+ * about 10<sup>17</sup>, larger ones being counted in the last bucket, and amounts below 1 are kept
+ * apart. Amounts can be taken out again, and sketches are merged by adding their buckets.
+ */
+final class QuantileSketch {
+    static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int BUCKETS = 2048;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS + 1);
+
+    void add(long amount) {
+        buckets.incrementAndGet(bucket(amount));
+    }
+
+    /**
+     * Takes out an amount that was added.
+     */
+    void remove(long amount) {
+        buckets.decrementAndGet(bucket(amount));
+    }
+
+    /**
+     * Replaces an amount that was added by another, leaving the buckets untouched when both share one.
+     */
+    void move(long previous, long amount) {
+        int from = bucket(previous);
+        int to = bucket(amount);
+        if (from != to) {
+            buckets.incrementAndGet(to);
+            buckets.decrementAndGet(from);
+        }
+    }
+
+    long count() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the amount at a quantile between 0 and 1, or 0 if no amount was added.
+     */
+    long quantile(double quantile) {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) (quantile * (count - 1));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return i == 0 ? 0 : Math.round(2 * Math.pow(GAMMA, i) / (GAMMA + 1));
+            }
+        }
+        return Math.round(2 * Math.pow(GAMMA, BUCKETS) / (GAMMA + 1));
+    }
+
+    void mergeInto(QuantileSketch target) {
+        for (int i = 0; i < buckets.length(); i++) {
+            target.buckets.addAndGet(i, buckets.get(i));
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns the bucket of an amount: 0 for amounts below 1, otherwise the i such that the amount is
+     * in (gamma<sup>i-1</sup>, gamma<sup>i</sup>].
+     */
+    private static int bucket(long amount) {
+        if (amount < 1) {
+            return 0;
+        }
+        return (int) Math.min(BUCKETS, Math.max(1, (long) Math.ceil(Math.log(amount) / LOG_GAMMA)));
+    }
+}
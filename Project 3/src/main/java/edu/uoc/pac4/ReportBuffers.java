@@ -0,0 +1,38 @@
+package edu.uoc.pac4;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Small bounded pools of the buffers used to stream reports, so exporting a report allocates no
+ * buffer once the pools are warm. Buffers released when a pool is full are left to the collector.
+ */
+final class ReportBuffers {
+    private static final int CHARS = 8 * 1024;
+    private static final int BYTES = 64 * 1024;
+    private static final int POOL_SIZE = 8;
+    private static final ArrayBlockingQueue<char[]> CHAR_BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final ArrayBlockingQueue<ByteBuffer> BYTE_BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private ReportBuffers() {
+    }
+
+    static char[] acquireChars() {
+        char[] buffer = CHAR_BUFFERS.poll();
+        return buffer != null ? buffer : new char[CHARS];
+    }
+
+    static void release(char[] buffer) {
+        CHAR_BUFFERS.offer(buffer);
+    }
+
+    static ByteBuffer acquireBytes() {
+        ByteBuffer buffer = BYTE_BUFFERS.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BYTES);
+    }
+
+    static void release(ByteBuffer buffer) {
+        buffer.clear();
+        BYTE_BUFFERS.offer(buffer);
+    }
+}
@@ -0,0 +1,224 @@
+package edu.uoc.pac4;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running orders and units of a set of orders, bucketed by order date into days, ISO weeks and
+ * months, fed by the date and line changes of those orders.
+ *
+ * Like in {@link ProductIndex}, revenue is not accumulated: each bucket counts the units of every
+ * product instance at every tax rate, and revenue and tax are derived from them and the current
+ * prices when read. A date range is covered by whole months, then whole weeks, then single days, so
+ * reading it visits a few dozen buckets per year at most and never an order.
+ */
+final class RevenueIndex {
+    private final ConcurrentSkipListMap<Long, Bucket> days = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Bucket> weeks = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Bucket> months = new ConcurrentSkipListMap<>();
+
+    /**
+     * Moves the order and its lines between the buckets of two dates. Called while the order is held
+     * still, so its lines are those counted in the previous buckets and to count in the new ones.
+     */
+    void orderDateChanged(Order order, LocalDate previous, LocalDate current) {
+        if (previous != null) {
+            addOrder(order, previous, -1);
+        }
+        if (current != null) {
+            addOrder(order, current, 1);
+        }
+    }
+
+    /**
+     * Counts a change in the units of a line of an order placed on a date.
+     */
+    void linesChanged(Order order, LocalDate orderDate, Product product, long units) {
+        int rate = order.getTaxEngine().rate(product.getCategory().ordinal(), order.getDestination());
+        for (Bucket bucket : buckets(orderDate)) {
+            bucket.add(product, rate, units);
+        }
+    }
+
+    /**
+     * Totals the buckets between two epoch days, both included.
+     */
+    RevenueRollup between(long fromDay, long toDay) {
+        Totals totals = new Totals();
+        if (!days.isEmpty()) {
+            long day = Math.max(fromDay, days.firstKey());
+            long lastDay = Math.min(toDay, days.lastKey());
+            while (day <= lastDay) {
+                LocalDate date = LocalDate.ofEpochDay(day);
+                long nextMonth = date.getDayOfMonth() == 1 ? date.plusMonths(1).toEpochDay() : Long.MAX_VALUE;
+                if (nextMonth - 1 <= lastDay) {
+                    totals.add(months.get(day));
+                    day = nextMonth;
+                } else if (date.getDayOfWeek() == DayOfWeek.MONDAY && day + 6 <= lastDay) {
+                    totals.add(weeks.get(day));
+                    day += 7;
+                } else {
+                    totals.add(days.get(day));
+                    day++;
+                }
+            }
+        }
+        return totals.toRollup(LocalDate.ofEpochDay(fromDay), LocalDate.ofEpochDay(toDay));
+    }
+
+    /**
+     * Totals every period between two epoch days that holds some order, clipped to those days.
+     */
+    List<RevenueRollup> by(RollupPeriod period, long fromDay, long toDay) {
+        List<RevenueRollup> rollups = new ArrayList<>();
+        if (days.isEmpty()) {
+            return rollups;
+        }
+        long firstDay = Math.max(fromDay, days.firstKey());
+        long lastDay = Math.min(toDay, days.lastKey());
+        LocalDate start = period.start(LocalDate.ofEpochDay(firstDay));
+        while (start.toEpochDay() <= lastDay) {
+            LocalDate next = period.next(start);
+            RevenueRollup rollup = between(Math.max(start.toEpochDay(), fromDay),
+                    Math.min(next.toEpochDay() - 1, toDay));
+            if (rollup.getOrderCount() > 0) {
+                rollups.add(rollup);
+            }
+            start = next;
+        }
+        return rollups;
+    }
+
+    private void addOrder(Order order, LocalDate orderDate, int sign) {
+        Bucket[] buckets = buckets(orderDate);
+        for (Bucket bucket : buckets) {
+            bucket.orders.add(sign);
+        }
+        TaxEngine taxEngine = order.getTaxEngine();
+        Destination destination = order.getDestination();
+        order.forEachLineHeld((product, quantity) -> {
+            int rate = taxEngine.rate(product.getCategory().ordinal(), destination);
+            for (Bucket bucket : buckets) {
+                bucket.add(product, rate, (long) sign * quantity);
+            }
+        });
+    }
+
+    private Bucket[] buckets(LocalDate orderDate) {
+        return new Bucket[]{
+                bucket(days, orderDate),
+                bucket(weeks, RollupPeriod.WEEK.start(orderDate)),
+                bucket(months, RollupPeriod.MONTH.start(orderDate))
+        };
+    }
+
+    private static Bucket bucket(ConcurrentSkipListMap<Long, Bucket> buckets, LocalDate start) {
+        long key = start.toEpochDay();
+        Bucket bucket = buckets.get(key);
+        return bucket != null ? bucket : buckets.computeIfAbsent(key, ignored -> new Bucket());
+    }
+
+    /**
+     * Orders of a period and units of each product instance at each tax rate.
+     */
+    private static final class Bucket {
+        private final LongAdder orders = new LongAdder();
+        private final ConcurrentHashMap<Product, Line> lines = new ConcurrentHashMap<>();
+
+        void add(Product product, int rate, long units) {
+            lines.computeIfAbsent(product, ignored -> new Line(product, rate)).forInstance(product, rate)
+                    .units.add(units);
+        }
+    }
+
+    /**
+     * Units of a product instance at a tax rate, chained to those of the equal instances and other rates.
+     */
+    private static final class Line {
+        private final Product product;
+        private final int rate;
+        private final LongAdder units = new LongAdder();
+        private volatile Line next;
+
+        Line(Product product, int rate) {
+            this.product = product;
+            this.rate = rate;
+        }
+
+        Line forInstance(Product instance, int instanceRate) {
+            for (Line line = this; line != null; line = line.next) {
+                if (line.product == instance && line.rate == instanceRate) {
+                    return line;
+                }
+            }
+            synchronized (this) {
+                Line last = this;
+                while (!(last.product == instance && last.rate == instanceRate) && last.next != null) {
+                    last = last.next;
+                }
+                if (!(last.product == instance && last.rate == instanceRate)) {
+                    last.next = new Line(instance, instanceRate);
+                    last = last.next;
+                }
+                return last;
+            }
+        }
+    }
+
+    /**
+     * Sums of several buckets, with the revenue at each rate kept apart until the tax is taken.
+     */
+    private static final class Totals {
+        private long orders;
+        private long units;
+        private long revenueCents;
+        private int[] rates = new int[4];
+        private long[] grossCents = new long[4];
+        private int size;
+
+        void add(Bucket bucket) {
+            if (bucket == null) {
+                return;
+            }
+            orders += bucket.orders.sum();
+            for (Line entry : bucket.lines.values()) {
+                for (Line line = entry; line != null; line = line.next) {
+                    long lineUnits = line.units.sum();
+                    long lineCents = line.product.getPriceCents() * lineUnits;
+                    units += lineUnits;
+                    revenueCents += lineCents;
+                    addGross(line.rate, lineCents);
+                }
+            }
+        }
+
+        private void addGross(int rate, long cents) {
+            int i = 0;
+            while (i < size && rates[i] != rate) {
+                i++;
+            }
+            if (i == size) {
+                if (size == rates.length) {
+                    rates = Arrays.copyOf(rates, size * 2);
+                    grossCents = Arrays.copyOf(grossCents, size * 2);
+                }
+                rates[size++] = rate;
+            }
+            grossCents[i] += cents;
+        }
+
+        RevenueRollup toRollup(LocalDate from, LocalDate to) {
+            long taxCents = 0;
+            for (int i = 0; i < size; i++) {
+                taxCents += Money.includedTax(grossCents[i], rates[i]);
+            }
+            return new RevenueRollup(from, to, orders, units, revenueCents, taxCents);
+        }
+    }
+}
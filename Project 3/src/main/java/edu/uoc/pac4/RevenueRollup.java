@@ -0,0 +1,74 @@
+package edu.uoc.pac4;
+
+import java.time.LocalDate;
+
+/**
+ * Revenue, tax, orders and units of the orders placed in a period, read from the rollups an
+ * {@link OrderBatch} keeps up to date.
+ *
+ * Revenue follows the current product prices, like the income audits of the batch. Tax is taken from
+ * the revenue at each rate in the period, rounded once per rate, so it may differ by rounding from
+ * the sum of the taxes of the individual orders.
+ */
+public final class RevenueRollup {
+    private final LocalDate from;
+    private final LocalDate to;
+    private final long orders;
+    private final long units;
+    private final long revenueCents;
+    private final long taxCents;
+
+    RevenueRollup(LocalDate from, LocalDate to, long orders, long units, long revenueCents, long taxCents) {
+        this.from = from;
+        this.to = to;
+        this.orders = orders;
+        this.units = units;
+        this.revenueCents = revenueCents;
+        this.taxCents = taxCents;
+    }
+
+    /**
+     * Returns the first order date of the period.
+     *
+     * @return the first day of the period
+     */
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the last order date of the period, included in it.
+     *
+     * @return the last day of the period
+     */
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public long getOrderCount() {
+        return orders;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    /**
+     * Returns the revenue of the period, tax included.
+     *
+     * @return the revenue of the period
+     */
+    public Money getRevenue() {
+        return Money.ofCents(revenueCents);
+    }
+
+    public Money getTax() {
+        return Money.ofCents(taxCents);
+    }
+
+    @Override
+    public String toString() {
+        return from + " - " + to + " | Orders: " + orders + " | Units: " + units + " | Revenue: "
+                + getRevenue() + " | Tax: " + getTax();
+    }
+}
@@ -0,0 +1,56 @@
+package edu.uoc.pac4;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * Represents the length of the periods revenue is rolled up by.
+ */
+public enum RollupPeriod {
+    /**
+     * A calendar day.
+     */
+    DAY,
+    /**
+     * An ISO week, from Monday to Sunday.
+     */
+    WEEK,
+    /**
+     * A calendar month.
+     */
+    MONTH;
+
+    /**
+     * Returns the first day of the period holding a date.
+     *
+     * @param date the date
+     * @return the first day of its period
+     */
+    public LocalDate start(LocalDate date) {
+        switch (this) {
+            case WEEK:
+                return date.minusDays(date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+            case MONTH:
+                return date.withDayOfMonth(1);
+            default:
+                return date;
+        }
+    }
+
+    /**
+     * Returns the first day of the period following the one that starts on a date.
+     *
+     * @param start the first day of a period
+     * @return the first day of the next period
+     */
+    public LocalDate next(LocalDate start) {
+        switch (this) {
+            case WEEK:
+                return start.plusWeeks(1);
+            case MONTH:
+                return start.plusMonths(1);
+            default:
+                return start.plusDays(1);
+        }
+    }
+}
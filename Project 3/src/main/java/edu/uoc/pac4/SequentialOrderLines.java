@@ -0,0 +1,130 @@
+package edu.uoc.pac4;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Order lines for orders used by a single thread at a time: an insertion-ordered hash map and plain
+ * running totals.
+ */
+final class SequentialOrderLines extends OrderLines {
+    private final Map<Product, OrderItem> items = new LinkedHashMap<>();
+    private final Collection<OrderItem> view = Collections.unmodifiableCollection(items.values());
+    private final long[] categoryTotals = new long[TaxEngine.categoryCount()];
+    private long totalCents;
+    private long taxCents;
+
+    SequentialOrderLines(Order order) {
+        super(order);
+    }
+
+    @Override
+    OrderItem add(Product product, int quantity) {
+        OrderItem orderItem = items.get(product);
+        if (orderItem != null) {
+            setQuantity(orderItem, orderItem.getQuantity() + quantity);
+        } else {
+            orderItem = new OrderItem(order, product, quantity, 0);
+            items.put(product, orderItem);
+            adjustTotals(product, orderItem.getPricedCents() * quantity);
+            order.linesChanged(product, quantity, 1);
+        }
+        return orderItem;
+    }
+
+    @Override
+    int remove(Product product, int quantity) {
+        OrderItem orderItem = items.get(product);
+        if (orderItem == null) {
+            return -1;
+        }
+        int previousQuantity = orderItem.getQuantity();
+        int newQuantity = previousQuantity - quantity;
+        if (newQuantity <= 0) {
+            items.remove(product);
+            adjustTotals(orderItem.getProduct(), -orderItem.getPricedCents() * previousQuantity);
+            order.linesChanged(orderItem.getProduct(), -previousQuantity, -1);
+            return previousQuantity;
+        }
+        setQuantity(orderItem, newQuantity);
+        return quantity;
+    }
+
+    @Override
+    void setQuantity(OrderItem orderItem, int quantity) {
+        if (items.get(orderItem.getProduct()) != orderItem) {
+            orderItem.assignQuantity(quantity);
+            return;
+        }
+        int previousQuantity = orderItem.getQuantity();
+        orderItem.assignQuantity(quantity);
+        adjustTotals(orderItem.getProduct(), orderItem.getPricedCents() * (quantity - previousQuantity));
+        order.linesChanged(orderItem.getProduct(), quantity - previousQuantity, 0);
+    }
+
+    @Override
+    OrderItem get(Product product) {
+        return items.get(product);
+    }
+
+    @Override
+    int size() {
+        return items.size();
+    }
+
+    @Override
+    long getTotalCents() {
+        refreshPrices();
+        return totalCents;
+    }
+
+    @Override
+    long getTaxCents() {
+        refreshPrices();
+        return taxCents;
+    }
+
+    @Override
+    boolean isConcurrent() {
+        return false;
+    }
+
+    @Override
+    long lockSnapshot() {
+        return 0;
+    }
+
+    @Override
+    void unlockSnapshot(long stamp) {
+    }
+
+    @Override
+    Collection<OrderItem> snapshotItems() {
+        return view;
+    }
+
+    @Override
+    long snapshotTotalCents() {
+        return getTotalCents();
+    }
+
+    @Override
+    long[] snapshotCategoryTotals() {
+        refreshPrices();
+        return categoryTotals;
+    }
+
+    @Override
+    long snapshotTaxCents() {
+        return getTaxCents();
+    }
+
+    @Override
+    void adjustTotals(Product product, long delta) {
+        categoryTotals[product.getCategory().ordinal()] += delta;
+        totalCents += delta;
+        taxCents = order.getTaxEngine().includedTax(categoryTotals, order.getDestination());
+    }
+}
@@ -0,0 +1,93 @@
+package edu.uoc.pac4;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Local carrier for tests and benchmarks: it waits for a fixed latency, as a remote call would, and
+ * then delivers the order, or rejects it if the order matches a given predicate. It counts the calls
+ * it receives and the most calls it ever had running at once.
+ */
+public final class StubCarrier implements Carrier {
+    private static final String MSG_ERR_NULL_LATENCY = "[ERROR] The latency cannot be null";
+    private static final String MSG_ERR_NULL_PREDICATE = "[ERROR] The predicate cannot be null";
+    private static final String MSG_ERR_NEGATIVE_LATENCY = "[ERROR] The latency cannot be negative";
+    private static final String MSG_ERR_REJECTED = "[ERROR] The carrier rejected the order ";
+
+    private final long latencyNanos;
+    private final LocalDate deliveryDate;
+    private final Predicate<? super Order> rejected;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * Constructs a carrier that delivers every order today after a latency.
+     *
+     * @param latency the time every call takes
+     * @throws NullPointerException     if the latency is null
+     * @throws IllegalArgumentException if the latency is negative
+     */
+    public StubCarrier(Duration latency) {
+        this(latency, null, order -> false);
+    }
+
+    /**
+     * Constructs a carrier that delivers orders on a date after a latency and rejects some of them.
+     *
+     * @param latency      the time every call takes
+     * @param deliveryDate the delivery date of the orders, or null for the date of the call
+     * @param rejected     the orders to reject
+     * @throws NullPointerException     if the latency or the predicate is null
+     * @throws IllegalArgumentException if the latency is negative
+     */
+    public StubCarrier(Duration latency, LocalDate deliveryDate, Predicate<? super Order> rejected) {
+        if (latency == null) {
+            throw new NullPointerException(MSG_ERR_NULL_LATENCY);
+        }
+        if (rejected == null) {
+            throw new NullPointerException(MSG_ERR_NULL_PREDICATE);
+        }
+        if (latency.isNegative()) {
+            throw new IllegalArgumentException(MSG_ERR_NEGATIVE_LATENCY);
+        }
+        this.latencyNanos = latency.toNanos();
+        this.deliveryDate = deliveryDate;
+        this.rejected = rejected;
+    }
+
+    @Override
+    public LocalDate deliver(Order order) throws IOException, InterruptedException {
+        calls.incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            if (latencyNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            }
+            if (rejected.test(order)) {
+                throw new IOException(MSG_ERR_REJECTED + order.getId());
+            }
+            return deliveryDate != null ? deliveryDate : LocalDate.now();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Returns the most calls that were running at the same time.
+     *
+     * @return the peak number of concurrent calls
+     */
+    public int getMaxConcurrentCalls() {
+        return maxRunning.get();
+    }
+}
@@ -0,0 +1,152 @@
+package edu.uoc.pac4;
+
+import java.util.Arrays;
+
+/**
+ * Resolves tax rates from the product category and the order destination.
+ *
+ * Rates are kept in basis points (2100 for 21%) in a flat table indexed by category and destination,
+ * so resolving the rate of a line is a single array read. Engines are immutable; {@link #withRate}
+ * returns a modified copy.
+ */
+public final class TaxEngine {
+    private static final int CATEGORIES = ProductCategory.values().length;
+    private static final int DESTINATIONS = Destination.values().length;
+    private static volatile TaxEngine defaultEngine = uniform(Billable.TAX_BASIS_POINTS);
+
+    private final int[] rates;
+
+    private TaxEngine(int[] rates) {
+        this.rates = rates;
+    }
+
+    /**
+     * Returns an engine applying the same rate to every product and destination.
+     *
+     * @param rateBasisPoints the tax rate in basis points
+     * @return the tax engine
+     */
+    public static TaxEngine uniform(int rateBasisPoints) {
+        checkRate(rateBasisPoints);
+        int[] rates = new int[CATEGORIES * DESTINATIONS];
+        Arrays.fill(rates, rateBasisPoints);
+        return new TaxEngine(rates);
+    }
+
+    /**
+     * Returns the engine used by orders created from now on. Until changed, it applies
+     * {@link Billable#TAX} everywhere.
+     *
+     * @return the default tax engine
+     */
+    public static TaxEngine getDefault() {
+        return defaultEngine;
+    }
+
+    /**
+     * Sets the engine used by orders created from now on. Existing orders keep their engine.
+     *
+     * @param engine the new default tax engine
+     */
+    public static void setDefault(TaxEngine engine) {
+        if (engine == null) {
+            throw new NullPointerException("The tax engine cannot be null");
+        }
+        defaultEngine = engine;
+    }
+
+    /**
+     * Returns a copy of this engine with a different rate for a category and destination.
+     *
+     * @param category        the product category
+     * @param destination     the order destination
+     * @param rateBasisPoints the tax rate in basis points
+     * @return the modified tax engine
+     */
+    public TaxEngine withRate(ProductCategory category, Destination destination, int rateBasisPoints) {
+        checkRate(rateBasisPoints);
+        int[] copy = rates.clone();
+        copy[index(category.ordinal(), destination.ordinal())] = rateBasisPoints;
+        return new TaxEngine(copy);
+    }
+
+    /**
+     * Returns the tax rate of a category and destination.
+     *
+     * @param category    the product category
+     * @param destination the order destination
+     * @return the tax rate in basis points
+     */
+    public int getRate(ProductCategory category, Destination destination) {
+        return rate(category.ordinal(), destination);
+    }
+
+    int rate(int category, Destination destination) {
+        return rates[index(category, destination.ordinal())];
+    }
+
+    /**
+     * Returns the tax included in an order given its gross total per category. Categories sharing a
+     * rate are added up before rounding, so an order with a single rate is taxed on its whole total.
+     */
+    long includedTax(long[] totalsByCategory, Destination destination) {
+        long tax = 0;
+        for (int category = 0; category < totalsByCategory.length; category++) {
+            if (isFirstOfRate(category, totalsByCategory, destination)) {
+                int rate = rate(category, destination);
+                tax += Money.includedTax(grossAtRate(rate, category, totalsByCategory, destination), rate);
+            }
+        }
+        return tax;
+    }
+
+    /**
+     * Adds the gross totals and taxes of an order, grouped by rate, to a summary.
+     */
+    void addTo(TaxSummary summary, long[] totalsByCategory, Destination destination) {
+        for (int category = 0; category < totalsByCategory.length; category++) {
+            if (isFirstOfRate(category, totalsByCategory, destination)) {
+                int rate = rate(category, destination);
+                long gross = grossAtRate(rate, category, totalsByCategory, destination);
+                summary.add(rate, gross, Money.includedTax(gross, rate));
+            }
+        }
+    }
+
+    static int categoryCount() {
+        return CATEGORIES;
+    }
+
+    private boolean isFirstOfRate(int category, long[] totalsByCategory, Destination destination) {
+        if (totalsByCategory[category] == 0) {
+            return false;
+        }
+        int rate = rate(category, destination);
+        for (int previous = 0; previous < category; previous++) {
+            if (totalsByCategory[previous] != 0 && rate(previous, destination) == rate) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long grossAtRate(int rate, int fromCategory, long[] totalsByCategory, Destination destination) {
+        long gross = 0;
+        for (int category = fromCategory; category < totalsByCategory.length; category++) {
+            if (rate(category, destination) == rate) {
+                gross += totalsByCategory[category];
+            }
+        }
+        return gross;
+    }
+
+    private static int index(int category, int destination) {
+        return category * DESTINATIONS + destination;
+    }
+
+    private static void checkRate(int rateBasisPoints) {
+        if (rateBasisPoints < 0) {
+            throw new IllegalArgumentException("The tax rate cannot be negative");
+        }
+    }
+}
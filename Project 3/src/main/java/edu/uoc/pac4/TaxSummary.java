@@ -0,0 +1,102 @@
+package edu.uoc.pac4;
+
+import java.util.Arrays;
+
+/**
+ * Totals of taxable amounts and taxes grouped by tax rate.
+ *
+ * Summaries hold one entry per distinct rate, of which there are only a handful, so they are kept in
+ * small parallel arrays searched linearly instead of a map with boxed keys.
+ */
+public final class TaxSummary {
+    private int[] rates = new int[4];
+    private long[] grossCents = new long[4];
+    private long[] taxCents = new long[4];
+    private int size;
+
+    TaxSummary() {
+    }
+
+    void add(int rate, long gross, long tax) {
+        int i = 0;
+        while (i < size && rates[i] != rate) {
+            i++;
+        }
+        if (i == size) {
+            if (size == rates.length) {
+                rates = Arrays.copyOf(rates, size * 2);
+                grossCents = Arrays.copyOf(grossCents, size * 2);
+                taxCents = Arrays.copyOf(taxCents, size * 2);
+            }
+            rates[size++] = rate;
+        }
+        grossCents[i] += gross;
+        taxCents[i] += tax;
+    }
+
+    /**
+     * Returns the tax rates present in this summary, in basis points and ascending order.
+     *
+     * @return the tax rates of this summary
+     */
+    public int[] getRates() {
+        int[] sorted = Arrays.copyOf(rates, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Returns the gross amount (tax included) charged at a rate.
+     *
+     * @param rateBasisPoints the tax rate in basis points
+     * @return the gross amount at that rate, zero if the rate is not present
+     */
+    public Money getTaxableAmount(int rateBasisPoints) {
+        int i = indexOf(rateBasisPoints);
+        return i < 0 ? Money.ZERO : Money.ofCents(grossCents[i]);
+    }
+
+    /**
+     * Returns the tax collected at a rate.
+     *
+     * @param rateBasisPoints the tax rate in basis points
+     * @return the tax at that rate, zero if the rate is not present
+     */
+    public Money getTax(int rateBasisPoints) {
+        int i = indexOf(rateBasisPoints);
+        return i < 0 ? Money.ZERO : Money.ofCents(taxCents[i]);
+    }
+
+    /**
+     * Returns the tax collected at every rate.
+     *
+     * @return the total tax
+     */
+    public Money getTotalTax() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += taxCents[i];
+        }
+        return Money.ofCents(total);
+    }
+
+    private int indexOf(int rate) {
+        for (int i = 0; i < size; i++) {
+            if (rates[i] == rate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int rate : getRates()) {
+            sb.append(rate / 100).append('.').append(rate / 10 % 10).append(rate % 10).append("%: ")
+                    .append(getTaxableAmount(rate)).append(" | Tax: ").append(getTax(rate))
+                    .append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
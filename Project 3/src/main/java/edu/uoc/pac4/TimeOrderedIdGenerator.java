@@ -0,0 +1,49 @@
+package edu.uoc.pac4;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered order identifier generator.
+ *
+ * An identifier holds the milliseconds elapsed since 2023-01-01 in its upper 41 bits and a sequence in
+ * its lower 22 bits. Each thread reserves a block of identifiers from a shared counter with a single
+ * atomic update and then hands them out with no synchronization, reserving a new block when the
+ * current one is exhausted or the clock moves to the next millisecond. The shared counter never goes
+ * backwards, so identifiers are unique even if the clock does, and identifiers of different
+ * milliseconds are ordered by time.
+ */
+final class TimeOrderedIdGenerator implements OrderIdGenerator {
+    static final TimeOrderedIdGenerator INSTANCE = new TimeOrderedIdGenerator(System::currentTimeMillis);
+    static final long EPOCH_MILLIS = 1672531200000L;
+    static final int SEQUENCE_BITS = 22;
+    private static final int BLOCK_SIZE = 1024;
+
+    private final LongSupplier clock;
+    private final AtomicLong nextBlock = new AtomicLong();
+    private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+    TimeOrderedIdGenerator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public long nextId() {
+        Block block = blocks.get();
+        long millis = clock.getAsLong() - EPOCH_MILLIS;
+        if (block.next == block.limit || millis != block.millis) {
+            long floor = Math.max(millis, 0) << SEQUENCE_BITS;
+            long previous = nextBlock.getAndAccumulate(floor, (current, min) -> Math.max(current, min) + BLOCK_SIZE);
+            block.next = Math.max(previous, floor);
+            block.limit = block.next + BLOCK_SIZE;
+            block.millis = millis;
+        }
+        return block.next++;
+    }
+
+    private static final class Block {
+        private long next;
+        private long limit;
+        private long millis = Long.MIN_VALUE;
+    }
+}
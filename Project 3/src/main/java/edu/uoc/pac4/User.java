@@ -272,6 +272,16 @@ public class User {
         return Objects.equals(email, other.email);
     }
 
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}, derived from the email.
+     *
+     * @return the hash code of this user
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(email);
+    }
+
     /**
      * Returns a string representation of the user.
      *
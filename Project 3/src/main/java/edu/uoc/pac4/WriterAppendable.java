@@ -0,0 +1,58 @@
+package edu.uoc.pac4;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Appendable that collects the appended characters in an array and writes the array to a writer
+ * whenever it fills up, so the writer sees a few large writes instead of one call per character.
+ */
+final class WriterAppendable implements Appendable {
+    private final Writer writer;
+    private final char[] buffer;
+    private int length;
+
+    WriterAppendable(Writer writer, char[] buffer) {
+        this.writer = writer;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        while (start < end) {
+            if (length == buffer.length) {
+                flush();
+            }
+            int count = Math.min(end - start, buffer.length - length);
+            if (csq instanceof String) {
+                ((String) csq).getChars(start, start + count, buffer, length);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[length + i] = csq.charAt(start + i);
+                }
+            }
+            length += count;
+            start += count;
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        if (length == buffer.length) {
+            flush();
+        }
+        buffer[length++] = c;
+        return this;
+    }
+
+    void flush() throws IOException {
+        writer.write(buffer, 0, length);
+        length = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BillTest {
+
+    User user;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void billSetUp() {
+        try {
+            LocalDate birthDate = LocalDate.of(1995, 6, 13);
+            user = new User("Quim Motger", "jmotger@uoc.edu", birthDate, Gender.MALE);
+            orderBatch = new OrderBatch("Bills", "Randomly generated orders");
+
+            Random random = new Random(42);
+            for (int i = 0; i < 200; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(i));
+                int lines = 1 + random.nextInt(6);
+                for (int j = 0; j < lines; ++j) {
+                    double price = (1 + random.nextInt(500000)) / 100.0;
+                    String name = "Product, series " + random.nextInt(50) + " - Cançó 🎲";
+                    order.addOrderItem(new DigitalBook(name, price), 1 + random.nextInt(40));
+                }
+                orderBatch.addOrder(order);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the bill set up");
+        }
+    }
+
+    @Test
+    public void testBillMatchesFormatterOutput() {
+        for (Order order : orderBatch.getOrders()) {
+            assertEquals(legacyBill(order), order.bill());
+            for (OrderItem orderItem : order.getOrderItems()) {
+                assertEquals(legacyBill(orderItem), orderItem.bill());
+            }
+        }
+    }
+
+    @Test
+    public void testReportMatchesFormatterOutput() {
+        List<Order> sortedOrders = new ArrayList<>(orderBatch.getOrders());
+        sortedOrders.sort(Comparator.comparing(Order::getOrderDate));
+        StringBuilder sb = new StringBuilder();
+        for (Order order : sortedOrders) {
+            sb.append("###").append(System.lineSeparator());
+            sb.append(legacyBill(order)).append(System.lineSeparator());
+        }
+        sb.append("###");
+        String expected = Pattern.compile("(Tax: \\d+\\.\\d)0\\b").matcher(sb.toString()).replaceAll("$1");
+
+        assertEquals(expected, orderBatch.toString());
+    }
+
+    @Test
+    public void testBillIntoByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (Order order : orderBatch.getOrders()) {
+            buffer.clear();
+            order.bill(buffer);
+            buffer.flip();
+            assertEquals(ByteBuffer.wrap(order.bill().getBytes(StandardCharsets.UTF_8)), buffer);
+        }
+    }
+
+    private static String legacyBill(OrderItem orderItem) {
+        return String.format("Product: %s | Quantity: %d | Price: %.1f | Tax: %.2f",
+                orderItem.getProduct().getName(), orderItem.getQuantity(), orderItem.getTotalPrice(),
+                orderItem.taxValue(orderItem.getTotal()).toDouble()).replace(',', '.');
+    }
+
+    private static String legacyBill(Order order) {
+        StringBuilder sb = new StringBuilder();
+        OrderItem[] orderItems = order.getOrderItems();
+        for (int i = 0; i < orderItems.length; i++) {
+            sb.append(String.format("#%d: %s%n", i + 1, legacyBill(orderItems[i])));
+        }
+        DecimalFormat decimalFormat = new DecimalFormat("#.##");
+        decimalFormat.setRoundingMode(RoundingMode.HALF_UP);
+        sb.append(String.format("TOTAL = %.1f | Tax: %s", order.getTotalPrice(),
+                decimalFormat.format(order.getTotalTax())).replaceAll(",", "."));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares reporting over a columnar snapshot with the same reports computed by walking the orders.
+ * Excluded from the regular test run; launch it with {@code gradle benchmark}, optionally setting the
+ * number of orders with {@code -Dbenchmark.orders=1000000}.
+ */
+@Tag("benchmark")
+public class ColumnarOrderSnapshotBenchmark {
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void benchmarkColumnarReports() throws Exception {
+        String[] sizes = System.getProperty("benchmark.orders", "1000000").split(",");
+        int count = Integer.parseInt(sizes[0].trim());
+        User user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+        Random random = new Random(5);
+        Product[] products = new Product[200];
+        for (int i = 0; i < products.length; ++i) {
+            products[i] = new DigitalBook("E-book #" + i, 1 + random.nextInt(4000) / 100.0);
+        }
+        OrderBatch orderBatch = new OrderBatch("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+        for (int i = 0; i < count; ++i) {
+            Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)));
+            for (int j = 1 + random.nextInt(3); j > 0; --j) {
+                order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+            }
+            orderBatch.addOrder(order);
+        }
+        LocalDate from = LocalDate.of(2023, 3, 1);
+        LocalDate to = LocalDate.of(2023, 5, 31);
+        Comparator<Order> byTotalDescending = Comparator.comparing(Order::getTotal).reversed()
+                .thenComparingLong(Order::getNumericId);
+
+        long start = System.nanoTime();
+        ColumnarOrderSnapshot snapshot = ColumnarOrderSnapshot.of(orderBatch);
+        long built = System.nanoTime();
+        System.out.printf("%,d orders: snapshot built in %.1f ms%n", count, (built - start) / 1e6);
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            start = System.nanoTime();
+            List<Order> orders = orderBatch.getOrders();
+            Money objectIncome = Money.ZERO;
+            Map<Product, Money> objectByProduct = new HashMap<>();
+            for (Order order : orders) {
+                if (!order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(to)) {
+                    objectIncome = objectIncome.plus(order.getTotal());
+                }
+                for (OrderItem orderItem : order.getOrderItems()) {
+                    objectByProduct.merge(orderItem.getProduct(), orderItem.getTotal(), Money::plus);
+                }
+            }
+            List<Order> objectTop = orderBatch.topK(100, byTotalDescending);
+            long objects = System.nanoTime();
+
+            Money columnarIncome = snapshot.totalIncome(from, to);
+            Map<Product, Money> columnarByProduct = snapshot.incomeByProduct();
+            int[] columnarTop = snapshot.topRowsByTotal(100);
+            long columns = System.nanoTime();
+
+            assertEquals(objectIncome, columnarIncome);
+            assertEquals(objectByProduct, columnarByProduct);
+            assertSame(objectTop.get(0), snapshot.getOrder(columnarTop[0]));
+            System.out.printf("round %d: objects %.1f ms, columns %.1f ms%n", round,
+                    (objects - start) / 1e6, (columns - objects) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarOrderSnapshotTest {
+
+    User user;
+    Product[] products;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void snapshotSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            Random random = new Random(11);
+            products = new Product[40];
+            for (int i = 0; i < products.length; ++i) {
+                products[i] = new DigitalBook("E-book #" + i, 1 + random.nextInt(4000) / 100.0);
+            }
+            orderBatch = new OrderBatch("All orders", "Every order of the year", OrderBatch.UNBOUNDED);
+            for (int i = 0; i < 20000; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)));
+                int lines = random.nextInt(6);
+                for (int j = 0; j < lines; ++j) {
+                    order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+                }
+                if (random.nextInt(3) == 0) {
+                    order.setDeliveryDate(order.getOrderDate().plusDays(2));
+                }
+                orderBatch.addOrder(order);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the snapshot set up");
+        }
+    }
+
+    @Test
+    public void testColumnsMatchOrders() {
+        ColumnarOrderSnapshot snapshot = ColumnarOrderSnapshot.of(orderBatch);
+        assertEquals(orderBatch.size(), snapshot.size());
+        int delivered = 0;
+        for (int row = 0; row < snapshot.size(); ++row) {
+            Order order = snapshot.getOrder(row);
+            assertSame(order, orderBatch.findById(Order.formatId(snapshot.getOrderId(row))));
+            assertEquals(order.getOrderDate(), snapshot.getOrderDate(row));
+            assertEquals(order.getTotal(), snapshot.getTotal(row));
+            assertEquals(order.getItemCount(), snapshot.getLineCount(row));
+            assertEquals(order.getDeliveryDate() != null, snapshot.isDelivered(row));
+            delivered += snapshot.isDelivered(row) ? 1 : 0;
+        }
+        assertEquals(delivered, snapshot.countDelivered());
+    }
+
+    @Test
+    public void testAggregations() {
+        ColumnarOrderSnapshot snapshot = ColumnarOrderSnapshot.of(orderBatch);
+        List<Order> orders = orderBatch.getOrders();
+
+        Money total = Money.ZERO;
+        Money march = Money.ZERO;
+        long marchOrders = 0;
+        Map<Product, Money> income = new HashMap<>();
+        Map<Product, Long> units = new HashMap<>();
+        LocalDate from = LocalDate.of(2023, 3, 1);
+        LocalDate to = LocalDate.of(2023, 3, 31);
+        for (Order order : orders) {
+            total = total.plus(order.getTotal());
+            if (!order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(to)) {
+                march = march.plus(order.getTotal());
+                marchOrders++;
+            }
+            for (OrderItem orderItem : order.getOrderItems()) {
+                income.merge(orderItem.getProduct(), orderItem.getTotal(), Money::plus);
+                units.merge(orderItem.getProduct(), (long) orderItem.getQuantity(), Long::sum);
+            }
+        }
+        assertEquals(total, snapshot.totalIncome());
+        assertEquals(march, snapshot.totalIncome(from, to));
+        assertEquals(marchOrders, snapshot.rowsBetween(from, to).length);
+        assertEquals(income, snapshot.incomeByProduct());
+        assertEquals(units, snapshot.unitsByProduct());
+        assertEquals(orderBatch.auditIncomeByProduct(), snapshot.incomeByProduct());
+    }
+
+    @Test
+    public void testTopRows() {
+        ColumnarOrderSnapshot snapshot = ColumnarOrderSnapshot.of(orderBatch);
+        Comparator<Order> byTotalDescending = Comparator.comparing(Order::getTotal).reversed()
+                .thenComparingLong(Order::getNumericId);
+        List<Order> expected = orderBatch.topK(50, byTotalDescending);
+
+        List<Order> top = new ArrayList<>();
+        for (int row : snapshot.topRowsByTotal(50)) {
+            top.add(snapshot.getOrder(row));
+        }
+        assertEquals(expected, top);
+        assertEquals(0, snapshot.topRowsByTotal(0).length);
+        assertEquals(snapshot.size(), snapshot.topRowsByTotal(snapshot.size() + 10).length);
+    }
+
+    @Test
+    public void testSnapshotIsFrozen() {
+        try {
+            ColumnarOrderSnapshot snapshot = ColumnarOrderSnapshot.of(orderBatch);
+            Money total = snapshot.totalIncome();
+            Order order = snapshot.getOrder(0);
+            order.addOrderItem(products[0], 10);
+            products[1].setPrice(99);
+            orderBatch.remove(snapshot.getOrder(1));
+            assertEquals(total, snapshot.totalIncome());
+            assertEquals(orderBatch.size() + 1, snapshot.size());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testSnapshotIsFrozen");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentOrderTest {
+    private static final int THREADS = 32;
+    private static final int OPERATIONS_PER_THREAD = 20000;
+    private static final int PRODUCTS = 50;
+
+    User user;
+    Order order;
+    List<Product> products;
+
+    @BeforeEach
+    public void concurrentOrderSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            order = Order.concurrent(user, LocalDate.of(2023, 4, 1));
+            products = new ArrayList<>();
+            for (int i = 1; i <= PRODUCTS; ++i) {
+                products.add(new DigitalBook("E-book #" + i, i));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the concurrent order set up");
+        }
+    }
+
+    @Test
+    public void testNoLostUpdates() throws InterruptedException {
+        assertTrue(order.isConcurrent());
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger inconsistentSnapshots = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                if (!isConsistent(order.bill())) {
+                    inconsistentSnapshots.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        runConcurrently(t -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; ++i) {
+                order.addOrderItem(products.get((t + i) % PRODUCTS), 1);
+            }
+        });
+
+        int unitsPerProduct = THREADS * OPERATIONS_PER_THREAD / PRODUCTS;
+        assertEquals(PRODUCTS, order.getItemCount());
+        long expectedTotal = 0;
+        for (OrderItem orderItem : order.getOrderItems()) {
+            assertEquals(unitsPerProduct, orderItem.getQuantity());
+            expectedTotal += orderItem.getTotal().getCents();
+        }
+        assertEquals(Money.ofCents(expectedTotal), order.getTotal());
+
+        runConcurrently(t -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; ++i) {
+                assertTrue(order.removeOrderItem(products.get((t + i) % PRODUCTS), 1));
+            }
+        });
+        writing.set(false);
+        reader.join();
+
+        assertEquals(0, order.getItemCount());
+        assertEquals(Money.ZERO, order.getTotal());
+        assertEquals(0, inconsistentSnapshots.get());
+    }
+
+    @Test
+    public void testConcurrentQuantityChanges() throws InterruptedException {
+        try {
+            for (Product product : products) {
+                order.addOrderItem(product, 1);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testConcurrentQuantityChanges");
+        }
+        OrderItem[] orderItems = order.getOrderItems();
+
+        runConcurrently(t -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; ++i) {
+                orderItems[(t * 7 + i) % PRODUCTS].setQuantity(1 + (t + i) % 10);
+            }
+        });
+
+        long expectedTotal = 0;
+        for (OrderItem orderItem : order.getOrderItems()) {
+            expectedTotal += orderItem.getTotal().getCents();
+        }
+        assertEquals(Money.ofCents(expectedTotal), order.getTotal());
+        assertTrue(isConsistent(order.bill()));
+    }
+
+    private static boolean isConsistent(String bill) {
+        Matcher lines = Pattern.compile("Price: (\\d+)\\.0").matcher(bill);
+        long sum = 0;
+        while (lines.find()) {
+            sum += Long.parseLong(lines.group(1));
+        }
+        Matcher total = Pattern.compile("TOTAL = (\\d+)\\.0").matcher(bill);
+        return total.find() && Long.parseLong(total.group(1)) == sum;
+    }
+
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(Task task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] workers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run(thread);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    failures.incrementAndGet();
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, failures.get());
+    }
+}
@@ -0,0 +1,50 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures dispatching the orders of a large batch to a carrier with a fixed latency, against the
+ * time the same calls would take one after another. Excluded from the regular test run; launch it with
+ * {@code gradle benchmark}, optionally setting the number of orders, the latency in milliseconds and
+ * the concurrency with {@code -Dbenchmark.orders=100000 -Dbenchmark.latency=10
+ * -Dbenchmark.concurrency=1000}.
+ */
+@Tag("benchmark")
+public class DeliveryDispatcherBenchmark {
+
+    @Test
+    public void benchmarkDispatch() throws Exception {
+        int count = Integer.getInteger("benchmark.orders", 100000);
+        int latency = Integer.getInteger("benchmark.latency", 10);
+        int concurrency = Integer.getInteger("benchmark.concurrency", 1000);
+        User user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+        Product product = new DigitalBook("E-book", 10);
+        OrderBatch orderBatch = new OrderBatch("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+        for (int i = 0; i < count; ++i) {
+            Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(i % 365));
+            order.addOrderItem(product, 1);
+            orderBatch.addOrder(order);
+        }
+
+        StubCarrier carrier = new StubCarrier(Duration.ofMillis(latency), LocalDate.of(2024, 1, 1), order -> false);
+        DeliveryDispatcher dispatcher = new DeliveryDispatcher(carrier).withConcurrency(concurrency);
+        DeliveryReport report = orderBatch.deliverOrdersAfterDate(LocalDate.of(2022, 12, 31), dispatcher);
+
+        assertEquals(count, report.getDelivered());
+        List<Order> undelivered = orderBatch.query().undelivered().toList();
+        assertTrue(undelivered.isEmpty());
+        double ideal = (double) count * latency / concurrency;
+        System.out.printf("%,d orders, %d ms latency, %,d concurrent calls in %s threads: dispatched in %,d ms "
+                        + "(ideal %,.0f ms, sequential %,d ms), at most %,d calls at once%n",
+                count, latency, concurrency, DeliveryDispatcher.usesVirtualThreads() ? "virtual" : "platform",
+                report.getElapsed().toMillis(), ideal, (long) count * latency, carrier.getMaxConcurrentCalls());
+    }
+}
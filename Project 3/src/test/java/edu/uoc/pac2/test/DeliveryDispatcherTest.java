@@ -0,0 +1,177 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeliveryDispatcherTest {
+
+    User user;
+    Product product;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void dispatcherSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            product = new DigitalBook("E-book", 10);
+            orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system",
+                    OrderBatch.UNBOUNDED);
+            Random random = new Random(24);
+            for (int i = 0; i < 300; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(60)));
+                order.addOrderItem(product, 1 + random.nextInt(3));
+                if (random.nextInt(4) == 0) {
+                    order.setDeliveryDate(order.getOrderDate());
+                }
+                orderBatch.addOrder(order);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the dispatcher set up");
+        }
+    }
+
+    @Test
+    public void testDispatch() {
+        try {
+            LocalDate after = LocalDate.of(2023, 1, 31);
+            LocalDate deliveryDate = LocalDate.of(2023, 4, 1);
+            List<Order> expected = orderBatch.getOrders().stream()
+                    .filter(order -> order.getOrderDate().isAfter(after) && order.getDeliveryDate() == null)
+                    .collect(Collectors.toList());
+            StubCarrier carrier = new StubCarrier(Duration.ofMillis(20), deliveryDate, order -> false);
+            DeliveryDispatcher dispatcher = new DeliveryDispatcher(carrier).withConcurrency(50);
+
+            DeliveryReport report = orderBatch.deliverOrdersAfterDate(after, dispatcher);
+            assertEquals(expected.size(), report.getOrders());
+            assertEquals(expected.size(), report.getDelivered());
+            assertEquals(0, report.getFailed());
+            assertEquals(0, report.getTimedOut());
+            assertTrue(report.getFailures().isEmpty());
+            assertEquals(expected.size(), carrier.getCalls());
+            for (Order order : expected) {
+                assertEquals(deliveryDate, order.getDeliveryDate());
+            }
+            // The calls overlap: far less than one latency per order, never more than the limit at once.
+            assertTrue(carrier.getMaxConcurrentCalls() > 1);
+            assertTrue(carrier.getMaxConcurrentCalls() <= 50);
+            assertTrue(report.getElapsed().toMillis() < expected.size() * 20L / 2);
+            assertTrue(orderBatch.query().placedAfter(after).undelivered().toList().isEmpty());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testDispatch");
+        }
+    }
+
+    @Test
+    public void testFailuresAndTimeouts() {
+        try {
+            List<Order> orders = orderBatch.query().undelivered().orderByDate().limit(40).toList();
+            Carrier carrier = order -> {
+                long id = order.getNumericId();
+                if (id % 4 == 0) {
+                    Thread.sleep(10000);
+                } else if (id % 4 == 1) {
+                    throw new IllegalStateException("[ERROR] No carrier route");
+                } else if (id % 4 == 2) {
+                    return order.getOrderDate().minusDays(1);
+                }
+                return order.getOrderDate().plusDays(1);
+            };
+            DeliveryReport report = new DeliveryDispatcher(carrier).withTimeout(Duration.ofMillis(200))
+                    .dispatch(orders);
+
+            long slow = orders.stream().filter(order -> order.getNumericId() % 4 == 0).count();
+            long fast = orders.stream().filter(order -> order.getNumericId() % 4 == 3).count();
+            assertEquals(orders.size(), report.getOrders());
+            assertEquals(slow, report.getTimedOut());
+            assertEquals(fast, report.getDelivered());
+            assertEquals(orders.size() - slow - fast, report.getFailed());
+            assertTrue(report.getElapsed().toMillis() < 5000);
+            assertEquals(orders.size() - fast, report.getFailures().size());
+            for (DeliveryReport.Failure failure : report.getFailures()) {
+                Order order = orderBatch.query().withId(failure.getOrderId()).toList().get(0);
+                assertNull(order.getDeliveryDate());
+                assertEquals(order.getNumericId() % 4 == 0, failure.isTimedOut());
+                assertTrue(failure.getMessage().startsWith("[ERROR]"));
+            }
+            for (Order order : orders) {
+                if (order.getNumericId() % 4 == 3) {
+                    assertEquals(order.getOrderDate().plusDays(1), order.getDeliveryDate());
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testFailuresAndTimeouts");
+        }
+    }
+
+    @Test
+    public void testCarrierIgnoringInterrupts() {
+        try {
+            List<Order> orders = orderBatch.query().undelivered().orderByDate().limit(10).toList();
+            List<Order> stuck = orders.subList(0, 2);
+            Carrier carrier = order -> {
+                if (stuck.contains(order)) {
+                    long end = System.nanoTime() + 600_000_000L;
+                    while (System.nanoTime() < end) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            // Ignored on purpose.
+                        }
+                    }
+                }
+                return order.getOrderDate().plusDays(1);
+            };
+            DeliveryReport report = new DeliveryDispatcher(carrier).withConcurrency(2)
+                    .withTimeout(Duration.ofMillis(200)).dispatch(orders);
+
+            // The orders after the stuck calls wait for them to give up, then get their own time.
+            assertEquals(orders.size(), report.getOrders());
+            assertEquals(2, report.getTimedOut());
+            assertEquals(orders.size() - 2, report.getDelivered());
+            for (Order order : orders) {
+                assertEquals(stuck.contains(order) ? null : order.getOrderDate().plusDays(1),
+                        order.getDeliveryDate());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testCarrierIgnoringInterrupts");
+        }
+    }
+
+    @Test
+    public void testConfiguration() {
+        try {
+            StubCarrier carrier = new StubCarrier(Duration.ZERO);
+            DeliveryDispatcher dispatcher = new DeliveryDispatcher(carrier);
+            assertThrows(NullPointerException.class, () -> new DeliveryDispatcher(null));
+            assertThrows(IllegalArgumentException.class, () -> dispatcher.withConcurrency(0));
+            assertThrows(IllegalArgumentException.class, () -> dispatcher.withTimeout(Duration.ZERO));
+            assertThrows(IllegalArgumentException.class, () -> new StubCarrier(Duration.ofMillis(-1)));
+            assertThrows(NullPointerException.class, () -> dispatcher.dispatch(null));
+
+            DeliveryReport empty = dispatcher.dispatch(List.of());
+            assertEquals(0, empty.getOrders());
+
+            List<Order> orders = orderBatch.query().undelivered().toList();
+            DeliveryReport report = dispatcher.withConcurrency(1).dispatch(orders);
+            assertEquals(orders.size(), report.getDelivered());
+            assertEquals(1, carrier.getMaxConcurrentCalls());
+            assertEquals(LocalDate.now(), orders.get(0).getDeliveryDate());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testConfiguration");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncomeAuditTest {
+
+    User user;
+    Product[] products;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void auditSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            products = new Product[30];
+            for (int i = 0; i < products.length; ++i) {
+                products[i] = i % 2 == 0
+                        ? new PrintedBook("Book #" + i, 5 + i, 1.5)
+                        : new Merchandising("Item #" + i, 2.5 + i, 0.5, 0.1);
+            }
+            orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system",
+                    OrderBatch.UNBOUNDED);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the audit set up");
+        }
+    }
+
+    @Test
+    public void testIndexFollowsOrderChanges() {
+        try {
+            Order order = new Order(user, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(products[0], 2);
+            orderBatch.addOrder(order);
+            assertEquals(2, orderBatch.auditUnits(products[0]));
+            assertEquals(Money.of(10), orderBatch.auditIncome(products[0]));
+
+            order.addOrderItem(products[0], 3);
+            order.addOrderItem(products[1], 1);
+            order.getOrderItem(products[1]).setQuantity(4);
+            assertEquals(5, orderBatch.auditUnits(products[0]));
+            assertEquals(4, orderBatch.auditUnits(products[1]));
+            assertEquals(14.0, orderBatch.auditIncomeByProduct(products[1]));
+
+            products[0].setPrice(6);
+            assertEquals(Money.of(30), orderBatch.auditIncome(products[0]));
+
+            order.removeOrderItem(products[1], 10);
+            assertEquals(0, orderBatch.auditUnits(products[1]));
+            assertEquals(Map.of(products[0], Money.of(30)), orderBatch.auditIncomeByProduct());
+
+            assertTrue(orderBatch.remove(order));
+            order.addOrderItem(products[0], 1);
+            assertEquals(Money.ZERO, orderBatch.auditIncome(products[0]));
+            assertTrue(orderBatch.auditIncomeByProduct().isEmpty());
+            assertEquals(Money.ZERO, orderBatch.auditIncome(null));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testIndexFollowsOrderChanges");
+        }
+    }
+
+    @Test
+    public void testCatalogReportMatchesOrders() {
+        try {
+            Random random = new Random(3);
+            OrderBatch otherBatch = new OrderBatch("Some orders", "Orders shared with the main batch");
+            for (int i = 0; i < 2000; ++i) {
+                Order order = i % 3 == 0 ? Order.concurrent(user, LocalDate.of(2023, 1, 1))
+                        : new Order(user, LocalDate.of(2023, 1, 1));
+                for (int j = 0; j < 5; ++j) {
+                    order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+                }
+                orderBatch.addOrder(order);
+                if (i % 4 == 0) {
+                    otherBatch.addOrder(order);
+                }
+                if (i % 5 == 0) {
+                    order.removeOrderItem(products[random.nextInt(products.length)], 2);
+                }
+            }
+            assertEquals(expectedIncome(orderBatch), orderBatch.auditIncomeByProduct());
+            assertEquals(expectedIncome(otherBatch), otherBatch.auditIncomeByProduct());
+
+            orderBatch.remove();
+            assertTrue(orderBatch.auditIncomeByProduct().isEmpty());
+            assertEquals(expectedIncome(otherBatch), otherBatch.auditIncomeByProduct());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testCatalogReportMatchesOrders");
+        }
+    }
+
+    @Test
+    public void testConcurrentOrderChanges() throws Exception {
+        Order order = Order.concurrent(user, LocalDate.of(2023, 1, 1));
+        orderBatch.addOrder(order);
+        Thread[] workers = new Thread[4];
+        for (int t = 0; t < workers.length; ++t) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20000; ++i) {
+                        Product product = products[(first + i) % products.length];
+                        order.addOrderItem(product, 2);
+                        order.removeOrderItem(product, 1);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long units = 0;
+        for (Product product : products) {
+            units += orderBatch.auditUnits(product);
+        }
+        assertEquals(4 * 20000, units);
+        assertEquals(expectedIncome(orderBatch), orderBatch.auditIncomeByProduct());
+    }
+
+    @Test
+    public void testLineChangesStayOrdered() throws Exception {
+        Order order = Order.concurrent(user, LocalDate.of(2023, 1, 1));
+        orderBatch.addOrder(order);
+        List<OrderChange> changes = new ArrayList<>();
+        orderBatch.getChangeFeed().addListener(changes::addAll);
+        Thread[] workers = new Thread[4];
+        for (int t = 0; t < workers.length; ++t) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20000; ++i) {
+                        order.addOrderItem(products[0], 1);
+                        order.removeOrderItem(products[0], 1);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        orderBatch.getChangeFeed().flush();
+
+        // A line is never reported removed before it was reported added, nor added twice.
+        boolean present = false;
+        for (OrderChange change : changes) {
+            assertEquals(present, change.getType() != OrderChangeType.LINE_ADDED);
+            present = change.getType() != OrderChangeType.LINE_REMOVED;
+        }
+        assertFalse(present);
+        assertEquals(0, orderBatch.auditUnits(products[0]));
+        assertTrue(orderBatch.auditIncomeByProduct().isEmpty());
+    }
+
+    private static Map<Product, Money> expectedIncome(OrderBatch orderBatch) {
+        Map<Product, Money> income = new HashMap<>();
+        for (Order order : orderBatch.getOrders()) {
+            for (OrderItem orderItem : order.getOrderItems()) {
+                income.merge(orderItem.getProduct(), orderItem.getTotal(), Money::plus);
+            }
+        }
+        return income;
+    }
+}
@@ -0,0 +1,55 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures insert, lookup and removal times of unbounded order batches. Excluded from the regular
+ * test run; launch it with {@code gradle benchmark}, optionally setting the sizes with
+ * {@code -Dbenchmark.orders=1000000,10000000}.
+ */
+@Tag("benchmark")
+public class OrderBatchBenchmark {
+
+    @Test
+    public void benchmarkOrderBatch() throws Exception {
+        User user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+        for (String size : System.getProperty("benchmark.orders", "1000000,10000000").split(",")) {
+            int count = Integer.parseInt(size.trim());
+            Order[] orders = new Order[count];
+            for (int i = 0; i < count; ++i) {
+                orders[i] = new Order(user, LocalDate.of(2023, 1, 1));
+            }
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+
+            OrderBatch orderBatch = new OrderBatch("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+            long start = System.nanoTime();
+            for (Order order : orders) {
+                orderBatch.addOrder(order);
+            }
+            long added = System.nanoTime();
+            for (Order order : orders) {
+                assertTrue(orderBatch.exists(order));
+            }
+            long looked = System.nanoTime();
+            System.gc();
+            long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+            for (Order order : orders) {
+                orderBatch.remove(order);
+            }
+            long removed = System.nanoTime();
+
+            assertTrue(orderBatch.isEmpty());
+            System.out.printf("%,d orders: add %.1f ns/op, exists %.1f ns/op, remove %.1f ns/op, %.1f bytes/order%n",
+                    count, (double) (added - start) / count, (double) (looked - added) / count,
+                    (double) (removed - looked) / count, (double) (usedAfter - usedBefore) / count);
+        }
+    }
+}
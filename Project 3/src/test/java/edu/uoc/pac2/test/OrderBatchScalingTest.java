@@ -0,0 +1,177 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderBatchScalingTest {
+
+    User user;
+    List<Order> orders;
+
+    @BeforeEach
+    public void scalingSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            orders = new ArrayList<>();
+            for (int i = 0; i < 100000; ++i) {
+                orders.add(new Order(user, LocalDate.of(2023, 1, 1).plusDays(i % 365)));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the scaling set up");
+        }
+    }
+
+    @Test
+    public void testConfigurableMaxSize() {
+        OrderBatch orderBatch = new OrderBatch("Small", "Batch of three orders", 3);
+        assertEquals(3, orderBatch.getMaxSize());
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(orderBatch.addOrder(orders.get(i)));
+        }
+        assertTrue(orderBatch.isFull());
+        assertFalse(orderBatch.addOrder(orders.get(3)));
+        assertTrue(orderBatch.remove(orders.get(0)));
+        assertTrue(orderBatch.addOrder(orders.get(3)));
+
+        assertThrows(IllegalArgumentException.class, () -> new OrderBatch("Empty", "Invalid batch", 0));
+    }
+
+    @Test
+    public void testUnboundedBatch() {
+        OrderBatch orderBatch = new OrderBatch("All orders", "Every order of the year", OrderBatch.UNBOUNDED);
+        for (Order order : orders) {
+            assertTrue(orderBatch.addOrder(order));
+        }
+        assertFalse(orderBatch.addOrder(orders.get(0)));
+        assertEquals(orders.size(), orderBatch.size());
+        assertFalse(orderBatch.isFull());
+        assertEquals(new HashSet<>(orders), new HashSet<>(orderBatch.getOrders()));
+
+        Random random = new Random(42);
+        Set<Order> removed = new HashSet<>();
+        for (int i = 0; i < orders.size() / 2; ++i) {
+            Order order = orders.get(random.nextInt(orders.size()));
+            assertEquals(removed.add(order), orderBatch.remove(order));
+        }
+        assertEquals(orders.size() - removed.size(), orderBatch.size());
+        for (Order order : orders) {
+            assertEquals(!removed.contains(order), orderBatch.exists(order));
+        }
+
+        orderBatch.remove();
+        assertTrue(orderBatch.isEmpty());
+        assertEquals(0, orderBatch.getOrders().size());
+    }
+
+    @Test
+    public void testLookupById() {
+        try {
+            OrderBatch orderBatch = new OrderBatch("All orders", "Every order of the year", OrderBatch.UNBOUNDED);
+            for (Order order : orders) {
+                orderBatch.addOrder(order);
+            }
+            for (Order order : orders) {
+                assertSame(order, orderBatch.findById(order.getId()));
+                assertTrue(orderBatch.existsById(order.getId()));
+            }
+            assertEquals(orders.get(0).getNumericId(), Order.parseId(orders.get(0).getId()));
+            assertNull(orderBatch.findById("not an id"));
+            assertNull(orderBatch.findById(""));
+            assertFalse(orderBatch.existsById("00000000000000000"));
+            assertThrows(NullPointerException.class, () -> orderBatch.findById(null));
+
+            Order removed = orders.get(42);
+            assertSame(removed, orderBatch.removeById(removed.getId()));
+            assertNull(orderBatch.removeById(removed.getId()));
+            assertFalse(orderBatch.exists(removed));
+            assertEquals(orders.size() - 1, orderBatch.size());
+
+            Order copy = new Order(user, LocalDate.of(2023, 1, 1), () -> orders.get(7).getNumericId());
+            assertEquals(orders.get(7), copy);
+            assertEquals(orders.get(7).hashCode(), copy.hashCode());
+            assertNotEquals(orders.get(7), orders.get(8));
+            assertTrue(orderBatch.exists(copy));
+            assertFalse(orderBatch.addOrder(copy));
+            assertTrue(orderBatch.remove(copy));
+            assertFalse(orderBatch.existsById(orders.get(7).getId()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testLookupById");
+        }
+    }
+
+    @Test
+    public void testTopK() {
+        try {
+            OrderBatch orderBatch = new OrderBatch("All orders", "Every order of the year", OrderBatch.UNBOUNDED);
+            Random random = new Random(7);
+            Product[] products = new Product[20];
+            for (int i = 0; i < products.length; ++i) {
+                products[i] = new DigitalBook("E-book #" + i, 1 + random.nextInt(5000) / 100.0);
+            }
+            for (Order order : orders) {
+                order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(10));
+                orderBatch.addOrder(order);
+            }
+
+            Comparator<Order> byTotalDescending = Comparator.comparing(Order::getTotal).reversed()
+                    .thenComparingLong(Order::getNumericId);
+            List<Order> sorted = new ArrayList<>(orders);
+            sorted.sort(byTotalDescending);
+            assertEquals(sorted.subList(0, 100), orderBatch.topK(100, byTotalDescending));
+            assertEquals(sorted.subList(0, 1), orderBatch.topK(1, byTotalDescending));
+            assertEquals(sorted, orderBatch.topK(orders.size() + 1, byTotalDescending));
+            assertTrue(orderBatch.topK(0, byTotalDescending).isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> orderBatch.topK(-1, byTotalDescending));
+            assertThrows(NullPointerException.class, () -> orderBatch.topK(1, null));
+
+            Money max = sorted.get(0).getTotal();
+            List<Order> largest = orderBatch.getLargestOrders();
+            assertFalse(largest.isEmpty());
+            for (int i = 0; i < largest.size(); ++i) {
+                assertEquals(max, largest.get(i).getTotal());
+                if (i > 0) {
+                    assertFalse(largest.get(i).getOrderDate().isBefore(largest.get(i - 1).getOrderDate()));
+                }
+            }
+            assertEquals(sorted.stream().filter(order -> order.getTotal().equals(max)).count(), largest.size());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testTopK");
+        }
+    }
+
+    @Test
+    public void testConcurrentInserts() throws InterruptedException {
+        OrderBatch orderBatch = new OrderBatch("Capped", "Batch filled from several threads", 60000);
+        int threads = 4;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                for (int i = first; i < orders.size(); i += threads) {
+                    orderBatch.addOrder(orders.get(i));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(60000, orderBatch.size());
+        assertEquals(60000, orderBatch.getOrders().size());
+        assertTrue(orderBatch.isFull());
+    }
+}
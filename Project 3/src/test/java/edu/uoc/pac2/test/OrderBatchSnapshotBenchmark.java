@@ -0,0 +1,69 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the time to open a snapshot and look up an order, against decoding the whole batch, for
+ * several batch sizes. Excluded from the regular test run; launch it with {@code gradle benchmark},
+ * optionally setting the batch sizes with {@code -Dbenchmark.orders=10000,1000000}.
+ */
+@Tag("benchmark")
+public class OrderBatchSnapshotBenchmark {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void benchmarkSnapshotOpen() throws Exception {
+        String[] sizes = System.getProperty("benchmark.orders", "10000,1000000").split(",");
+        User user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+        Random random = new Random(29);
+        Product[] products = new Product[200];
+        for (int i = 0; i < products.length; ++i) {
+            products[i] = new DigitalBook("E-book #" + i, 1 + random.nextInt(4000) / 100.0);
+        }
+        for (String size : sizes) {
+            int count = Integer.parseInt(size.trim());
+            OrderBatch orderBatch = new OrderBatch("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+            for (int i = 0; i < count; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)));
+                for (int j = 1 + random.nextInt(3); j > 0; --j) {
+                    order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+                }
+                orderBatch.addOrder(order);
+            }
+            List<Order> orders = orderBatch.getOrders();
+            Path file = directory.resolve(count + ".snapshot");
+            long start = System.nanoTime();
+            orderBatch.snapshot(file);
+            long written = System.nanoTime();
+            orderBatch = null;
+
+            OrderBatchSnapshot snapshot = OrderBatchSnapshot.open(file);
+            long opened = System.nanoTime();
+            for (int i = 0; i < 1000; ++i) {
+                assertNotNull(snapshot.findById(orders.get(random.nextInt(count)).getId()));
+            }
+            long looked = System.nanoTime();
+            OrderBatch restored = snapshot.toOrderBatch();
+            long restoredAt = System.nanoTime();
+            assertEquals(count, restored.size());
+
+            System.out.printf("%,d orders (%,d bytes): snapshot written in %.1f ms, opened in %.3f ms, "
+                            + "1000 lookups in %.1f ms, full decode in %.1f ms%n",
+                    count, Files.size(file), (written - start) / 1e6, (opened - written) / 1e6,
+                    (looked - opened) / 1e6, (restoredAt - looked) / 1e6);
+        }
+    }
+}
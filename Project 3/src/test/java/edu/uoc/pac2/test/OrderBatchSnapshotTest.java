@@ -0,0 +1,148 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderBatchSnapshotTest {
+
+    @TempDir
+    Path directory;
+    User user;
+    Product p1;
+    Product p2;
+    Product p3;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void snapshotSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE,
+                    new Address("Rambla del Poblenou", 156, "08018", "Barcelona"));
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set (6 units)", 6.5, 1.9, 0.2);
+            p3 = new DigitalBook("Dungeons and Dragons - Monster Manual", 24.99);
+            Product[] products = {p1, p2, p3};
+            orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system", 5000);
+            Random random = new Random(3);
+            for (int i = 0; i < 2000; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)));
+                for (int j = 1 + random.nextInt(3); j > 0; --j) {
+                    order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+                }
+                if (i % 7 == 0) {
+                    order.setDeliveryDate(order.getOrderDate().plusDays(3));
+                }
+                orderBatch.addOrder(order);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the snapshot set up");
+        }
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() {
+        try {
+            Path file = directory.resolve("orders.snapshot");
+            orderBatch.snapshot(file);
+            OrderBatchSnapshot snapshot = OrderBatchSnapshot.open(file);
+
+            assertEquals("All orders", snapshot.getName());
+            assertEquals(orderBatch.getDescription(), snapshot.getDescription());
+            assertEquals(5000, snapshot.getMaxSize());
+            assertEquals(2000, snapshot.size());
+
+            OrderBatch restored = snapshot.toOrderBatch();
+            assertEquals(orderBatch.toString(), restored.toString());
+            assertEquals(orderBatch.getTaxSummary().getTotalTax(), restored.getTaxSummary().getTotalTax());
+
+            List<Order> orders = snapshot.getOrders();
+            for (int i = 1; i < orders.size(); ++i) {
+                assertTrue(orders.get(i - 1).getNumericId() < orders.get(i).getNumericId());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testSnapshotRoundTrip");
+        }
+    }
+
+    @Test
+    public void testLazyLookups() {
+        try {
+            Path file = directory.resolve("orders.snapshot");
+            orderBatch.snapshot(file);
+            OrderBatchSnapshot snapshot = OrderBatchSnapshot.open(file);
+
+            Order original = orderBatch.getOrders().get(42);
+            Order found = snapshot.findById(original.getId());
+            assertNotNull(found);
+            assertSame(found, snapshot.findById(original.getId()));
+            assertEquals(original.bill(), found.bill());
+            assertEquals(original.getDeliveryDate(), found.getDeliveryDate());
+            assertTrue(snapshot.existsById(original.getId()));
+            assertFalse(snapshot.existsById("0"));
+            assertFalse(snapshot.existsById("not an id"));
+            assertNull(snapshot.findById("1"));
+
+            LocalDate from = LocalDate.of(2023, 3, 1);
+            LocalDate to = LocalDate.of(2023, 3, 31);
+            List<String> expected = orderBatch.ordersBetween(from, to).stream().map(Order::getId).sorted()
+                    .collect(Collectors.toList());
+            List<String> march = snapshot.ordersBetween(from, to).stream().map(Order::getId).sorted()
+                    .collect(Collectors.toList());
+            assertEquals(expected, march);
+            assertThrows(UnsupportedOperationException.class, () -> snapshot.getOrders().remove(0));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testLazyLookups");
+        }
+    }
+
+    @Test
+    public void testSnapshotReplacesFile() {
+        try {
+            Path file = directory.resolve("orders.snapshot");
+            orderBatch.snapshot(file);
+            new OrderBatch("Empty", "No orders").snapshot(file);
+            OrderBatchSnapshot snapshot = OrderBatchSnapshot.open(file);
+            assertTrue(snapshot.isEmpty());
+            assertEquals("Empty", snapshot.getName());
+            assertTrue(snapshot.toOrderBatch().isEmpty());
+            try (var files = Files.list(directory)) {
+                assertEquals(1, files.count());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testSnapshotReplacesFile");
+        }
+    }
+
+    @Test
+    public void testInvalidSnapshot() {
+        try {
+            Path file = directory.resolve("orders.snapshot");
+            Files.writeString(file, "This is not a snapshot of any order batch at all");
+            assertThrows(IOException.class, () -> OrderBatchSnapshot.open(file));
+
+            orderBatch.snapshot(file);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, java.util.Arrays.copyOf(bytes, 60));
+            assertThrows(IOException.class, () -> OrderBatchSnapshot.open(file));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testInvalidSnapshot");
+        }
+    }
+}
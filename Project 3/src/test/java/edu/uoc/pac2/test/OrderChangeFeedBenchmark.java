@@ -0,0 +1,73 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the cost of following a changing batch through its change feed, against rescanning its
+ * orders after every round of changes. Excluded from the regular test run; launch it with
+ * {@code gradle benchmark}, optionally setting the batch size with {@code -Dbenchmark.orders=1000000}.
+ */
+@Tag("benchmark")
+public class OrderChangeFeedBenchmark {
+
+    @Test
+    public void benchmarkFeed() throws Exception {
+        int count = Integer.getInteger("benchmark.orders", 200000);
+        int rounds = 20;
+        User user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+        Product[] products = new Product[100];
+        for (int i = 0; i < products.length; ++i) {
+            products[i] = new DigitalBook("E-book #" + i, 5 + i);
+        }
+
+        long[] nanos = new long[2];
+        Map<Product, Long> units = new HashMap<>();
+        for (int run = 0; run < 2; ++run) {
+            boolean incremental = run == 1;
+            OrderBatch orderBatch = new OrderBatch("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+            units.clear();
+            if (incremental) {
+                orderBatch.getChangeFeed().addListener(changes -> {
+                    for (OrderChange change : changes) {
+                        if (change.getProduct() != null) {
+                            units.merge(change.getProduct(), change.getUnits(), Long::sum);
+                        }
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; ++round) {
+                for (int i = 0; i < count / rounds; ++i) {
+                    Order order = new Order(user, LocalDate.of(2023, 1, 1));
+                    order.addOrderItem(products[(round + i) % products.length], 1 + i % 3);
+                    orderBatch.addOrder(order);
+                }
+                if (incremental) {
+                    orderBatch.getChangeFeed().flush();
+                } else {
+                    units.clear();
+                    for (Order order : orderBatch.getOrders()) {
+                        for (OrderItem item : order.getOrderItems()) {
+                            units.merge(item.getProduct(), (long) item.getQuantity(), Long::sum);
+                        }
+                    }
+                }
+            }
+            nanos[run] = System.nanoTime() - start;
+            for (Product product : products) {
+                assertEquals(orderBatch.auditUnits(product), units.getOrDefault(product, 0L));
+            }
+        }
+        System.out.printf("%,d orders added in %d rounds, units per product kept up to date after every round: "
+                        + "rescanning in %.1f ms, following the change feed in %.1f ms%n",
+                count, rounds, nanos[0] / 1e6, nanos[1] / 1e6);
+    }
+}
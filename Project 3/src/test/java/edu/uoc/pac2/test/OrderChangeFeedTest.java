@@ -0,0 +1,266 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderChangeFeedTest {
+
+    User user;
+    Product p1;
+    Product p2;
+    OrderBatch orderBatch;
+    List<OrderChange> changes;
+    List<Integer> batchSizes;
+
+    @BeforeEach
+    public void feedSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set (6 units)", 6.5, 1.9, 0.2);
+            orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system",
+                    OrderBatch.UNBOUNDED);
+            changes = new ArrayList<>();
+            batchSizes = new ArrayList<>();
+            orderBatch.getChangeFeed().addListener(batch -> {
+                batchSizes.add(batch.size());
+                changes.addAll(batch);
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the change feed set up");
+        }
+    }
+
+    @Test
+    public void testChangeTypes() {
+        try {
+            Order order = new Order(user, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(p1, 2);
+            orderBatch.addOrder(order);
+            order.addOrderItem(p2, 3);
+            order.addOrderItem(p2, 1);
+            order.removeOrderItem(p1, 2);
+            order.setOrderDate(LocalDate.of(2023, 4, 2));
+            order.setDeliveryDate(LocalDate.of(2023, 4, 5));
+            orderBatch.remove(order);
+            order.addOrderItem(p1, 1);
+            orderBatch.getChangeFeed().flush();
+
+            assertEquals(List.of(OrderChangeType.ORDER_ADDED, OrderChangeType.LINE_ADDED,
+                    OrderChangeType.LINE_ADDED, OrderChangeType.QUANTITY_CHANGED, OrderChangeType.LINE_REMOVED,
+                    OrderChangeType.ORDER_DATE_CHANGED, OrderChangeType.DELIVERED,
+                    OrderChangeType.ORDER_REMOVED), changes.stream().map(OrderChange::getType)
+                    .collect(Collectors.toList()));
+            for (int i = 0; i < changes.size(); ++i) {
+                assertEquals(i + 1, changes.get(i).getSequence());
+                assertSame(order, changes.get(i).getOrder());
+            }
+            assertEquals(LocalDate.of(2023, 4, 1), changes.get(0).getDate());
+            assertEquals(p1, changes.get(1).getProduct());
+            assertEquals(2, changes.get(1).getUnits());
+            assertEquals(p2, changes.get(3).getProduct());
+            assertEquals(1, changes.get(3).getUnits());
+            assertEquals(-2, changes.get(4).getUnits());
+            assertEquals(LocalDate.of(2023, 4, 2), changes.get(5).getDate());
+            assertEquals(LocalDate.of(2023, 4, 5), changes.get(6).getDate());
+            assertNull(changes.get(7).getProduct());
+            assertTrue(changes.get(3).toString().startsWith("#4 [QUANTITY_CHANGED] Order " + order.getId()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testChangeTypes");
+        }
+    }
+
+    @Test
+    public void testOrderedBatches() {
+        try {
+            int threads = 4;
+            int perThread = 2500;
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                Thread worker = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perThread; ++i) {
+                            Order order = new Order(user, LocalDate.of(2023, 1, 1));
+                            order.addOrderItem(p1, 1);
+                            orderBatch.addOrder(order);
+                            order.addOrderItem(p1, 2);
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            orderBatch.getChangeFeed().flush();
+
+            assertEquals(3 * threads * perThread, changes.size());
+            Map<Order, List<OrderChangeType>> byOrder = new HashMap<>();
+            for (int i = 0; i < changes.size(); ++i) {
+                OrderChange change = changes.get(i);
+                assertEquals(i + 1, change.getSequence());
+                byOrder.computeIfAbsent(change.getOrder(), order -> new ArrayList<>()).add(change.getType());
+            }
+            assertEquals(threads * perThread, byOrder.size());
+            for (List<OrderChangeType> types : byOrder.values()) {
+                assertEquals(List.of(OrderChangeType.ORDER_ADDED, OrderChangeType.LINE_ADDED,
+                        OrderChangeType.QUANTITY_CHANGED), types);
+            }
+            assertTrue(batchSizes.stream().allMatch(size -> size > 0 && size <= OrderChangeFeed.MAX_BATCH));
+            assertTrue(batchSizes.size() < changes.size());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testOrderedBatches");
+        }
+    }
+
+    @Test
+    public void testNonBlockingDispatch() {
+        try {
+            OrderChangeFeed feed = orderBatch.getChangeFeed();
+            CountDownLatch release = new CountDownLatch(1);
+            List<OrderChange> slow = new ArrayList<>();
+            OrderChangeListener blocked = batch -> {
+                release.await(10, TimeUnit.SECONDS);
+                slow.addAll(batch);
+            };
+            feed.addListener(blocked);
+            feed.addListener(batch -> {
+                throw new IllegalStateException("[ERROR] A failing listener");
+            });
+
+            // The listener is stuck, yet the batch keeps changing at full speed.
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1));
+                order.addOrderItem(p2, 1);
+                orderBatch.addOrder(order);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(slow.isEmpty());
+            release.countDown();
+            feed.flush();
+            assertEquals(2000, slow.size());
+            assertEquals(2000, changes.size());
+            assertTrue(feed.getListenerFailures() > 0);
+            assertEquals("[ERROR] A failing listener", feed.getLastListenerFailure().getMessage());
+
+            assertTrue(feed.removeListener(blocked));
+            assertFalse(feed.removeListener(blocked));
+            orderBatch.remove();
+            feed.flush();
+            assertEquals(2000, slow.size());
+            assertEquals(3000, changes.size());
+            assertThrows(NullPointerException.class, () -> feed.addListener(null));
+
+            OrderBatch silent = new OrderBatch("Silent", "No listeners");
+            assertFalse(silent.getChangeFeed().isEnabled());
+            silent.addOrder(new Order(user, LocalDate.of(2023, 1, 1)));
+            silent.getChangeFeed().flush();
+            assertEquals(0, silent.getChangeFeed().getListenerFailures());
+            assertNull(silent.getChangeFeed().getLastListenerFailure());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testNonBlockingDispatch");
+        }
+    }
+
+    @Test
+    public void testListenerError() {
+        try {
+            OrderChangeFeed feed = orderBatch.getChangeFeed();
+            AtomicBoolean thrown = new AtomicBoolean();
+            feed.addListener(batch -> {
+                if (thrown.compareAndSet(false, true)) {
+                    throw new StackOverflowError("[ERROR] A broken listener");
+                }
+            });
+            Order order = new Order(user, LocalDate.of(2023, 1, 1));
+            orderBatch.addOrder(order);
+            feed.flush();
+            assertTrue(thrown.get());
+
+            // The error ends the dispatching thread, but neither the feed nor flush get stuck.
+            order.addOrderItem(p1, 1);
+            order.addOrderItem(p2, 1);
+            feed.flush();
+            assertEquals(List.of(OrderChangeType.ORDER_ADDED, OrderChangeType.LINE_ADDED,
+                    OrderChangeType.LINE_ADDED), changes.stream().map(OrderChange::getType)
+                    .collect(Collectors.toList()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testListenerError");
+        }
+    }
+
+    @Test
+    public void testScansWhilePublishing() {
+        try {
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 64; ++i) {
+                Order order = Order.concurrent(user, LocalDate.of(2023, 4, 1));
+                order.addOrderItem(p1, 1);
+                orderBatch.addOrder(order);
+                orders.add(order);
+            }
+            AtomicInteger updates = new AtomicInteger();
+            AtomicInteger scans = new AtomicInteger();
+            long deadline = System.nanoTime() + 500_000_000L;
+            Thread writer = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        Order order = orders.get(updates.get() % orders.size());
+                        order.addOrderItem(p2, 1);
+                        order.removeOrderItem(p2, 1);
+                        updates.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            Thread reader = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    orderBatch.getTaxSummary();
+                    orderBatch.getLargestOrders();
+                    scans.incrementAndGet();
+                }
+            });
+            writer.setDaemon(true);
+            reader.setDaemon(true);
+            writer.start();
+            reader.start();
+            writer.join(10000);
+            reader.join(10000);
+
+            // Changes published to the feed while scans read the same orders must not deadlock.
+            assertFalse(writer.isAlive());
+            assertFalse(reader.isAlive());
+            assertTrue(updates.get() > 0);
+            assertTrue(scans.get() > 0);
+            orderBatch.getChangeFeed().flush();
+            assertEquals(64 * 2 + 2 * updates.get(), changes.size());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testScansWhilePublishing");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the size and speed of the binary order codec with Java serialization of the same data.
+ * The domain classes are not serializable, so Java serialization is given serializable copies of the
+ * orders sharing users and products the same way. Excluded from the regular test run; launch it with
+ * {@code gradle benchmark}, optionally setting the number of orders with
+ * {@code -Dbenchmark.orders=100000}.
+ */
+@Tag("benchmark")
+public class OrderCodecBenchmark {
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void benchmarkCodec() throws Exception {
+        String[] sizes = System.getProperty("benchmark.orders", "100000").split(",");
+        int count = Integer.parseInt(sizes[0].trim());
+        Random random = new Random(23);
+        User[] users = new User[100];
+        for (int i = 0; i < users.length; ++i) {
+            users[i] = new User("User #" + i, "user" + i + "@uoc.edu", LocalDate.of(1990, 1, 1).plusDays(i),
+                    Gender.FEMALE, new Address("Rambla del Poblenou", 100 + i, "08018", "Barcelona"));
+        }
+        Product[] products = new Product[200];
+        for (int i = 0; i < products.length; ++i) {
+            products[i] = new DigitalBook("E-book #" + i, 1 + random.nextInt(4000) / 100.0);
+        }
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            Order order = new Order(users[random.nextInt(users.length)],
+                    LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)));
+            for (int j = 1 + random.nextInt(3); j > 0; --j) {
+                order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+            }
+            orders.add(order);
+        }
+        ArrayList<OrderData> copies = OrderData.copyOf(orders);
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            ByteBuffer encoded = OrderCodec.encode(orders);
+            long encodedAt = System.nanoTime();
+            List<Order> decoded = OrderCodec.decode(encoded);
+            long decodedAt = System.nanoTime();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(copies);
+            }
+            long serializedAt = System.nanoTime();
+            Object deserialized;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                deserialized = in.readObject();
+            }
+            long deserializedAt = System.nanoTime();
+
+            assertEquals(count, decoded.size());
+            assertEquals(count, ((List<?>) deserialized).size());
+            System.out.printf("%,d orders: codec %,d bytes, encode %.1f ms, decode %.1f ms | "
+                            + "serialization %,d bytes, write %.1f ms, read %.1f ms%n",
+                    count, encoded.limit(), (encodedAt - start) / 1e6, (decodedAt - encodedAt) / 1e6,
+                    bytes.size(), (serializedAt - decodedAt) / 1e6, (deserializedAt - serializedAt) / 1e6);
+        }
+    }
+
+    private record UserData(String name, String email, LocalDate birthDate, Gender gender, String street,
+                            int number, String zipCode, String city) implements Serializable {
+    }
+
+    private record ProductData(ProductCategory category, String name, double price) implements Serializable {
+    }
+
+    private record LineData(ProductData product, int quantity) implements Serializable {
+    }
+
+    private record OrderData(String id, UserData user, LocalDate orderDate, LocalDate deliveryDate,
+                             ArrayList<LineData> lines) implements Serializable {
+
+        static ArrayList<OrderData> copyOf(List<Order> orders) {
+            Map<User, UserData> users = new IdentityHashMap<>();
+            Map<Product, ProductData> products = new IdentityHashMap<>();
+            ArrayList<OrderData> copies = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                UserData user = users.computeIfAbsent(order.getUser(), u -> new UserData(u.getName(),
+                        u.getEmail(), u.getBirthDate(), u.getGender(), u.getAddress().getStreet(),
+                        u.getAddress().getNumber(), u.getAddress().getZipCode(), u.getAddress().getCity()));
+                ArrayList<LineData> lines = new ArrayList<>();
+                for (OrderItem orderItem : order.getOrderItems()) {
+                    ProductData product = products.computeIfAbsent(orderItem.getProduct(),
+                            p -> new ProductData(p.getCategory(), p.getName(), p.getPrice()));
+                    lines.add(new LineData(product, orderItem.getQuantity()));
+                }
+                copies.add(new OrderData(order.getId(), user, order.getOrderDate(), order.getDeliveryDate(), lines));
+            }
+            return copies;
+        }
+    }
+}
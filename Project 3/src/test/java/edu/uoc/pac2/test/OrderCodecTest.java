@@ -0,0 +1,129 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderCodecTest {
+
+    User user;
+    User otherUser;
+    Product p1;
+    Product p2;
+    Product p3;
+    List<Order> orders;
+
+    @BeforeEach
+    public void orderCodecSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE,
+                    new Address("Rambla del Poblenou", 156, "08018", "Barcelona"));
+            otherUser = new User("Ricard Raigada", "rraigada@uoc.edu", LocalDate.of(1990, 2, 1), Gender.MALE);
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set (6 units)", 6.5, 1.9, 0.2);
+            p3 = new DigitalBook("Dungeons and Dragons - Monster Manual", 24.99);
+
+            orders = new ArrayList<>();
+            Order order1 = new Order(user, LocalDate.of(2023, 4, 1));
+            order1.addOrderItem(p1, 2);
+            order1.addOrderItem(p2, 3);
+            order1.setDeliveryDate(LocalDate.of(2023, 4, 6));
+            orders.add(order1);
+            Order order2 = Order.concurrent(otherUser, LocalDate.of(2023, 4, 2));
+            order2.addOrderItem(p3, 1);
+            order2.addOrderItem(p1, 1);
+            orders.add(order2);
+            orders.add(new Order(user, null));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the order codec set up");
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ByteBuffer buffer = OrderCodec.encode(orders);
+        List<Order> decoded = OrderCodec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(orders.size(), decoded.size());
+        for (int i = 0; i < orders.size(); ++i) {
+            Order order = orders.get(i);
+            Order copy = decoded.get(i);
+            assertEquals(order.getId(), copy.getId());
+            assertEquals(order.getOrderDate(), copy.getOrderDate());
+            assertEquals(order.getDeliveryDate(), copy.getDeliveryDate());
+            assertEquals(order.isConcurrent(), copy.isConcurrent());
+            assertEquals(order.bill(), copy.bill());
+            assertEquals(order.getUser().getEmail(), copy.getUser().getEmail());
+        }
+        assertEquals("Barcelona", decoded.get(0).getUser().getAddress().getCity());
+        assertNull(decoded.get(1).getUser().getAddress());
+        assertEquals(9.5, ((PrintedBook) decoded.get(0).getOrderItems()[0].getProduct()).getPrintingCost());
+    }
+
+    @Test
+    public void testSharedObjectsStayShared() {
+        List<Order> decoded = OrderCodec.decode(OrderCodec.encode(orders));
+        assertSame(decoded.get(0).getUser(), decoded.get(2).getUser());
+        assertNotSame(decoded.get(0).getUser(), decoded.get(1).getUser());
+        assertSame(decoded.get(0).getOrderItems()[0].getProduct(), decoded.get(1).getOrderItems()[1].getProduct());
+    }
+
+    @Test
+    public void testCompactEncoding() {
+        try {
+            List<Order> many = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(i % 365));
+                order.addOrderItem(i % 2 == 0 ? p1 : p2, 1 + i % 5);
+                order.addOrderItem(p3, 1);
+                many.add(order);
+            }
+            ByteBuffer buffer = OrderCodec.encode(many);
+            assertTrue(buffer.remaining() < 1000 * 24, "Encoded size: " + buffer.remaining());
+            assertEquals(1000, OrderCodec.decode(buffer).size());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testCompactEncoding");
+        }
+    }
+
+    @Test
+    public void testEncodeIntoBuffer() {
+        int size = OrderCodec.encode(orders).remaining();
+        ByteBuffer small = ByteBuffer.allocate(size - 1);
+        assertThrows(BufferOverflowException.class, () -> OrderCodec.encode(orders, small));
+        assertEquals(0, small.position());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size + 10);
+        buffer.position(10);
+        OrderCodec.encode(orders, buffer);
+        assertEquals(size + 10, buffer.position());
+        buffer.position(10);
+        assertEquals(orders.size(), OrderCodec.decode(buffer).size());
+    }
+
+    @Test
+    public void testInvalidMessages() {
+        ByteBuffer buffer = OrderCodec.encode(orders);
+        ByteBuffer truncated = buffer.duplicate().limit(buffer.limit() - 3);
+        assertThrows(BufferUnderflowException.class, () -> OrderCodec.decode(truncated));
+        ByteBuffer wrongVersion = buffer.duplicate().put(0, (byte) 9);
+        assertThrows(IllegalArgumentException.class, () -> OrderCodec.decode(wrongVersion));
+        assertThrows(IllegalArgumentException.class, () -> OrderCodec.decode(ByteBuffer.wrap(new byte[]{1, 0x7F})));
+        byte[] corrupt = new byte[16];
+        Arrays.fill(corrupt, (byte) 0x80);
+        corrupt[0] = 1;
+        assertThrows(IllegalArgumentException.class, () -> OrderCodec.decode(ByteBuffer.wrap(corrupt)));
+    }
+}
@@ -0,0 +1,120 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderDateIndexTest {
+
+    User user;
+    OrderBatch orderBatch;
+    LocalDate firstDate;
+
+    @BeforeEach
+    public void dateIndexSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            orderBatch = new OrderBatch("All orders", "Every order of the year", OrderBatch.UNBOUNDED);
+            firstDate = LocalDate.of(2023, 1, 1);
+            Random random = new Random(9);
+            for (int i = 0; i < 5000; ++i) {
+                orderBatch.addOrder(new Order(user, firstDate.plusDays(random.nextInt(365))));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the date index set up");
+        }
+    }
+
+    @Test
+    public void testRangeQueries() {
+        LocalDate from = LocalDate.of(2023, 3, 1);
+        LocalDate to = LocalDate.of(2023, 3, 31);
+        List<Order> expected = orderBatch.getOrders().stream()
+                .filter(order -> !order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(to))
+                .collect(Collectors.toList());
+        List<Order> march = orderBatch.ordersBetween(from, to);
+        assertEquals(expected.size(), march.size());
+        assertTrue(march.containsAll(expected));
+        for (int i = 1; i < march.size(); ++i) {
+            assertFalse(march.get(i).getOrderDate().isBefore(march.get(i - 1).getOrderDate()));
+        }
+        assertTrue(orderBatch.ordersBetween(to, from).isEmpty());
+
+        long after = orderBatch.getOrders().stream().filter(order -> order.getOrderDate().isAfter(to)).count();
+        assertEquals(after, orderBatch.ordersAfter(to).size());
+    }
+
+    @Test
+    public void testIndexFollowsOrders() {
+        Order order = orderBatch.getOrders().get(0);
+        LocalDate future = LocalDate.of(2030, 1, 1);
+        order.setOrderDate(future);
+        assertEquals(List.of(order), orderBatch.ordersAfter(LocalDate.of(2029, 12, 31)));
+        assertFalse(orderBatch.ordersBetween(firstDate, firstDate.plusDays(365)).contains(order));
+
+        assertTrue(orderBatch.remove(order));
+        assertTrue(orderBatch.ordersAfter(LocalDate.of(2029, 12, 31)).isEmpty());
+        order.setOrderDate(firstDate);
+        assertFalse(orderBatch.ordersBetween(firstDate, firstDate).contains(order));
+
+        orderBatch.remove();
+        assertTrue(orderBatch.ordersAfter(firstDate.minusDays(1)).isEmpty());
+    }
+
+    @Test
+    public void testMarkDelivered() {
+        try {
+            LocalDate from = LocalDate.of(2023, 6, 1);
+            LocalDate deliveryDate = LocalDate.of(2023, 6, 15);
+            Order late = new Order(user, LocalDate.of(2023, 6, 20));
+            orderBatch.addOrder(late);
+
+            int expected = orderBatch.ordersBetween(from, deliveryDate).size();
+            assertEquals(expected, orderBatch.markDelivered(from, LocalDate.of(2023, 12, 31), deliveryDate));
+            assertNull(late.getDeliveryDate());
+            for (Order order : orderBatch.getOrders()) {
+                boolean inRange = !order.getOrderDate().isBefore(from) && !order.getOrderDate().isAfter(deliveryDate);
+                assertEquals(inRange ? deliveryDate : null, order.getDeliveryDate());
+            }
+            assertThrows(NullPointerException.class, () -> orderBatch.markDelivered(from, deliveryDate, null));
+
+            long after = orderBatch.ordersAfter(LocalDate.of(2023, 10, 1)).size();
+            assertEquals(after, orderBatch.deliverOrdersAfterDate(LocalDate.of(2023, 10, 1)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testMarkDelivered");
+        }
+    }
+
+    @Test
+    public void testManyConcurrentOrdersOnOneDay() {
+        try {
+            Product product = new DigitalBook("E-book", 10);
+            OrderBatch sameDay = new OrderBatch("One day", "Orders of a single day", OrderBatch.UNBOUNDED);
+            LocalDate day = LocalDate.of(2023, 4, 1);
+            for (long id = 1; id <= 5000; ++id) {
+                long orderId = id << 32 | id;
+                Order order = Order.concurrent(user, day);
+                order.addOrderItem(product, 1);
+                sameDay.addOrder(new Order(user, day, () -> orderId));
+                sameDay.addOrder(order);
+            }
+            assertEquals(10000, sameDay.ordersBetween(day, day).size());
+            List<Order> orders = sameDay.ordersBetween(day, day);
+            for (int i = 1; i < orders.size(); ++i) {
+                assertTrue(orders.get(i - 1).getNumericId() < orders.get(i).getNumericId());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testManyConcurrentOrdersOnOneDay");
+        }
+    }
+}
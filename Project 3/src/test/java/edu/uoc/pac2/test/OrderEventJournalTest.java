@@ -0,0 +1,177 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderEventJournalTest {
+
+    User user;
+    Product p1;
+    Product p2;
+    InMemoryEventSink sink;
+
+    @BeforeEach
+    public void journalSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set (6 units)", 6.5, 1.9, 0.2);
+            sink = new InMemoryEventSink();
+            OrderEventJournal.getDefault().addSink(sink);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the journal set up");
+        }
+    }
+
+    @AfterEach
+    public void journalTearDown() {
+        OrderEventJournal.getDefault().removeSink(sink);
+    }
+
+    @Test
+    public void testLifecycleEvents() {
+        try {
+            LocalDate orderDate = LocalDate.of(2023, 4, 1);
+            Order order = new Order(user, orderDate);
+            order.addOrderItem(p1, 2);
+            order.addOrderItem(p2, 3);
+            order.removeOrderItem(p2, 1);
+            order.removeOrderItem(p1, 5);
+            order.setDeliveryDate(LocalDate.of(2023, 4, 3));
+            OrderBatch orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system");
+            orderBatch.addOrder(order);
+            orderBatch.remove(order);
+
+            OrderEventJournal.getDefault().flush();
+            List<OrderEvent> events = eventsOf(Set.of(order));
+            assertEquals(7, events.size());
+
+            assertEquals(OrderEventType.CREATED, events.get(0).getType());
+            assertEquals(orderDate, events.get(0).getDate());
+            assertEquals(OrderEventType.ITEM_ADDED, events.get(1).getType());
+            assertEquals(p1, events.get(1).getProduct());
+            assertEquals(2, events.get(1).getQuantity());
+            assertEquals(OrderEventType.ITEM_ADDED, events.get(2).getType());
+            assertEquals(OrderEventType.ITEM_REMOVED, events.get(3).getType());
+            assertEquals(p2, events.get(3).getProduct());
+            assertEquals(1, events.get(3).getQuantity());
+            assertEquals(OrderEventType.ITEM_REMOVED, events.get(4).getType());
+            assertEquals(2, events.get(4).getQuantity());
+            assertEquals(OrderEventType.DELIVERED, events.get(5).getType());
+            assertEquals(LocalDate.of(2023, 4, 3), events.get(5).getDate());
+            assertEquals(OrderEventType.REMOVED_FROM_BATCH, events.get(6).getType());
+            assertSame(orderBatch, events.get(6).getBatch());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testLifecycleEvents");
+        }
+    }
+
+    @Test
+    public void testConcurrentPublishers() throws InterruptedException {
+        int threads = 4;
+        int ordersPerThread = 20000;
+        Set<Order> created = ConcurrentHashMap.newKeySet();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < ordersPerThread; ++i) {
+                        Order order = new Order(user, LocalDate.of(2023, 1, 1));
+                        order.addOrderItem(p1, 1);
+                        created.add(order);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        OrderEventJournal.getDefault().flush();
+        List<OrderEvent> events = eventsOf(created);
+        assertEquals(2 * threads * ordersPerThread, events.size());
+
+        Set<Order> seen = ConcurrentHashMap.newKeySet();
+        for (OrderEvent event : events) {
+            if (event.getType() == OrderEventType.CREATED) {
+                assertTrue(seen.add(event.getOrder()));
+            } else {
+                assertEquals(OrderEventType.ITEM_ADDED, event.getType());
+                assertTrue(seen.contains(event.getOrder()));
+            }
+        }
+    }
+
+    @Test
+    public void testFileSink() {
+        try {
+            Path file = Files.createTempFile("order-events", ".log");
+            FileEventSink fileSink = new FileEventSink(file);
+            OrderEventJournal.getDefault().addSink(fileSink);
+            Order order = new Order(user, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(p1, 2);
+            OrderEventJournal.getDefault().removeSink(fileSink);
+            fileSink.close();
+
+            List<String> lines = Files.readAllLines(file).stream()
+                    .filter(line -> line.contains(order.getId()))
+                    .collect(Collectors.toList());
+            assertEquals(List.of(
+                    "[CREATED] Order " + order.getId() + " | Date: 2023-04-01",
+                    "[ITEM_ADDED] Order " + order.getId() + " | Product: Dungeons and Dragons - Game Master Book | Quantity: 2"),
+                    lines);
+            Files.delete(file);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testFileSink");
+        }
+    }
+
+    @Test
+    public void testFailingSink() {
+        OrderEventSink failing = event -> {
+            throw new IllegalStateException("[ERROR] The sink is down");
+        };
+        try {
+            OrderEventJournal journal = OrderEventJournal.getDefault();
+            journal.addSink(failing);
+            long failures = journal.getSinkFailures();
+            Order order = new Order(user, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(p1, 2);
+            journal.flush();
+
+            assertTrue(journal.getSinkFailures() >= failures + 2);
+            assertEquals("[ERROR] The sink is down", journal.getLastSinkFailure().getMessage());
+            // The other sinks still receive every event.
+            assertEquals(2, eventsOf(Set.of(order)).size());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testFailingSink");
+        } finally {
+            OrderEventJournal.getDefault().removeSink(failing);
+        }
+    }
+
+    private List<OrderEvent> eventsOf(Set<Order> orders) {
+        return sink.getEvents().stream()
+                .filter(event -> orders.contains(event.getOrder()))
+                .collect(Collectors.toList());
+    }
+}
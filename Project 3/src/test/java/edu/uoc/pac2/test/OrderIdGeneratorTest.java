@@ -0,0 +1,76 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderIdGeneratorTest {
+
+    @Test
+    public void testIdsAreUniqueAcrossThreads() throws InterruptedException {
+        int threads = 8;
+        int idsPerThread = 100000;
+        long[][] ids = new long[threads][idsPerThread];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            long[] out = ids[t];
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < out.length; ++i) {
+                    out[i] = OrderIdGenerator.timeOrdered().nextId();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Set<Long> unique = new HashSet<>();
+        for (long[] threadIds : ids) {
+            for (int i = 0; i < threadIds.length; ++i) {
+                assertTrue(threadIds[i] > 0);
+                assertTrue(unique.add(threadIds[i]));
+                if (i > 0) {
+                    assertTrue(threadIds[i] > threadIds[i - 1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIdsAreTimeOrdered() throws InterruptedException {
+        long first = OrderIdGenerator.timeOrdered().nextId();
+        Thread.sleep(2);
+        long[] second = new long[1];
+        Thread other = new Thread(() -> second[0] = OrderIdGenerator.timeOrdered().nextId());
+        other.start();
+        other.join();
+        assertTrue(second[0] > first);
+    }
+
+    @Test
+    public void testOrderIdText() {
+        try {
+            User user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            AtomicLong sequence = new AtomicLong(0xABCL);
+            Order order = new Order(user, LocalDate.of(2023, 4, 1), sequence::incrementAndGet);
+
+            assertEquals(0xABDL, order.getNumericId());
+            assertEquals("0000000000000abd", order.getId());
+            assertSame(order.getId(), order.getId());
+
+            Order other = new Order(user, LocalDate.of(2023, 4, 1));
+            assertEquals(16, other.getId().length());
+            assertEquals(other.getNumericId(), Long.parseUnsignedLong(other.getId(), 16));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testOrderIdText");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the bulk import of a CSV order file against reading it line by line and adding every
+ * order with {@link OrderBatch#addOrder(Order)}. Excluded from the regular test run; launch it with
+ * {@code gradle benchmark}, optionally setting the file size with {@code -Dbenchmark.orders=1000000}.
+ */
+@Tag("benchmark")
+public class OrderImporterBenchmark {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void benchmarkImport() throws Exception {
+        int count = Integer.getInteger("benchmark.orders", 200000);
+        Random random = new Random(31);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            users.add(new User("User " + i, "user" + i + "@uoc.edu", LocalDate.of(1990, 1, 1), Gender.FEMALE));
+        }
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            products.add(new DigitalBook("E-book #" + i, 1 + random.nextInt(4000) / 100.0));
+        }
+        Path file = directory.resolve("orders.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("id,user,orderDate,deliveryDate,product,quantity\n");
+            for (int i = 1; i <= count; ++i) {
+                writer.write(i + ",user" + random.nextInt(users.size()) + "@uoc.edu,"
+                        + LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)) + ",");
+                for (int j = 1 + random.nextInt(3); j > 0; --j) {
+                    writer.write("," + products.get(random.nextInt(products.size())).getName()
+                            + "," + (1 + random.nextInt(5)));
+                }
+                writer.write('\n');
+            }
+        }
+
+        long start = System.nanoTime();
+        OrderBatch sequential = new OrderBatch("Sequential", "One order at a time", OrderBatch.UNBOUNDED);
+        Map<String, User> usersByEmail = users.stream().collect(Collectors.toMap(User::getEmail, Function.identity()));
+        Map<String, Product> productsByName = products.stream()
+                .collect(Collectors.toMap(Product::getName, Function.identity()));
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            reader.readLine();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split(",");
+                Order order = new Order(usersByEmail.get(fields[1]), LocalDate.parse(fields[2]));
+                for (int i = 4; i + 1 < fields.length; i += 2) {
+                    order.addOrderItem(productsByName.get(fields[i]), Integer.parseInt(fields[i + 1]));
+                }
+                sequential.addOrder(order);
+            }
+        }
+        long sequentialNanos = System.nanoTime() - start;
+        assertEquals(count, sequential.size());
+        sequential = null;
+
+        OrderImporter importer = new OrderImporter(products, users);
+        OrderBatch imported = new OrderBatch("Imported", "Bulk import", OrderBatch.UNBOUNDED);
+        start = System.nanoTime();
+        ImportReport report = importer.importOrders(file, OrderImporter.Format.CSV, imported);
+        long importNanos = System.nanoTime() - start;
+        assertEquals(count, report.getImportedOrders());
+
+        System.out.printf("%,d orders (%,d bytes, %d CPUs): line by line in %.0f ms, bulk import in %.0f ms%n",
+                count, Files.size(file), Runtime.getRuntime().availableProcessors(),
+                sequentialNanos / 1e6, importNanos / 1e6);
+    }
+}
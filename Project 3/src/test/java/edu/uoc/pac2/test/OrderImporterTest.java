@@ -0,0 +1,220 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderImporterTest {
+
+    @TempDir
+    Path directory;
+    User user;
+    User otherUser;
+    Product p1;
+    Product p2;
+    Product p3;
+    OrderImporter importer;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void importerSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            otherUser = new User("Ricard Raigada", "rraigada@uoc.edu", LocalDate.of(1990, 2, 1), Gender.MALE);
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set, 6 units", 6.5, 1.9, 0.2);
+            p3 = new DigitalBook("Dungeons and Dragons - Monster Manual", 24.99);
+            importer = new OrderImporter(List.of(p1, p2, p3), List.of(user, otherUser));
+            orderBatch = new OrderBatch("Imported orders", "Nightly import", OrderBatch.UNBOUNDED);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the importer set up");
+        }
+    }
+
+    @Test
+    public void testImportCsv() {
+        try {
+            Path file = directory.resolve("orders.csv");
+            Files.writeString(file, String.join("\r\n",
+                    "id,user,orderDate,deliveryDate,product,quantity",
+                    "101,jmotger@uoc.edu,2023-04-01,2023-04-05,Dungeons and Dragons - Game Master Book,2,"
+                            + "\"Dice set, 6 units\",3",
+                    ",rraigada@uoc.edu,2023-04-02,,Dungeons and Dragons - Monster Manual,1",
+                    "",
+                    "102,nobody@uoc.edu,2023-04-02,,Dungeons and Dragons - Monster Manual,1",
+                    "103,jmotger@uoc.edu,2023-04-02,,Unknown book,1",
+                    "104,jmotger@uoc.edu,2023-04-02,,Dungeons and Dragons - Monster Manual,0",
+                    "105,jmotger@uoc.edu,yesterday,,Dungeons and Dragons - Monster Manual,1",
+                    "106,jmotger@uoc.edu,2023-04-02,2023-04-01,Dungeons and Dragons - Monster Manual,1",
+                    "101,jmotger@uoc.edu,2023-04-03,,Dungeons and Dragons - Monster Manual,1"));
+
+            ImportReport report = importer.importOrders(file, OrderImporter.Format.CSV, orderBatch);
+
+            assertEquals(8, report.getRows());
+            assertEquals(2, report.getImportedOrders());
+            assertEquals(6, report.getRejectedRows());
+            assertEquals(List.of(5L, 6L, 7L, 8L, 9L, 10L),
+                    report.getErrors().stream().map(ImportReport.RowError::getLine).collect(Collectors.toList()));
+            assertTrue(report.getErrors().get(0).getMessage().contains("nobody@uoc.edu"));
+            assertTrue(report.getErrors().get(5).getMessage().contains("Duplicate"));
+
+            Order order = orderBatch.findById("101");
+            assertNotNull(order);
+            assertEquals(LocalDate.of(2023, 4, 5), order.getDeliveryDate());
+            assertEquals(3, order.getOrderItem(p2).getQuantity());
+            assertEquals(Money.ofCents(2 * 3500 + 3 * 650), order.getTotal());
+            assertEquals(1, orderBatch.auditUnits(p3));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testImportCsv");
+        }
+    }
+
+    @Test
+    public void testImportJsonLines() {
+        try {
+            Path file = directory.resolve("orders.jsonl");
+            Files.writeString(file, String.join("\n",
+                    "{\"id\": \"201\", \"user\": \"jmotger@uoc.edu\", \"orderDate\": \"2023-04-01\", "
+                            + "\"lines\": [{\"product\": \"Dice set, 6 units\", \"quantity\": 4}]}",
+                    "{\"user\": \"rraigada@uoc.edu\", \"orderDate\": \"2023-04-02\", \"deliveryDate\": null, "
+                            + "\"lines\": [{\"product\": \"Dungeons and Dragons - Monster Manual\", \"quantity\": 2}]}",
+                    "{\"user\": \"jmotger@uoc.edu\", \"orderDate\": \"2023-04-02\", \"lines\": [",
+                    "{\"user\": \"jmotger@uoc.edu\", \"orderDate\": \"2023-04-02\", \"lines\": []}",
+                    "[1, 2, 3]",
+                    ""));
+
+            ImportReport report = importer.importOrders(file, OrderImporter.Format.JSON_LINES, orderBatch);
+
+            assertEquals(5, report.getRows());
+            assertEquals(2, report.getImportedOrders());
+            assertEquals(3, report.getRejectedRows());
+            assertEquals(3, report.getErrors().get(0).getLine());
+            assertEquals(4, orderBatch.findById("201").getOrderItem(p2).getQuantity());
+            assertEquals(2, orderBatch.auditUnits(p3));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testImportJsonLines");
+        }
+    }
+
+    @Test
+    public void testJsonIdsAndNesting() {
+        try {
+            String lines = ", \"user\": \"jmotger@uoc.edu\", \"orderDate\": \"2023-04-01\", "
+                    + "\"lines\": [{\"product\": \"Dice set, 6 units\", \"quantity\": 1}]}";
+            Path file = directory.resolve("orders.jsonl");
+            Files.writeString(file, String.join("\n",
+                    "{\"id\": 4660" + lines,
+                    "{\"id\": \"ff\"" + lines,
+                    "{\"id\": 1e3" + lines,
+                    "{\"id\": true" + lines,
+                    "{\"id\": 10, \"extra\": " + "[".repeat(100000) + "]".repeat(100000) + lines,
+                    "{\"id\": 10" + lines));
+
+            ImportReport report = importer.importOrders(file, OrderImporter.Format.JSON_LINES, orderBatch);
+
+            // Numeric ids are taken as they are, not as the text form of an id.
+            assertEquals(6, report.getRows());
+            assertEquals(3, report.getImportedOrders());
+            assertEquals(List.of(3L, 4L, 5L),
+                    report.getErrors().stream().map(ImportReport.RowError::getLine).collect(Collectors.toList()));
+            assertTrue(report.getErrors().get(2).getMessage().contains("nested"));
+            assertNotNull(orderBatch.findById(Order.formatId(4660)));
+            assertNotNull(orderBatch.findById("1234"));
+            assertNotNull(orderBatch.findById(Order.formatId(255)));
+            assertNotNull(orderBatch.findById(Order.formatId(10)));
+            assertNull(orderBatch.findById("10"));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testJsonIdsAndNesting");
+        }
+    }
+
+    @Test
+    public void testParallelChunks() {
+        try {
+            Path file = directory.resolve("orders.csv");
+            StringBuilder sb = new StringBuilder("id,user,orderDate,deliveryDate,product,quantity\n");
+            for (int i = 1; i <= 20000; ++i) {
+                String email = i % 2 == 0 ? "jmotger@uoc.edu" : "rraigada@uoc.edu";
+                if (i % 1000 == 0) {
+                    email = "nobody@uoc.edu";
+                }
+                sb.append(i).append(',').append(email).append(",2023-01-").append(10 + i % 20).append(",,")
+                        .append(i % 3 == 0 ? p1.getName() : p3.getName()).append(',').append(1 + i % 4).append('\n');
+            }
+            Files.writeString(file, sb);
+
+            ImportReport report = importer.withParallelism(4).withChunkSize(4096)
+                    .importOrders(file, OrderImporter.Format.CSV, orderBatch);
+
+            assertEquals(20000, report.getRows());
+            assertEquals(19980, report.getImportedOrders());
+            assertEquals(19980, orderBatch.size());
+            List<Long> lines = report.getErrors().stream().map(ImportReport.RowError::getLine)
+                    .collect(Collectors.toList());
+            assertEquals(20, lines.size());
+            for (int i = 0; i < lines.size(); ++i) {
+                assertEquals(1000L * (i + 1) + 1, lines.get(i));
+            }
+            assertNotNull(orderBatch.findById("999"));
+            assertNull(orderBatch.findById("1000"));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testParallelChunks");
+        }
+    }
+
+    @Test
+    public void testFullBatch() {
+        try {
+            Path file = directory.resolve("orders.csv");
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1; i <= 10; ++i) {
+                sb.append(i).append(",jmotger@uoc.edu,2023-01-01,,").append(p3.getName()).append(",1\n");
+            }
+            Files.writeString(file, sb);
+            OrderBatch small = new OrderBatch("Small", "Five orders at most", 5);
+
+            ImportReport report = importer.importOrders(file, OrderImporter.Format.CSV, small);
+
+            assertEquals(5, report.getImportedOrders());
+            assertEquals(5, report.getRejectedRows());
+            assertTrue(small.isFull());
+            assertTrue(report.getErrors().stream().allMatch(error -> error.getMessage().contains("full")));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testFullBatch");
+        }
+    }
+
+    @Test
+    public void testAddOrders() {
+        try {
+            Order order1 = new Order(user, LocalDate.of(2023, 4, 1));
+            order1.addOrderItem(p1, 1);
+            Order order2 = new Order(user, LocalDate.of(2023, 4, 2));
+            order2.addOrderItem(p1, 2);
+
+            assertEquals(2, orderBatch.addOrders(List.of(order1, order2, order1)));
+            assertEquals(2, orderBatch.size());
+            assertEquals(3, orderBatch.auditUnits(p1));
+            assertEquals(List.of(order1), orderBatch.ordersBetween(LocalDate.of(2023, 4, 1), LocalDate.of(2023, 4, 1)));
+            assertThrows(NullPointerException.class, () -> orderBatch.addOrders(java.util.Arrays.asList(order1, null)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testAddOrders");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the mutation throughput of a journaled order batch and the time to replay it. Excluded
+ * from the regular test run; launch it with {@code gradle benchmark}, optionally setting the number of
+ * orders with {@code -Dbenchmark.orders=1000000}.
+ */
+@Tag("benchmark")
+public class OrderJournalBenchmark {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void benchmarkJournal() throws Exception {
+        String[] sizes = System.getProperty("benchmark.orders", "1000000").split(",");
+        int count = Integer.parseInt(sizes[0].trim());
+        User user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+        Random random = new Random(17);
+        Product[] products = new Product[200];
+        for (int i = 0; i < products.length; ++i) {
+            products[i] = new DigitalBook("E-book #" + i, 1 + random.nextInt(4000) / 100.0);
+        }
+        Order[] orders = new Order[count];
+        for (int i = 0; i < count; ++i) {
+            orders[i] = new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)));
+        }
+
+        String report;
+        long mutations = 0;
+        long start;
+        long elapsed;
+        OrderBatch plain = new OrderBatch("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+        Random plainRandom = new Random(18);
+        start = System.nanoTime();
+        for (int i = 0; i < count; ++i) {
+            Order order = new Order(user, orders[i].getOrderDate());
+            plain.addOrder(order);
+            for (int j = 1 + plainRandom.nextInt(3); j > 0; --j) {
+                order.addOrderItem(products[plainRandom.nextInt(products.length)], 1 + plainRandom.nextInt(5));
+            }
+        }
+        elapsed = System.nanoTime() - start;
+        System.out.printf("%,d orders built without a journal in %.1f ms%n", count, elapsed / 1e6);
+        plain = null;
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            OrderBatch orderBatch = journal.replay("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+            start = System.nanoTime();
+            for (Order order : orders) {
+                orderBatch.addOrder(order);
+                mutations++;
+                for (int j = 1 + random.nextInt(3); j > 0; --j) {
+                    order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+                    mutations++;
+                }
+            }
+            journal.sync();
+            elapsed = System.nanoTime() - start;
+            report = orderBatch.toString();
+        }
+        System.out.printf("%,d mutations journaled in %.1f ms (%,.0f mutations/s, synced)%n",
+                mutations, elapsed / 1e6, mutations / (elapsed / 1e9));
+
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            start = System.nanoTime();
+            OrderBatch replayed = journal.replay("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+            elapsed = System.nanoTime() - start;
+            System.out.printf("%,d orders replayed in %.1f ms%n", replayed.size(), elapsed / 1e6);
+            assertEquals(report, replayed.toString());
+        }
+    }
+}
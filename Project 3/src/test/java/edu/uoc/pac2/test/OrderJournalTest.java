@@ -0,0 +1,312 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderJournalTest {
+
+    @TempDir
+    Path directory;
+    User user;
+    Product p1;
+    Product p2;
+    Product p3;
+
+    @BeforeEach
+    public void orderJournalSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE,
+                    new Address("Rambla del Poblenou", 156, "08018", "Barcelona"));
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set (6 units)", 6.5, 1.9, 0.2);
+            p3 = new DigitalBook("Dungeons and Dragons - Monster Manual", 24.99);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the order journal set up");
+        }
+    }
+
+    @Test
+    public void testScansWhileJournaling() {
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            OrderBatch orderBatch = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 64; ++i) {
+                Order order = Order.concurrent(user, LocalDate.of(2023, 4, 1));
+                order.addOrderItem(p1, 1);
+                orderBatch.addOrder(order);
+                orders.add(order);
+            }
+            AtomicInteger changes = new AtomicInteger();
+            AtomicInteger scans = new AtomicInteger();
+            long deadline = System.nanoTime() + 500_000_000L;
+            Thread writer = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        Order order = orders.get(changes.get() % orders.size());
+                        order.addOrderItem(p2, 1);
+                        order.removeOrderItem(p2, 1);
+                        changes.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            Thread reader = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    orderBatch.getTaxSummary();
+                    orderBatch.getLargestOrders();
+                    scans.incrementAndGet();
+                }
+            });
+            writer.setDaemon(true);
+            reader.setDaemon(true);
+            writer.start();
+            reader.start();
+            writer.join(10000);
+            reader.join(10000);
+
+            // Changes reported to the journal while scans read the same orders must not deadlock.
+            assertFalse(writer.isAlive());
+            assertFalse(reader.isAlive());
+            assertTrue(changes.get() > 0);
+            assertTrue(scans.get() > 0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testScansWhileJournaling");
+        }
+    }
+
+    @Test
+    public void testRemovedWhileAdded() {
+        try {
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 2000; ++i) {
+                Order order = Order.concurrent(user, LocalDate.of(2023, 4, 1));
+                order.addOrderItem(p1, 1);
+                orders.add(order);
+            }
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                OrderBatch orderBatch = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+                Thread adder = new Thread(() -> orders.forEach(orderBatch::addOrder));
+                Thread remover = new Thread(() -> {
+                    for (Order order : orders) {
+                        while (orderBatch.removeById(order.getId()) == null) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                });
+                adder.start();
+                remover.start();
+                adder.join();
+                remover.join();
+
+                // Orders removed while they were being added are left alone by the batch.
+                for (Order order : orders) {
+                    order.addOrderItem(p2, 1);
+                }
+                assertTrue(orderBatch.isEmpty());
+                assertEquals(0, orderBatch.auditUnits(p1));
+                assertEquals(0, orderBatch.auditUnits(p2));
+                assertEquals(0, orderBatch.getSketches().getOrderCount());
+            }
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                assertTrue(journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED).isEmpty());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testRemovedWhileAdded");
+        }
+    }
+
+    @Test
+    public void testReplayRestoresBatch() {
+        try {
+            String report;
+            String removedId;
+            String deliveredId;
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                OrderBatch orderBatch = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+                assertTrue(orderBatch.isEmpty());
+
+                Order order1 = new Order(user, LocalDate.of(2023, 4, 1));
+                order1.addOrderItem(p1, 2);
+                orderBatch.addOrder(order1);
+                order1.addOrderItem(p2, 3);
+                order1.removeOrderItem(p1, 1);
+
+                Order order2 = Order.concurrent(user, LocalDate.of(2023, 4, 2));
+                orderBatch.addOrder(order2);
+                order2.addOrderItem(p3, 4);
+                order2.getOrderItem(p3).setQuantity(2);
+                order2.setOrderDate(LocalDate.of(2023, 4, 5));
+                order2.setDeliveryDate(LocalDate.of(2023, 4, 9));
+                deliveredId = order2.getId();
+
+                Order order3 = new Order(user, LocalDate.of(2023, 4, 3));
+                order3.addOrderItem(p1, 1);
+                orderBatch.addOrder(order3);
+                orderBatch.remove(order3);
+                removedId = order3.getId();
+                order3.addOrderItem(p2, 1);
+
+                report = orderBatch.toString();
+            }
+
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                OrderBatch replayed = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+                assertEquals(2, replayed.size());
+                assertEquals(report, replayed.toString());
+                assertFalse(replayed.existsById(removedId));
+                Order delivered = replayed.findById(deliveredId);
+                assertTrue(delivered.isConcurrent());
+                assertEquals(LocalDate.of(2023, 4, 9), delivered.getDeliveryDate());
+                assertEquals(2, delivered.getOrderItems()[0].getQuantity());
+                assertEquals(user.getAddress().getCity(), delivered.getUser().getAddress().getCity());
+
+                replayed.remove();
+            }
+
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                assertTrue(journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED).isEmpty());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testReplayRestoresBatch");
+        }
+    }
+
+    @Test
+    public void testSegmentRotation() {
+        try {
+            String report;
+            try (OrderJournal journal = OrderJournal.open(directory, 4096, 0)) {
+                OrderBatch orderBatch = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+                for (int i = 0; i < 2000; ++i) {
+                    Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(i % 365));
+                    orderBatch.addOrder(order);
+                    order.addOrderItem(i % 2 == 0 ? p1 : p2, 1 + i % 5);
+                }
+                report = orderBatch.toString();
+            }
+            try (var segments = Files.list(directory)) {
+                assertTrue(segments.count() > 1);
+            }
+            try (OrderJournal journal = OrderJournal.open(directory, 4096, 0)) {
+                OrderBatch replayed = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+                assertEquals(2000, replayed.size());
+                assertEquals(report, replayed.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testSegmentRotation");
+        }
+    }
+
+    @Test
+    public void testTornRecordEndsReplay() {
+        try {
+            String kept;
+            Path segment = directory.resolve("00000000.journal");
+            long end;
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                OrderBatch orderBatch = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+                Order order = new Order(user, LocalDate.of(2023, 4, 1));
+                order.addOrderItem(p1, 2);
+                orderBatch.addOrder(order);
+                journal.sync();
+                kept = orderBatch.toString();
+                end = lastNonZero(segment);
+                order.addOrderItem(p2, 7);
+            }
+
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{0x55}), lastNonZero(segment));
+            }
+            assertTrue(lastNonZero(segment) > end);
+
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                OrderBatch replayed = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+                assertEquals(kept, replayed.toString());
+                replayed.getOrders().get(0).addOrderItem(p3, 1);
+                kept = replayed.toString();
+            }
+            try (OrderJournal journal = OrderJournal.open(directory)) {
+                assertEquals(kept, journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED).toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testTornRecordEndsReplay");
+        }
+    }
+
+    @Test
+    public void testConcurrentSync() {
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            OrderBatch orderBatch = journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+            AtomicInteger failures = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 200; ++i) {
+                            Order order = new Order(user, LocalDate.of(2023, 4, 1));
+                            orderBatch.addOrder(order);
+                            order.addOrderItem(p1, 1);
+                            journal.sync();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        failures.incrementAndGet();
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(0, failures.get());
+            assertEquals(1600, orderBatch.size());
+            assertEquals(1600, orderBatch.auditUnits(p1));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testConcurrentSync");
+        }
+    }
+
+    @Test
+    public void testReplayOnlyOnce() {
+        try (OrderJournal journal = OrderJournal.open(directory)) {
+            journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED);
+            assertThrows(IllegalStateException.class,
+                    () -> journal.replay("All orders", "Journaled orders", OrderBatch.UNBOUNDED));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testReplayOnlyOnce");
+        }
+    }
+
+    private static long lastNonZero(Path file) throws Exception {
+        byte[] bytes = Files.readAllBytes(file);
+        int last = bytes.length - 1;
+        while (last >= 0 && bytes[last] == 0) {
+            last--;
+        }
+        return last;
+    }
+}
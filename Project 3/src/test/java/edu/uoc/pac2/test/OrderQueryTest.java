@@ -0,0 +1,187 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderQueryTest {
+
+    User user1;
+    User user2;
+    Product[] products;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void querySetUp() {
+        try {
+            user1 = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            user2 = new User("Ricard Raigada", "rraigada@uoc.edu", LocalDate.of(1990, 2, 1), Gender.MALE);
+            products = new Product[10];
+            for (int i = 0; i < products.length; ++i) {
+                products[i] = new DigitalBook("E-book #" + i, 5 + i);
+            }
+            orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system",
+                    OrderBatch.UNBOUNDED);
+            Random random = new Random(23);
+            for (int i = 0; i < 500; ++i) {
+                Order order = new Order(random.nextBoolean() ? user1 : user2,
+                        LocalDate.of(2023, 1, 1).plusDays(random.nextInt(90)));
+                for (int j = 1 + random.nextInt(3); j > 0; --j) {
+                    order.addOrderItem(products[random.nextInt(products.length - 1)], 1 + random.nextInt(4));
+                }
+                if (random.nextInt(3) == 0) {
+                    order.setDeliveryDate(order.getOrderDate().plusDays(2));
+                }
+                orderBatch.addOrder(order);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the query set up");
+        }
+    }
+
+    @Test
+    public void testFiltersMatchScan() {
+        try {
+            LocalDate from = LocalDate.of(2023, 2, 1);
+            LocalDate to = LocalDate.of(2023, 2, 28);
+            OrderQuery query = orderBatch.query().placedBetween(from, to).byUser(user1).containing(products[3])
+                    .totalAtLeast(Money.of(20)).undelivered();
+            Predicate<Order> expected = order -> !order.getOrderDate().isBefore(from)
+                    && !order.getOrderDate().isAfter(to) && order.getUser().equals(user1)
+                    && order.getOrderItem(products[3]) != null && order.getTotal().getCents() >= 2000
+                    && order.getDeliveryDate() == null;
+            List<Order> matching = orderBatch.getOrders().stream().filter(expected)
+                    .sorted(Comparator.comparing(Order::getOrderDate).thenComparingLong(Order::getNumericId))
+                    .collect(Collectors.toList());
+
+            assertFalse(matching.isEmpty());
+            assertEquals(matching, query.stream().collect(Collectors.toList()));
+            assertEquals(matching, query.toList());
+            assertEquals(matching.size(), query.count());
+            assertEquals(matching.stream().map(Order::getId).collect(Collectors.toList()),
+                    query.select(Order::getId).collect(Collectors.toList()));
+            assertEquals("date index 2023-02-01 to 2023-02-28 | filter user, product, total, delivery",
+                    query.explain());
+
+            OrderQuery delivered = orderBatch.query().delivered()
+                    .totalBetween(Money.of(10), Money.of(30)).where(order -> order.getItemCount() > 1);
+            assertEquals(orderBatch.getOrders().stream().filter(order -> order.getDeliveryDate() != null
+                            && order.getTotal().getCents() >= 1000 && order.getTotal().getCents() <= 3000
+                            && order.getItemCount() > 1).count(), delivered.count());
+            assertEquals("scan | filter total, delivery, predicate", delivered.explain());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testFiltersMatchScan");
+        }
+    }
+
+    @Test
+    public void testPushdown() {
+        try {
+            Order order = orderBatch.getOrders().get(17);
+            OrderQuery byId = orderBatch.query().withId(order.getId());
+            assertEquals(List.of(order), byId.toList());
+            assertTrue(byId.explain().startsWith("id lookup"));
+            assertEquals(0, byId.byUser(order.getUser().equals(user1) ? user2 : user1).count());
+            assertEquals(0, byId.placedAfter(order.getOrderDate()).count());
+
+            OrderQuery unsold = orderBatch.query().containing(products[products.length - 1]);
+            assertEquals("empty", unsold.explain());
+            assertEquals(0, unsold.count());
+
+            OrderQuery inverted = orderBatch.query().placedBetween(LocalDate.of(2023, 3, 1),
+                    LocalDate.of(2023, 1, 1));
+            assertEquals("empty", inverted.explain());
+            assertTrue(inverted.toList().isEmpty());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testPushdown");
+        }
+    }
+
+    @Test
+    public void testOrderingAndLimit() {
+        try {
+            Comparator<Order> byTotal = Comparator.comparing(Order::getTotal).reversed()
+                    .thenComparingLong(Order::getNumericId);
+            List<Order> largest = orderBatch.getOrders().stream().sorted(byTotal).limit(5)
+                    .collect(Collectors.toList());
+            OrderQuery top = orderBatch.query().orderBy(byTotal).limit(5);
+            assertEquals(largest, top.toList());
+            assertEquals(largest, top.stream().collect(Collectors.toList()));
+            assertEquals("scan | top 5", top.explain());
+            assertEquals(orderBatch.getOrders().stream().sorted(byTotal).collect(Collectors.toList()),
+                    orderBatch.query().orderBy(byTotal).toList());
+
+            LocalDate from = LocalDate.of(2023, 1, 10);
+            OrderQuery firstAfter = orderBatch.query().placedAfter(from).orderByDate().limit(3);
+            assertEquals(orderBatch.ordersAfter(from).subList(0, 3), firstAfter.toList());
+            assertEquals("date index 2023-01-11 to +999999999-12-31 | limit 3", firstAfter.explain());
+            assertEquals(orderBatch.ordersBetween(LocalDate.MIN, LocalDate.MAX),
+                    orderBatch.query().orderByDate().toList());
+            assertEquals(3, orderBatch.query().limit(3).count());
+            assertTrue(orderBatch.query().orderBy(byTotal).limit(0).toList().isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> orderBatch.query().limit(-1));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testOrderingAndLimit");
+        }
+    }
+
+    @Test
+    public void testLazyEvaluation() {
+        try {
+            OrderQuery query = orderBatch.query().placedBetween(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 1));
+            Stream<Order> stream = query.stream();
+            Order order = new Order(user1, LocalDate.of(2024, 1, 1));
+            order.addOrderItem(products[0], 1);
+            orderBatch.addOrder(order);
+            assertEquals(List.of(order), stream.collect(Collectors.toList()));
+
+            int[] visited = {0};
+            assertTrue(orderBatch.query().where(o -> ++visited[0] > 0).stream().findFirst().isPresent());
+            // Scans stop after the shard holding the first match, far from reading the whole batch.
+            assertTrue(visited[0] < orderBatch.size() / 10);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testLazyEvaluation");
+        }
+    }
+
+    @Test
+    public void testParallelScan() {
+        try {
+            OrderBatch large = new OrderBatch("Large", "Many orders", OrderBatch.UNBOUNDED);
+            Random random = new Random(23);
+            for (int i = 0; i < 20000; ++i) {
+                Order order = new Order(random.nextBoolean() ? user1 : user2, LocalDate.of(2023, 1, 1));
+                order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(10));
+                large.addOrder(order);
+            }
+            OrderQuery query = large.query().byUser(user2).totalAtLeast(Money.of(50));
+            assertEquals("parallel scan | filter user, total", query.explain());
+            long expected = large.getOrders().stream()
+                    .filter(order -> order.getUser() == user2 && order.getTotal().getCents() >= 5000).count();
+            assertEquals(expected, query.count());
+            assertEquals(expected, query.toList().size());
+            assertEquals(expected, query.stream().count());
+            Comparator<Order> byId = Comparator.comparingLong(Order::getNumericId);
+            assertEquals(large.getOrders().stream().sorted(byId).limit(10).collect(Collectors.toList()),
+                    large.query().orderBy(byId).limit(10).toList());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testParallelScan");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the sketch answers of a large batch against computing them exactly from its orders.
+ * Excluded from the regular test run; launch it with {@code gradle benchmark}, optionally setting the
+ * batch size with {@code -Dbenchmark.orders=1000000}.
+ */
+@Tag("benchmark")
+public class OrderSketchesBenchmark {
+
+    @Test
+    public void benchmarkSketches() throws Exception {
+        int count = Integer.getInteger("benchmark.orders", 500000);
+        Random random = new Random(22);
+        User[] users = new User[count / 5];
+        for (int i = 0; i < users.length; ++i) {
+            users[i] = new User("User " + i, "user" + i + "@uoc.edu", LocalDate.of(1990, 1, 1), Gender.FEMALE);
+        }
+        Product[] products = new Product[2000];
+        for (int i = 0; i < products.length; ++i) {
+            products[i] = new DigitalBook("E-book #" + i, 1 + random.nextInt(4000) / 100.0);
+        }
+        OrderBatch orderBatch = new OrderBatch("Benchmark", count + " orders", OrderBatch.UNBOUNDED);
+        for (int i = 0; i < count; ++i) {
+            Order order = new Order(users[random.nextInt(users.length)], LocalDate.of(2023, 1, 1));
+            int product = (int) Math.min(products.length - 1, Math.abs(random.nextGaussian()) * 100);
+            order.addOrderItem(products[product], 1 + random.nextInt(5));
+            orderBatch.addOrder(order);
+        }
+
+        long start = System.nanoTime();
+        List<Order> orders = orderBatch.getOrders();
+        Set<String> emails = new HashSet<>();
+        for (Order order : orders) {
+            emails.add(order.getUser().getEmail());
+        }
+        List<Product> top = Arrays.stream(products)
+                .sorted(Comparator.comparingLong(orderBatch::auditUnits).reversed()).limit(10)
+                .collect(Collectors.toList());
+        long[] values = orders.stream().mapToLong(order -> order.getTotal().getCents()).sorted().toArray();
+        long exactNanos = System.nanoTime() - start;
+
+        OrderSketches sketches = orderBatch.getSketches();
+        long distinct = 0;
+        List<Product> estimatedTop = null;
+        Money median = null;
+        long sketchNanos = 0;
+        for (int round = 0; round < 200; ++round) {
+            // The first half of the rounds warms the queries up; the second half is timed.
+            start = System.nanoTime();
+            distinct = sketches.estimateDistinctUsers();
+            estimatedTop = List.copyOf(sketches.topProducts(10).keySet());
+            median = sketches.estimateOrderValue(0.5);
+            if (round >= 100) {
+                sketchNanos += (System.nanoTime() - start) / 100;
+            }
+        }
+
+        long overlap = estimatedTop.stream().filter(top::contains).count();
+        assertTrue(overlap >= 8);
+        System.out.printf("%,d orders: exact answers in %.1f ms (%,d users, median %s), sketches in %.3f ms "
+                        + "(%,d users, median %s, %d of the top 10 products)%n",
+                count, exactNanos / 1e6, emails.size(), Money.ofCents(values[(values.length - 1) / 2]),
+                sketchNanos / 1e6, distinct, median, overlap);
+    }
+}
@@ -0,0 +1,253 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderSketchesTest {
+
+    User[] users;
+    Product[] products;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void sketchesSetUp() {
+        try {
+            users = new User[20000];
+            for (int i = 0; i < users.length; ++i) {
+                users[i] = new User("User " + i, "user" + i + "@uoc.edu", LocalDate.of(1990, 1, 1), Gender.FEMALE);
+            }
+            products = new Product[500];
+            for (int i = 0; i < products.length; ++i) {
+                products[i] = new DigitalBook("E-book #" + i, 1 + i / 10.0);
+            }
+            orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system",
+                    OrderBatch.UNBOUNDED);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the sketches set up");
+        }
+    }
+
+    @Test
+    public void testDistinctUsers() {
+        try {
+            Random random = new Random(22);
+            for (int i = 0; i < 50000; ++i) {
+                Order order = new Order(users[i < users.length ? i : random.nextInt(users.length)],
+                        LocalDate.of(2023, 1, 1));
+                order.addOrderItem(products[0], 1);
+                orderBatch.addOrder(order);
+            }
+            assertEquals(users.length, orderBatch.getSketches().estimateDistinctUsers(), users.length * 0.03);
+
+            OrderBatch small = new OrderBatch("Small", "A few users");
+            for (int i = 0; i < 100; ++i) {
+                Order order = new Order(users[i % 10], LocalDate.of(2023, 1, 1));
+                small.addOrder(order);
+            }
+            assertEquals(10, small.getSketches().estimateDistinctUsers());
+            small.remove();
+            assertEquals(0, small.getSketches().estimateDistinctUsers());
+            assertEquals(new User("Other", "user7@uoc.edu", LocalDate.of(1990, 1, 1), Gender.MALE).hashCode(),
+                    users[7].hashCode());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testDistinctUsers");
+        }
+    }
+
+    @Test
+    public void testTopProducts() {
+        try {
+            Random random = new Random(22);
+            for (int i = 0; i < 20000; ++i) {
+                Order order = new Order(users[random.nextInt(users.length)], LocalDate.of(2023, 1, 1));
+                // Products 0 to 9 are heavy hitters, the rest share the remaining units evenly.
+                int product = random.nextInt(2) == 0 ? random.nextInt(10) : 10 + random.nextInt(products.length - 10);
+                order.addOrderItem(products[product], 1 + random.nextInt(3));
+                orderBatch.addOrder(order);
+            }
+            OrderSketches sketches = orderBatch.getSketches();
+            Map<Product, Long> top = sketches.topProducts(10);
+            assertEquals(10, top.size());
+            long totalUnits = 0;
+            for (Product product : products) {
+                totalUnits += orderBatch.auditUnits(product);
+            }
+            long previous = Long.MAX_VALUE;
+            for (Map.Entry<Product, Long> entry : top.entrySet()) {
+                assertTrue(Arrays.asList(products).subList(0, 10).contains(entry.getKey()));
+                long exact = orderBatch.auditUnits(entry.getKey());
+                assertTrue(entry.getValue() >= exact);
+                assertTrue(entry.getValue() - exact <= totalUnits * 0.01);
+                assertTrue(entry.getValue() <= previous);
+                previous = entry.getValue();
+            }
+
+            for (Order order : orderBatch.ordersBetween(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 1))) {
+                order.removeOrderItem(products[0], 100);
+            }
+            assertFalse(sketches.topProducts(10).containsKey(products[0]));
+            assertTrue(sketches.estimateUnits(products[0]) <= totalUnits * 0.01);
+            assertThrows(IllegalArgumentException.class, () -> sketches.topProducts(-1));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testTopProducts");
+        }
+    }
+
+    @Test
+    public void testOrderValueQuantiles() {
+        try {
+            Random random = new Random(22);
+            List<Long> values = new ArrayList<>();
+            for (int i = 0; i < 10000; ++i) {
+                Order order = new Order(users[i], LocalDate.of(2023, 1, 1));
+                order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(20));
+                orderBatch.addOrder(order);
+                values.add(order.getTotal().getCents());
+            }
+            values.sort(null);
+            OrderSketches sketches = orderBatch.getSketches();
+            assertEquals(10000, sketches.getOrderCount());
+            for (double quantile : new double[]{0, 0.25, 0.5, 0.9, 0.99, 1}) {
+                long exact = values.get((int) (quantile * (values.size() - 1)));
+                assertEquals(exact, sketches.estimateOrderValue(quantile).getCents(), exact * 0.01 + 1);
+            }
+            assertEquals(Money.ZERO, new OrderBatch("Empty", "No orders").getSketches().estimateOrderValue(0.5));
+            assertThrows(IllegalArgumentException.class, () -> sketches.estimateOrderValue(1.5));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testOrderValueQuantiles");
+        }
+    }
+
+    @Test
+    public void testOrderValuesFollowChanges() {
+        try {
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) {
+                Order order = i % 2 == 0 ? new Order(users[i], LocalDate.of(2023, 1, 1))
+                        : Order.concurrent(users[i], LocalDate.of(2023, 1, 1));
+                order.addOrderItem(products[0], 1);
+                orderBatch.addOrder(order);
+                orders.add(order);
+            }
+            OrderSketches sketches = orderBatch.getSketches();
+            long small = orders.get(0).getTotal().getCents();
+            assertEquals(small, sketches.estimateOrderValue(1).getCents(), small * 0.01 + 1);
+
+            // Orders that grow after joining the batch are sketched with their new value.
+            for (Order order : orders.subList(0, 600)) {
+                order.addOrderItem(products[1], 50);
+            }
+            long large = orders.get(0).getTotal().getCents();
+            assertEquals(1000, sketches.getOrderCount());
+            assertEquals(small, sketches.estimateOrderValue(0.3).getCents(), small * 0.01 + 1);
+            assertEquals(large, sketches.estimateOrderValue(0.5).getCents(), large * 0.01 + 1);
+
+            // Removed orders are no longer sketched, nor are their later changes.
+            for (Order order : orders.subList(0, 600)) {
+                orderBatch.remove(order);
+                order.removeOrderItem(products[1], 50);
+            }
+            assertEquals(400, sketches.getOrderCount());
+            assertEquals(small, sketches.estimateOrderValue(1).getCents(), small * 0.01 + 1);
+
+            orderBatch.remove();
+            assertEquals(0, sketches.getOrderCount());
+            orderBatch.addOrder(orders.get(0));
+            assertEquals(1, sketches.getOrderCount());
+            assertEquals(small, sketches.estimateOrderValue(0.5).getCents(), small * 0.01 + 1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testOrderValuesFollowChanges");
+        }
+    }
+
+    @Test
+    public void testOrderValuesFollowPriceChanges() {
+        try {
+            Product book = new DigitalBook("Priced book", 12.0);
+            Product extra = new DigitalBook("Priced extra", 1.0);
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 100; ++i) {
+                Order order = i % 2 == 0 ? new Order(users[i], LocalDate.of(2023, 1, 1))
+                        : Order.concurrent(users[i], LocalDate.of(2023, 1, 1));
+                order.addOrderItem(book, 1);
+                orderBatch.addOrder(order);
+                orders.add(order);
+            }
+            OrderSketches sketches = orderBatch.getSketches();
+            assertEquals(1200, sketches.estimateOrderValue(0.5).getCents(), 13);
+
+            // A line added at one price and removed at another leaves the order value where it was.
+            for (Order order : orders) {
+                order.addOrderItem(extra, 10);
+            }
+            extra.setPrice(100.0);
+            for (Order order : orders) {
+                order.removeOrderItem(extra, 10);
+            }
+            assertEquals(100, sketches.getOrderCount());
+            assertEquals(1200, sketches.estimateOrderValue(0).getCents(), 13);
+            assertEquals(1200, sketches.estimateOrderValue(1).getCents(), 13);
+
+            // Orders are valued at the current prices, even those that did not change since.
+            book.setPrice(30.0);
+            assertEquals(3000, sketches.estimateOrderValue(0.5).getCents(), 31);
+            for (Order order : orders.subList(0, 50)) {
+                order.addOrderItem(extra, 1);
+            }
+            extra.setPrice(50.0);
+            for (Order order : orders.subList(0, 50)) {
+                orderBatch.remove(order);
+            }
+            assertEquals(50, sketches.getOrderCount());
+            assertEquals(3000, sketches.estimateOrderValue(0).getCents(), 31);
+            assertEquals(3000, sketches.estimateOrderValue(1).getCents(), 31);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testOrderValuesFollowPriceChanges");
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        try {
+            OrderBatch north = new OrderBatch("North", "Orders from the north", OrderBatch.UNBOUNDED);
+            OrderBatch south = new OrderBatch("South", "Orders from the south", OrderBatch.UNBOUNDED);
+            OrderBatch all = new OrderBatch("All", "Orders from everywhere", OrderBatch.UNBOUNDED);
+            for (int i = 0; i < 6000; ++i) {
+                Order order = new Order(users[i % 4000], LocalDate.of(2023, 1, 1));
+                order.addOrderItem(products[i < 3000 ? 1 : 2], 1 + i % 5);
+                (i < 3000 ? north : south).addOrder(order);
+                Order copy = new Order(users[i % 4000], LocalDate.of(2023, 1, 1));
+                copy.addOrderItem(products[i < 3000 ? 1 : 2], 1 + i % 5);
+                all.addOrder(copy);
+            }
+
+            OrderSketches merged = north.getSketches().merge(south.getSketches());
+            OrderSketches expected = all.getSketches();
+            assertEquals(expected.estimateDistinctUsers(), merged.estimateDistinctUsers());
+            assertEquals(expected.estimateUnits(products[1]), merged.estimateUnits(products[1]));
+            assertEquals(expected.topProducts(2), merged.topProducts(2));
+            assertEquals(expected.estimateOrderValue(0.5), merged.estimateOrderValue(0.5));
+            assertEquals(6000, merged.getOrderCount());
+            assertEquals(3000, north.getSketches().getOrderCount());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testMerge");
+        }
+    }
+}
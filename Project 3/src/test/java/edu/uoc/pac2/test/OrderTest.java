@@ -0,0 +1,191 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderTest {
+
+    User user;
+    Order order;
+    Product p1;
+    Product p2;
+
+    @BeforeEach
+    public void orderSetUp() {
+        try {
+            LocalDate birthDate = LocalDate.of(1995, 6, 13);
+            user = new User("Quim Motger", "jmotger@uoc.edu", birthDate, Gender.MALE);
+            order = new Order(user, LocalDate.of(2023, 4, 1));
+
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set (6 units)", 6.5, 1.9, 0.2);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the order constructors");
+        }
+    }
+
+    @Test
+    public void testRunningTotals() {
+        try {
+            assertEquals(0.0, order.getTotalPrice());
+            assertEquals(Money.ZERO, order.getTax());
+
+            order.addOrderItem(p1, 2);
+            order.addOrderItem(p2, 3);
+            assertEquals(89.5, order.getTotalPrice());
+            assertEquals(Money.ofCents(1553), order.getTax());
+
+            order.removeOrderItem(p2, 1);
+            assertEquals(83.0, order.getTotalPrice());
+
+            order.getOrderItems()[0].setQuantity(1);
+            assertEquals(48.0, order.getTotalPrice());
+
+            order.removeOrderItem(p1, 1);
+            assertEquals(13.0, order.getTotalPrice());
+            assertEquals(Money.ofCents(226), order.getTax());
+            assertEquals(2.26, order.getTotalTax());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testRunningTotals");
+        }
+    }
+
+    @Test
+    public void testTotalsFollowPriceChanges() {
+        try {
+            order.addOrderItem(p1, 2);
+            order.addOrderItem(p2, 1);
+            assertEquals(76.5, order.getTotalPrice());
+
+            p1.setPrice(40.0);
+            assertEquals(86.5, order.getTotalPrice());
+            assertEquals(Money.ofCents(1501), order.getTax());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testTotalsFollowPriceChanges");
+        }
+    }
+
+    @Test
+    public void testLinesChangedBeforeRepricing() {
+        try {
+            Order concurrent = Order.concurrent(user, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(p1, 2);
+            concurrent.addOrderItem(p1, 2);
+            concurrent.addOrderItem(p2, 1);
+
+            // Lines changed after a price change and before the totals are read are still counted once.
+            p1.setPrice(40.0);
+            order.addOrderItem(p1, 1);
+            concurrent.removeOrderItem(p1, 1);
+            assertEquals(120.0, order.getTotalPrice());
+            assertEquals(46.5, concurrent.getTotalPrice());
+
+            // Too many price changes to tell which products changed: every line is repriced.
+            for (int i = 0; i < 3000; ++i) {
+                p2.setPrice(6.0 + i % 7);
+            }
+            p2.setPrice(7.0);
+            order.addOrderItem(p2, 2);
+            assertEquals(134.0, order.getTotalPrice());
+            assertEquals(47.0, concurrent.getTotalPrice());
+            Order fresh = new Order(user, LocalDate.of(2023, 4, 1));
+            fresh.addOrderItem(p1, 1);
+            fresh.addOrderItem(p2, 1);
+            assertEquals(fresh.getTax(), concurrent.getTax());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testLinesChangedBeforeRepricing");
+        }
+    }
+
+    @Test
+    public void testAddSameProductMergesLines() {
+        try {
+            assertTrue(order.addOrderItem(p1, 2));
+            assertTrue(order.addOrderItem(p2, 1));
+            assertTrue(order.addOrderItem(new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5), 3));
+
+            assertEquals(2, order.getItemCount());
+            assertEquals(p1, order.getOrderItems()[0].getProduct());
+            assertEquals(5, order.getOrderItems()[0].getQuantity());
+            assertEquals(181.5, order.getTotalPrice());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testAddSameProductMergesLines");
+        }
+    }
+
+    @Test
+    public void testManyOrderLines() {
+        try {
+            for (int i = 0; i < 5000; ++i) {
+                assertTrue(order.addOrderItem(new DigitalBook("E-book #" + i, 1.5), 2));
+            }
+            assertEquals(5000, order.getItemCount());
+            assertEquals(15000.0, order.getTotalPrice());
+
+            assertTrue(order.removeOrderItem(new DigitalBook("E-book #10", 1.5), 2));
+            assertFalse(order.removeOrderItem(new DigitalBook("E-book #10", 1.5), 2));
+            assertEquals(4999, order.getItemCount());
+            assertEquals("E-book #11", order.getOrderItems()[10].getProduct().getName());
+            assertEquals(14997.0, order.getTotalPrice());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testManyOrderLines");
+        }
+    }
+
+    @Test
+    public void testExactMoneyTotals() {
+        try {
+            Product p3 = new DigitalBook("Pocket guide", 0.1);
+            for (int i = 0; i < 3; ++i) {
+                order.addOrderItem(p3, 1);
+            }
+            assertEquals(Money.ofCents(30), order.getTotal());
+            assertEquals(0.3, order.getTotalPrice());
+
+            p3.setUnitPrice(Money.ofCents(1999));
+            assertEquals(19.99, p3.getPrice());
+            assertEquals(Money.of(59.97), order.getTotal());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testExactMoneyTotals");
+        }
+    }
+
+    @Test
+    public void testItemViews() {
+        try {
+            order.addOrderItem(p1, 2);
+            order.addOrderItem(p2, 3);
+
+            Collection<OrderItem> items = order.getItems();
+            assertEquals(2, items.size());
+            assertThrows(UnsupportedOperationException.class, items::clear);
+            assertSame(items, order.getItems());
+
+            List<String> names = new ArrayList<>();
+            order.forEachItem(orderItem -> names.add(orderItem.getProduct().getName()));
+            assertEquals(List.of(p1.getName(), p2.getName()), names);
+
+            assertEquals(3, order.getOrderItem(p2).getQuantity());
+            assertNull(order.getOrderItem(new DigitalBook("Unknown", 1.0)));
+            assertNull(order.getOrderItem(null));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testItemViews");
+        }
+    }
+}
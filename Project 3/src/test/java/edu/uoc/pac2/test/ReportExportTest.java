@@ -0,0 +1,109 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReportExportTest {
+
+    User user;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void reportSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            orderBatch = new OrderBatch("All orders", "Every order of the year", OrderBatch.UNBOUNDED);
+            Random random = new Random(21);
+            for (int i = 0; i < 20000; ++i) {
+                Order order = i % 10 == 0 ? Order.concurrent(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)))
+                        : new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(365)));
+                for (int j = random.nextInt(4); j >= 0; --j) {
+                    String name = "Product, series " + random.nextInt(50) + " - Cançó 🎲";
+                    order.addOrderItem(new DigitalBook(name, (1 + random.nextInt(500000)) / 100.0), 1 + random.nextInt(40));
+                }
+                orderBatch.addOrder(order);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the report set up");
+        }
+    }
+
+    @Test
+    public void testReportOrder() {
+        List<Order> sortedOrders = new ArrayList<>(orderBatch.getOrders());
+        sortedOrders.sort(Comparator.comparing(Order::getOrderDate).thenComparingLong(Order::getNumericId));
+        StringBuilder sb = new StringBuilder();
+        for (Order order : sortedOrders) {
+            sb.append("###").append(System.lineSeparator());
+            sb.append(order.bill().replaceAll("(Tax: \\d+\\.\\d)0\\b", "$1")).append(System.lineSeparator());
+        }
+        sb.append("###");
+        assertEquals(sb.toString(), orderBatch.toString());
+    }
+
+    @Test
+    public void testWriterMatchesToString() {
+        try {
+            StringWriter writer = new StringWriter();
+            orderBatch.writeReport(writer);
+            assertEquals(orderBatch.toString(), writer.toString());
+
+            Path file = Files.createTempFile("order-report", ".txt");
+            try (Writer fileWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                orderBatch.writeReport(fileWriter);
+            }
+            assertEquals(orderBatch.toString(), Files.readString(file, StandardCharsets.UTF_8));
+            Files.delete(file);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testWriterMatchesToString");
+        }
+    }
+
+    @Test
+    public void testChannelMatchesToString() {
+        try {
+            Path file = Files.createTempFile("order-report", ".txt");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                orderBatch.writeReport(channel);
+            }
+            assertArrayEquals(orderBatch.toString().getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file));
+            Files.delete(file);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testChannelMatchesToString");
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        try {
+            OrderBatch empty = new OrderBatch("Empty", "No orders");
+            StringWriter writer = new StringWriter();
+            empty.writeReport(writer);
+            assertEquals("###", writer.toString());
+            assertEquals("###", empty.toString());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testEmptyBatch");
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevenueRollupTest {
+
+    User user;
+    Product[] products;
+    OrderBatch orderBatch;
+
+    @BeforeEach
+    public void rollupSetUp() {
+        try {
+            user = new User("Quim Motger", "jmotger@uoc.edu", LocalDate.of(1995, 6, 13), Gender.MALE);
+            products = new Product[20];
+            for (int i = 0; i < products.length; ++i) {
+                products[i] = i % 2 == 0
+                        ? new PrintedBook("Book #" + i, 5 + i, 1.5)
+                        : new DigitalBook("E-book #" + i, 2.5 + i);
+            }
+            orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system",
+                    OrderBatch.UNBOUNDED);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the rollup set up");
+        }
+    }
+
+    @Test
+    public void testRollupsFollowOrderChanges() {
+        try {
+            LocalDate monday = LocalDate.of(2023, 4, 3);
+            Order order1 = new Order(user, monday);
+            order1.addOrderItem(products[0], 2);
+            Order order2 = new Order(user, monday.plusDays(2));
+            order2.addOrderItem(products[1], 1);
+            orderBatch.addOrder(order1);
+            orderBatch.addOrder(order2);
+
+            RevenueRollup week = orderBatch.revenueBetween(monday, monday.plusDays(6));
+            assertEquals(2, week.getOrderCount());
+            assertEquals(3, week.getUnits());
+            assertEquals(Money.of(2 * 5 + 3.5), week.getRevenue());
+            assertEquals(Money.ofCents(Money.includedTax(1350, Billable.TAX_BASIS_POINTS)), week.getTax());
+            assertEquals(1, orderBatch.revenueBetween(monday, monday).getOrderCount());
+
+            order1.addOrderItem(products[2], 1);
+            order1.removeOrderItem(products[0], 1);
+            order2.getOrderItem(products[1]).setQuantity(3);
+            week = orderBatch.revenueBetween(monday, monday.plusDays(6));
+            assertEquals(5, week.getUnits());
+            assertEquals(Money.of(5 + 7 + 3 * 3.5), week.getRevenue());
+
+            order2.setOrderDate(monday.plusDays(7));
+            assertEquals(1, orderBatch.revenueBetween(monday, monday.plusDays(6)).getOrderCount());
+            assertEquals(Money.of(3 * 3.5), orderBatch.revenueBetween(monday.plusDays(7), monday.plusDays(7))
+                    .getRevenue());
+
+            products[1].setPrice(4);
+            assertEquals(Money.of(12), orderBatch.revenueBetween(monday.plusDays(7), monday.plusDays(7))
+                    .getRevenue());
+
+            orderBatch.remove(order1);
+            order1.addOrderItem(products[0], 10);
+            week = orderBatch.revenueBetween(monday, monday.plusDays(6));
+            assertEquals(0, week.getOrderCount());
+            assertEquals(0, week.getUnits());
+            assertEquals(Money.ZERO, week.getRevenue());
+
+            orderBatch.remove();
+            assertEquals(0, orderBatch.revenueBetween(LocalDate.MIN, LocalDate.MAX).getOrderCount());
+            assertThrows(NullPointerException.class, () -> orderBatch.revenueBetween(null, monday));
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testRollupsFollowOrderChanges");
+        }
+    }
+
+    @Test
+    public void testRangesMatchOrders() {
+        try {
+            Random random = new Random(21);
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 2000; ++i) {
+                Order order = new Order(user, LocalDate.of(2023, 1, 1).plusDays(random.nextInt(400)));
+                order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+                orderBatch.addOrder(order);
+                orders.add(order);
+            }
+            for (int i = 0; i < 3000; ++i) {
+                Order order = orders.get(random.nextInt(orders.size()));
+                switch (random.nextInt(4)) {
+                    case 0:
+                        order.addOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(5));
+                        break;
+                    case 1:
+                        order.removeOrderItem(products[random.nextInt(products.length)], 1 + random.nextInt(3));
+                        break;
+                    case 2:
+                        order.setOrderDate(LocalDate.of(2023, 1, 1).plusDays(random.nextInt(400)));
+                        break;
+                    default:
+                        orderBatch.remove(order);
+                        orderBatch.addOrder(order);
+                }
+            }
+
+            for (int i = 0; i < 200; ++i) {
+                LocalDate from = LocalDate.of(2022, 12, 1).plusDays(random.nextInt(450));
+                LocalDate to = from.plusDays(random.nextInt(120));
+                assertMatchesOrders(orderBatch.revenueBetween(from, to), orderBatch.ordersBetween(from, to));
+            }
+            assertMatchesOrders(orderBatch.revenueBetween(LocalDate.MIN, LocalDate.MAX), orderBatch.getOrders());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testRangesMatchOrders");
+        }
+    }
+
+    @Test
+    public void testRevenueByPeriod() {
+        try {
+            LocalDate from = LocalDate.of(2023, 1, 25);
+            LocalDate to = LocalDate.of(2023, 3, 10);
+            for (LocalDate date = LocalDate.of(2023, 1, 1); date.isBefore(LocalDate.of(2023, 4, 1));
+                 date = date.plusDays(2)) {
+                Order order = new Order(user, date);
+                order.addOrderItem(products[0], 1);
+                orderBatch.addOrder(order);
+            }
+
+            List<RevenueRollup> months = orderBatch.revenueBy(RollupPeriod.MONTH, from, to);
+            assertEquals(3, months.size());
+            assertEquals(from, months.get(0).getFrom());
+            assertEquals(LocalDate.of(2023, 1, 31), months.get(0).getTo());
+            assertEquals(LocalDate.of(2023, 2, 1), months.get(1).getFrom());
+            assertEquals(LocalDate.of(2023, 2, 28), months.get(1).getTo());
+            assertEquals(to, months.get(2).getTo());
+            assertEquals(orderBatch.ordersBetween(LocalDate.of(2023, 2, 1), LocalDate.of(2023, 2, 28)).size(),
+                    months.get(1).getOrderCount());
+
+            List<RevenueRollup> weeks = orderBatch.revenueBy(RollupPeriod.WEEK, from, to);
+            assertEquals(LocalDate.of(2023, 1, 30), weeks.get(1).getFrom());
+            for (RevenueRollup week : weeks) {
+                assertMatchesOrders(week, orderBatch.ordersBetween(week.getFrom(), week.getTo()));
+            }
+
+            List<RevenueRollup> days = orderBatch.revenueBy(RollupPeriod.DAY, from, to);
+            assertEquals(orderBatch.ordersBetween(from, to).size(), days.size());
+            assertEquals(orderBatch.revenueBetween(from, to).getOrderCount(),
+                    days.stream().mapToLong(RevenueRollup::getOrderCount).sum());
+            assertTrue(orderBatch.revenueBy(RollupPeriod.DAY, to, from).isEmpty());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testRevenueByPeriod");
+        }
+    }
+
+    @Test
+    public void testConcurrentOrders() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Order[] orders = new Order[8];
+            for (int i = 0; i < orders.length; ++i) {
+                orders[i] = Order.concurrent(user, LocalDate.of(2023, 5, 1 + i));
+                orderBatch.addOrder(orders[i]);
+            }
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 5000; ++i) {
+                        Order order = orders[random.nextInt(orders.length)];
+                        if (random.nextInt(50) == 0) {
+                            order.setOrderDate(LocalDate.of(2023, 5, 1 + random.nextInt(20)));
+                        } else if (random.nextBoolean()) {
+                            order.addOrderItem(products[random.nextInt(4)], 1 + random.nextInt(3));
+                        } else {
+                            order.removeOrderItem(products[random.nextInt(4)], 1);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            for (int day = 1; day <= 20; ++day) {
+                LocalDate date = LocalDate.of(2023, 5, day);
+                assertMatchesOrders(orderBatch.revenueBetween(date, date), orderBatch.ordersBetween(date, date));
+            }
+            assertMatchesOrders(orderBatch.revenueBetween(LocalDate.of(2023, 5, 1), LocalDate.of(2023, 5, 31)),
+                    orderBatch.getOrders());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testConcurrentOrders");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertMatchesOrders(RevenueRollup rollup, List<Order> orders) {
+        long units = 0;
+        long revenueCents = 0;
+        Map<Integer, Long> grossByRate = new HashMap<>();
+        for (Order order : orders) {
+            for (OrderItem orderItem : order.getItems()) {
+                units += orderItem.getQuantity();
+                long cents = orderItem.getProduct().getUnitPrice().getCents() * orderItem.getQuantity();
+                revenueCents += cents;
+                grossByRate.merge(order.getTaxEngine().getRate(orderItem.getProduct().getCategory(),
+                        order.getDestination()), cents, Long::sum);
+            }
+        }
+        long taxCents = 0;
+        for (Map.Entry<Integer, Long> entry : grossByRate.entrySet()) {
+            taxCents += Money.includedTax(entry.getValue(), entry.getKey());
+        }
+        assertEquals(orders.size(), rollup.getOrderCount());
+        assertEquals(units, rollup.getUnits());
+        assertEquals(Money.ofCents(revenueCents), rollup.getRevenue());
+        assertEquals(Money.ofCents(taxCents), rollup.getTax());
+    }
+}
@@ -0,0 +1,134 @@
+package edu.uoc.pac2.test;
+
+import edu.uoc.pac4.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaxEngineTest {
+
+    TaxEngine previousEngine;
+    User user;
+    User internationalUser;
+    Product p1;
+    Product p2;
+
+    @BeforeEach
+    public void taxEngineSetUp() {
+        try {
+            previousEngine = TaxEngine.getDefault();
+            TaxEngine.setDefault(TaxEngine.uniform(2100)
+                    .withRate(ProductCategory.PRINTED_BOOK, Destination.DOMESTIC, 400)
+                    .withRate(ProductCategory.DIGITAL_BOOK, Destination.DOMESTIC, 400)
+                    .withRate(ProductCategory.PRINTED_BOOK, Destination.INTERNATIONAL, 0)
+                    .withRate(ProductCategory.DIGITAL_BOOK, Destination.INTERNATIONAL, 0)
+                    .withRate(ProductCategory.MERCHANDISING, Destination.INTERNATIONAL, 0));
+            LocalDate birthDate = LocalDate.of(1995, 6, 13);
+            user = new User("Quim Motger", "jmotger@uoc.edu", birthDate, Gender.MALE,
+                    new Address("Rambla del Poblenou", 156, "08018", "Barcelona"));
+            internationalUser = new User("Quim Motger", "jmotger@uoc.edu", birthDate, Gender.MALE,
+                    new Address("Baker Street", 221, "NW1 6XE", "London"));
+            p1 = new PrintedBook("Dungeons and Dragons - Game Master Book", 35.0, 9.5);
+            p2 = new Merchandising("Dice set (6 units)", 6.5, 1.9, 0.2);
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with the tax engine set up");
+        }
+    }
+
+    @AfterEach
+    public void taxEngineTearDown() {
+        TaxEngine.setDefault(previousEngine);
+    }
+
+    @Test
+    public void testTaxByCategory() {
+        try {
+            Order order = new Order(user, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(p1, 2);
+            order.addOrderItem(p2, 3);
+
+            assertEquals(Destination.DOMESTIC, order.getDestination());
+            assertEquals(400, order.getOrderItem(p1).getTaxRate());
+            assertEquals(2100, order.getOrderItem(p2).getTaxRate());
+            assertEquals(Money.ofCents(269), order.getOrderItem(p1).getTax());
+            assertEquals(Money.ofCents(338), order.getOrderItem(p2).getTax());
+            assertEquals(Money.ofCents(607), order.getTax());
+            assertEquals(6.07, order.getTotalTax(), 1e-9);
+            assertTrue(order.bill().endsWith("TOTAL = 89.5 | Tax: 6.07"));
+
+            order.removeOrderItem(p2, 3);
+            assertEquals(Money.ofCents(269), order.getTax());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testTaxByCategory");
+        }
+    }
+
+    @Test
+    public void testTaxByDestination() {
+        try {
+            Order order = new Order(internationalUser, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(p1, 2);
+            order.addOrderItem(p2, 3);
+
+            assertEquals(Destination.INTERNATIONAL, order.getDestination());
+            assertEquals(Money.ZERO, order.getTax());
+            assertEquals(0, order.getOrderItem(p2).getTaxRate());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testTaxByDestination");
+        }
+    }
+
+    @Test
+    public void testExistingOrdersKeepTheirEngine() {
+        try {
+            Order order = new Order(user, LocalDate.of(2023, 4, 1));
+            order.addOrderItem(p1, 2);
+            TaxEngine.setDefault(TaxEngine.uniform(2100));
+            order.addOrderItem(p1, 1);
+
+            assertEquals(400, order.getOrderItem(p1).getTaxRate());
+            assertEquals(Money.ofCents(Math.round(10500 * 400 / 10400.0)), order.getTax());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testExistingOrdersKeepTheirEngine");
+        }
+    }
+
+    @Test
+    public void testTaxSummary() {
+        try {
+            OrderBatch orderBatch = new OrderBatch("All orders", "Collection of all orders registered in the system");
+            Order order1 = new Order(user, LocalDate.of(2023, 4, 1));
+            order1.addOrderItem(p1, 2);
+            order1.addOrderItem(p2, 3);
+            Order order2 = Order.concurrent(user, LocalDate.of(2023, 4, 2));
+            order2.addOrderItem(p2, 1);
+            Order order3 = new Order(internationalUser, LocalDate.of(2023, 4, 3));
+            order3.addOrderItem(p1, 1);
+            orderBatch.addOrder(order1);
+            orderBatch.addOrder(order2);
+            orderBatch.addOrder(order3);
+
+            TaxSummary summary = orderBatch.getTaxSummary();
+            assertArrayEquals(new int[]{0, 400, 2100}, summary.getRates());
+            assertEquals(Money.ofCents(3500), summary.getTaxableAmount(0));
+            assertEquals(Money.ZERO, summary.getTax(0));
+            assertEquals(Money.ofCents(7000), summary.getTaxableAmount(400));
+            assertEquals(Money.ofCents(269), summary.getTax(400));
+            assertEquals(Money.ofCents(2600), summary.getTaxableAmount(2100));
+            assertEquals(Money.ofCents(338 + 113), summary.getTax(2100));
+            assertEquals(Money.ofCents(269 + 338 + 113), summary.getTotalTax());
+            assertEquals(order1.getTax(), order1.getTaxSummary().getTotalTax());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail("There was some error with testTaxSummary");
+        }
+    }
+}